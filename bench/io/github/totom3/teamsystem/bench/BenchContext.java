@@ -0,0 +1,48 @@
+package io.github.totom3.teamsystem.bench;
+
+import io.github.totom3.teamsystem.ArenaRegistry;
+import io.github.totom3.teamsystem.GameContext;
+import io.github.totom3.teamsystem.GameTeam;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+
+/**
+ * A two-team {@code GameContext} used by the benchmarks. Exposes the team
+ * editing methods which are otherwise reserved to subclasses.
+ * @author Totom3
+ */
+public class BenchContext extends GameContext {
+
+    public static final ChatColor RED = ChatColor.RED;
+    public static final ChatColor BLUE = ChatColor.BLUE;
+
+    public BenchContext(ArenaRegistry registry, String arenaName) {
+	super(registry, arenaName);
+	createTeams();
+    }
+
+    /**
+     * (Re)creates the red and blue teams, which are then empty.
+     */
+    public final void createTeams() {
+	createTeam(RED);
+	createTeam(BLUE);
+    }
+
+    /**
+     * Puts the players alternately in the red and in the blue team.
+     * @param players the players to distribute.
+     */
+    public void distribute(Player[] players) {
+	GameTeam red = getTeam(RED);
+	GameTeam blue = getTeam(BLUE);
+	for (int i = 0; i < players.length; ++i) {
+	    ((i & 1) == 0 ? red : blue).addPlayer(players[i]);
+	}
+    }
+
+    public void clear() {
+	clearTeams();
+    }
+
+}
@@ -0,0 +1,57 @@
+package io.github.totom3.teamsystem.bench;
+
+import io.github.totom3.teamsystem.ArenaRegistry;
+import java.util.concurrent.TimeUnit;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@code clearTeams()} with {@code size} players. The teams are
+ * recreated and refilled before every invocation, outside of the measurement;
+ * at the smallest sizes the results therefore include some timing overhead.
+ * @author Totom3
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ClearTeamsBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    private BenchContext context;
+    private Player[] players;
+
+    @Setup
+    public void setup() {
+	StubServer server = new StubServer();
+	context = new BenchContext(ArenaRegistry.detached(server.newScoreboard()), "bench");
+	players = server.newPlayers(size);
+    }
+
+    @Setup(Level.Invocation)
+    public void fill() {
+	context.createTeams();
+	context.distribute(players);
+    }
+
+    @Benchmark
+    public void clearTeams() {
+	context.clear();
+    }
+
+}
@@ -0,0 +1,110 @@
+package io.github.totom3.teamsystem.bench;
+
+import io.github.totom3.teamsystem.ArenaListener;
+import io.github.totom3.teamsystem.ArenaRegistry;
+import io.github.totom3.teamsystem.demo.InfectedGameContext;
+import io.github.totom3.teamsystem.demo.InfectedGameTeam;
+import java.util.concurrent.TimeUnit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent.DamageCause;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the damage handler of the Infected demo, as called by the
+ * server: through the {@code ArenaListener} of the registry. Half of the
+ * {@code size} players are zombies, the other half survivors.
+ * @author Totom3
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DamageBenchmark {
+
+    /**
+     * Number of infections after which the registry is ticked, so that the
+     * pending infection announcements are sent.
+     */
+    private static final int TICK_INTERVAL = 1024;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    private ArenaRegistry registry;
+    private ArenaListener listener;
+    private InfectedGameTeam survivors;
+    private Player[] zombies;
+    private Player[] humans;
+    private int cursor;
+    private int infections;
+
+    @Setup
+    public void setup() {
+	StubServer server = new StubServer();
+	registry = ArenaRegistry.detached(server.newScoreboard());
+	InfectedGameContext context = new InfectedGameContext(registry, "infected");
+	listener = registry.getListener();
+	survivors = context.getSurvivorsTeam();
+
+	zombies = server.newPlayers(Math.max(1, size / 2));
+	humans = server.newPlayers(Math.max(1, size - zombies.length));
+	for (Player player : zombies) {
+	    context.getZombiesTeam().addPlayer(player);
+	}
+	for (Player player : humans) {
+	    survivors.addPlayer(player);
+	}
+	registry.tick();
+    }
+
+    private int next() {
+	int i = cursor;
+	cursor = (cursor + 1 == humans.length) ? 0 : cursor + 1;
+	return i;
+    }
+
+    /**
+     * A survivor hurting another survivor: the event is ignored.
+     */
+    @Benchmark
+    public EntityDamageByEntityEvent friendlyDamage() {
+	int i = next();
+	EntityDamageByEntityEvent event = new EntityDamageByEntityEvent(humans[i], humans[humans.length - 1 - i], DamageCause.ENTITY_ATTACK, 1);
+	listener.on(event);
+	return event;
+    }
+
+    /**
+     * A zombie infecting a survivor, who is then cured. The registry is ticked
+     * every {@value #TICK_INTERVAL} infections, which sends the infection
+     * announcements to every player.
+     */
+    @Benchmark
+    public EntityDamageByEntityEvent infection() {
+	int i = next();
+	Player victim = humans[i];
+	EntityDamageByEntityEvent event = new EntityDamageByEntityEvent(zombies[i % zombies.length], victim, DamageCause.ENTITY_ATTACK, 1);
+	listener.on(event);
+	survivors.addPlayer(victim);
+
+	if (++infections == TICK_INTERVAL) {
+	    infections = 0;
+	    registry.tick();
+	}
+	return event;
+    }
+
+}
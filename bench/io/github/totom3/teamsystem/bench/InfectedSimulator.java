@@ -0,0 +1,384 @@
+package io.github.totom3.teamsystem.bench;
+
+import io.github.totom3.teamsystem.ArenaListener;
+import io.github.totom3.teamsystem.ArenaRegistry;
+import io.github.totom3.teamsystem.demo.InfectedGameContext;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent.DamageCause;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.player.PlayerKickEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Drives Infected arenas through whole rounds with synthetic players, without
+ * a server. Every simulated tick, players join, hurt each other, die, quit and
+ * get kicked at the configured rates; the events are passed to the
+ * {@code ArenaListener} of the registry, exactly like the server would, and
+ * the registry is then ticked. A round ends when every survivor is infected or
+ * when it lasted {@link #setRoundTicks(int) roundTicks}, after which the arena
+ * is reset and its players are redistributed.
+ * <p>
+ * The sequence of events only depends on the seed and on the settings, so that
+ * two runs with the same settings do exactly the same work. Only the handling
+ * of the events and the registry tick are measured: creating the synthetic
+ * players and events is not.
+ * <p>
+ * Can be run from the command line with {@code key=value} arguments, for
+ * instance {@code arenas=4 players=50 ticks=72000 damageRate=8}.
+ * @author Totom3
+ */
+public class InfectedSimulator {
+
+    private static final List<ItemStack> NO_DROPS = Collections.emptyList();
+
+    private final StubServer server;
+    private final Random random;
+    private final ArenaRegistry registry;
+    private final ArenaListener listener;
+    private final Arena[] arenas;
+
+    // Rates, in events per tick and per arena
+    private double joinRate = 0.05;
+    private double damageRate = 2;
+    private double deathRate = 0.02;
+    private double quitRate = 0.01;
+    private double kickRate = 0.001;
+
+    private int maxPlayers = 64;
+    private int roundTicks = 20 * 60 * 5;
+
+    private long tick;
+    private long events;
+    private int rounds;
+
+    /**
+     * Creates a simulator with a number of Infected arenas sharing a detached
+     * registry.
+     * @param seed   the seed of the random events.
+     * @param arenas the number of arenas. Must be positive.
+     * @throws IllegalArgumentException if {@code arenas} is not positive.
+     */
+    public InfectedSimulator(long seed, int arenas) {
+	if (arenas <= 0) {
+	    throw new IllegalArgumentException("Number of arenas must be positive, got " + arenas);
+	}
+
+	this.server = new StubServer();
+	this.random = new Random(seed);
+	this.registry = ArenaRegistry.detached(server.newScoreboard());
+	this.listener = registry.getListener();
+	this.arenas = new Arena[arenas];
+	for (int i = 0; i < arenas; ++i) {
+	    this.arenas[i] = new Arena(new InfectedGameContext(registry, "infected-" + i));
+	}
+    }
+
+    // -------------------=[ Settings ]=-------------------
+    public InfectedSimulator setJoinRate(double joinRate) {
+	this.joinRate = checkRate(joinRate);
+	return this;
+    }
+
+    public InfectedSimulator setDamageRate(double damageRate) {
+	this.damageRate = checkRate(damageRate);
+	return this;
+    }
+
+    public InfectedSimulator setDeathRate(double deathRate) {
+	this.deathRate = checkRate(deathRate);
+	return this;
+    }
+
+    public InfectedSimulator setQuitRate(double quitRate) {
+	this.quitRate = checkRate(quitRate);
+	return this;
+    }
+
+    public InfectedSimulator setKickRate(double kickRate) {
+	this.kickRate = checkRate(kickRate);
+	return this;
+    }
+
+    /**
+     * Sets the maximum number of players of an arena. Joins are skipped while
+     * an arena is full.
+     * @param maxPlayers the maximum number of players per arena.
+     * @return this simulator.
+     */
+    public InfectedSimulator setMaxPlayers(int maxPlayers) {
+	if (maxPlayers < 2) {
+	    throw new IllegalArgumentException("An arena needs at least 2 players, got " + maxPlayers);
+	}
+	this.maxPlayers = maxPlayers;
+	return this;
+    }
+
+    public InfectedSimulator setRoundTicks(int roundTicks) {
+	if (roundTicks <= 0) {
+	    throw new IllegalArgumentException("Round length must be positive, got " + roundTicks);
+	}
+	this.roundTicks = roundTicks;
+	return this;
+    }
+
+    private static double checkRate(double rate) {
+	if (!(rate >= 0)) {
+	    throw new IllegalArgumentException("Rate must be positive or zero, got " + rate);
+	}
+	return rate;
+    }
+
+    public ArenaRegistry getRegistry() {
+	return registry;
+    }
+
+    public StubServer getServer() {
+	return server;
+    }
+
+    // -------------------=[ Simulation ]=-------------------
+    /**
+     * Fills every arena with players (up to the maximum number of players per
+     * arena), and starts a round in each of them. Not measured.
+     * @param playersPerArena the number of players to add to every arena.
+     */
+    public void populate(int playersPerArena) {
+	for (Arena arena : arenas) {
+	    int count = Math.min(playersPerArena, maxPlayers - arena.online.size());
+	    for (int i = 0; i < count; ++i) {
+		arena.online.add(server.newPlayer());
+	    }
+	    arena.newRound();
+	}
+	registry.tick();
+    }
+
+    /**
+     * Runs the simulation for a number of ticks.
+     * @param ticks the number of ticks to simulate.
+     * @return the measurements of these ticks.
+     */
+    public SimulationReport run(int ticks) {
+	AllocationCounter allocations = AllocationCounter.create();
+	long[] tickNanos = new long[ticks];
+	long startEvents = events;
+	int startRounds = rounds;
+	server.resetCounters();
+
+	List<Runnable> actions = new ArrayList<>();
+	long allocated = 0;
+	for (int t = 0; t < ticks; ++t) {
+	    actions.clear();
+	    for (Arena arena : arenas) {
+		arena.generate(actions);
+	    }
+	    events += actions.size();
+
+	    long startBytes = allocations.get();
+	    long start = System.nanoTime();
+	    for (int i = 0, size = actions.size(); i < size; ++i) {
+		actions.get(i).run();
+	    }
+	    registry.tick();
+	    tickNanos[t] = System.nanoTime() - start;
+	    allocated += allocations.get() - startBytes;
+	    ++tick;
+	}
+
+	int players = 0;
+	for (Arena arena : arenas) {
+	    players += arena.online.size();
+	}
+	return new SimulationReport(tickNanos, allocations.isSupported() ? allocated : -1,
+		server.getScoreboardCalls(), server.getSetScoreboardCalls(), server.getMessages(),
+		events - startEvents, rounds - startRounds, players);
+    }
+
+    /**
+     * Returns a number of events to generate this tick: the integer part of
+     * the rate, plus one with a probability equal to its fractional part.
+     */
+    private int draw(double rate) {
+	int count = (int) rate;
+	return (random.nextDouble() < rate - count) ? count + 1 : count;
+    }
+
+    private final class Arena {
+
+	private final InfectedGameContext context;
+	private final List<Player> online;
+	private long roundStart;
+
+	Arena(InfectedGameContext context) {
+	    this.context = context;
+	    this.online = new ArrayList<>();
+	}
+
+	void generate(List<Runnable> actions) {
+	    // The round state is checked when generating the actions, so that
+	    // the round is restarted at the start of the next tick, as part of
+	    // the measured work.
+	    if (online.size() >= 2 && (context.getSurvivorsTeam().getPlayerCount() == 0 || tick - roundStart >= roundTicks)) {
+		actions.add(this::newRound);
+	    }
+
+	    for (int i = draw(joinRate); i > 0 && online.size() < maxPlayers; --i) {
+		final Player player = server.newPlayer();
+		online.add(player);
+		actions.add(() -> join(player));
+	    }
+
+	    if (online.size() < 2) {
+		return;
+	    }
+
+	    for (int i = draw(damageRate); i > 0; --i) {
+		Player damager = randomPlayer();
+		Player damaged = randomPlayer();
+		final EntityDamageByEntityEvent event = new EntityDamageByEntityEvent(damager, damaged, DamageCause.ENTITY_ATTACK, 1);
+		actions.add(() -> listener.on(event));
+	    }
+
+	    for (int i = draw(deathRate); i > 0; --i) {
+		Player player = randomPlayer();
+		final PlayerDeathEvent event = new PlayerDeathEvent(player, NO_DROPS, 0, player.getName() + " died");
+		actions.add(() -> listener.on(event));
+	    }
+
+	    for (int i = draw(quitRate); i > 0 && !online.isEmpty(); --i) {
+		final PlayerQuitEvent event = new PlayerQuitEvent(removeRandomPlayer(), null);
+		actions.add(() -> listener.on(event));
+	    }
+
+	    for (int i = draw(kickRate); i > 0 && !online.isEmpty(); --i) {
+		final PlayerKickEvent event = new PlayerKickEvent(removeRandomPlayer(), "Kicked", null);
+		actions.add(() -> listener.on(event));
+	    }
+	}
+
+	/**
+	 * Adds a joining player to the survivors, or to the zombies if there
+	 * are none.
+	 */
+	void join(Player player) {
+	    if (context.getZombiesTeam().getPlayerCount() == 0) {
+		context.getZombiesTeam().addPlayer(player);
+	    } else {
+		context.getSurvivorsTeam().addPlayer(player);
+	    }
+	}
+
+	/**
+	 * Resets the arena, and redistributes the online players: one of them
+	 * is the first zombie, the others are survivors.
+	 */
+	void newRound() {
+	    context.reset();
+	    roundStart = tick;
+	    ++rounds;
+	    if (online.isEmpty()) {
+		return;
+	    }
+
+	    Player zombie = randomPlayer();
+	    Map<Player, ChatColor> assignments = new LinkedHashMap<>();
+	    for (Player player : online) {
+		assignments.put(player, (player == zombie) ? context.getZombiesColor() : context.getSurvivorsColor());
+	    }
+	    context.assignAll(assignments);
+	}
+
+	private Player randomPlayer() {
+	    return online.get(random.nextInt(online.size()));
+	}
+
+	private Player removeRandomPlayer() {
+	    int index = random.nextInt(online.size());
+	    Player last = online.remove(online.size() - 1);
+	    return (index == online.size()) ? last : online.set(index, last);
+	}
+    }
+
+    /**
+     * Measures the bytes allocated by the current thread, when the JVM
+     * supports it.
+     */
+    private static final class AllocationCounter {
+
+	private final com.sun.management.ThreadMXBean bean;
+	private final long threadId;
+
+	private AllocationCounter(com.sun.management.ThreadMXBean bean) {
+	    this.bean = bean;
+	    this.threadId = Thread.currentThread().getId();
+	}
+
+	static AllocationCounter create() {
+	    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+	    if (bean instanceof com.sun.management.ThreadMXBean) {
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+		if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+		    return new AllocationCounter(sunBean);
+		}
+	    }
+	    return new AllocationCounter(null);
+	}
+
+	boolean isSupported() {
+	    return bean != null;
+	}
+
+	long get() {
+	    return (bean == null) ? 0 : bean.getThreadAllocatedBytes(threadId);
+	}
+    }
+
+    // -------------------=[ Command Line ]=-------------------
+    public static void main(String[] args) {
+	Map<String, String> options = new LinkedHashMap<>();
+	for (String arg : args) {
+	    int i = arg.indexOf('=');
+	    if (i <= 0) {
+		System.err.println("Expected key=value, got '" + arg + "'");
+		System.exit(1);
+	    }
+	    options.put(arg.substring(0, i), arg.substring(i + 1));
+	}
+
+	InfectedSimulator simulator = new InfectedSimulator(Long.parseLong(option(options, "seed", "42")), Integer.parseInt(option(options, "arenas", "1")));
+	simulator.setMaxPlayers(Integer.parseInt(option(options, "maxPlayers", "64")))
+		.setRoundTicks(Integer.parseInt(option(options, "roundTicks", "6000")))
+		.setJoinRate(Double.parseDouble(option(options, "joinRate", "0.05")))
+		.setDamageRate(Double.parseDouble(option(options, "damageRate", "2")))
+		.setDeathRate(Double.parseDouble(option(options, "deathRate", "0.02")))
+		.setQuitRate(Double.parseDouble(option(options, "quitRate", "0.01")))
+		.setKickRate(Double.parseDouble(option(options, "kickRate", "0.001")));
+	int warmup = Integer.parseInt(option(options, "warmup", "12000"));
+	int ticks = Integer.parseInt(option(options, "ticks", "72000"));
+	int players = Integer.parseInt(option(options, "players", "32"));
+	if (!options.isEmpty()) {
+	    System.err.println("Unknown options: " + options.keySet());
+	    System.exit(1);
+	}
+
+	simulator.populate(players);
+	simulator.run(warmup);
+	System.out.println(simulator.run(ticks));
+    }
+
+    private static String option(Map<String, String> options, String key, String defaultValue) {
+	String value = options.remove(key);
+	return (value == null) ? defaultValue : value;
+    }
+
+}
@@ -0,0 +1,105 @@
+package io.github.totom3.teamsystem.bench;
+
+import java.util.Arrays;
+
+/**
+ * The measurements of a run of {@code InfectedSimulator}.
+ * @author Totom3
+ */
+public final class SimulationReport {
+
+    private final long[] tickNanos;
+    private final long allocatedBytes;
+    private final long scoreboardCalls;
+    private final long setScoreboardCalls;
+    private final long messages;
+    private final long events;
+    private final int rounds;
+    private final int players;
+
+    SimulationReport(long[] tickNanos, long allocatedBytes, long scoreboardCalls, long setScoreboardCalls, long messages, long events, int rounds, int players) {
+	this.tickNanos = tickNanos.clone();
+	Arrays.sort(this.tickNanos);
+	this.allocatedBytes = allocatedBytes;
+	this.scoreboardCalls = scoreboardCalls;
+	this.setScoreboardCalls = setScoreboardCalls;
+	this.messages = messages;
+	this.events = events;
+	this.rounds = rounds;
+	this.players = players;
+    }
+
+    public int getTicks() {
+	return tickNanos.length;
+    }
+
+    /**
+     * Returns a percentile of the time spent per simulated tick.
+     * @param percentile the percentile, between {@code 0} and {@code 100}.
+     * @return the duration of a tick at that percentile, in nanoseconds.
+     * @throws IllegalArgumentException if {@code percentile} is out of range.
+     */
+    public long getTickNanos(double percentile) {
+	if (percentile < 0 || percentile > 100) {
+	    throw new IllegalArgumentException("Percentile must be between 0 and 100, got " + percentile);
+	}
+	if (tickNanos.length == 0) {
+	    return 0;
+	}
+	int index = (int) Math.ceil(percentile / 100 * tickNanos.length) - 1;
+	return tickNanos[Math.max(0, index)];
+    }
+
+    /**
+     * Returns the number of bytes allocated by the simulated ticks, or
+     * {@code -1} if the JVM can't measure allocations.
+     * @return the number of allocated bytes.
+     */
+    public long getAllocatedBytes() {
+	return allocatedBytes;
+    }
+
+    public long getScoreboardCalls() {
+	return scoreboardCalls;
+    }
+
+    public long getSetScoreboardCalls() {
+	return setScoreboardCalls;
+    }
+
+    public long getMessages() {
+	return messages;
+    }
+
+    public long getEvents() {
+	return events;
+    }
+
+    public int getRounds() {
+	return rounds;
+    }
+
+    /**
+     * Returns the number of players online at the end of the run.
+     * @return the number of online players.
+     */
+    public int getPlayers() {
+	return players;
+    }
+
+    @Override
+    public String toString() {
+	int ticks = Math.max(1, getTicks());
+	StringBuilder builder = new StringBuilder();
+	builder.append(String.format("ticks: %d, events: %d, rounds: %d, players: %d%n", getTicks(), events, rounds, players));
+	builder.append(String.format("tick time (us): p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+		getTickNanos(50) / 1e3, getTickNanos(90) / 1e3, getTickNanos(99) / 1e3, getTickNanos(99.9) / 1e3, getTickNanos(100) / 1e3));
+	if (allocatedBytes >= 0) {
+	    builder.append(String.format("allocated: %d bytes/tick%n", allocatedBytes / ticks));
+	}
+	builder.append(String.format("per tick: %.1f scoreboard calls, %.1f setScoreboard calls, %.1f messages",
+		(double) scoreboardCalls / ticks, (double) setScoreboardCalls / ticks, (double) messages / ticks));
+	return builder.toString();
+    }
+
+}
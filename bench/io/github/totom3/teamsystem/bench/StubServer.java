@@ -0,0 +1,505 @@
+package io.github.totom3.teamsystem.bench;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.DisplaySlot;
+import org.bukkit.scoreboard.NameTagVisibility;
+import org.bukkit.scoreboard.Objective;
+import org.bukkit.scoreboard.Score;
+import org.bukkit.scoreboard.Scoreboard;
+import org.bukkit.scoreboard.Team;
+
+/**
+ * In-memory stand-ins for the Bukkit objects used by the team system, so that
+ * it can be benchmarked without a server. Scoreboards and teams are plain
+ * classes behaving like the CraftBukkit ones: teams hold their entries by
+ * name, an entry belongs to at most one team per scoreboard, and adding an
+ * entry to a team removes it from its previous team. They don't allocate nor
+ * box on their hot paths, so that the allocations measured by the benchmarks
+ * are those of the team system. Objectives and scores are not supported.
+ * <p>
+ * Players are dynamic proxies, since {@code Player} has hundreds of methods:
+ * they only remember their scoreboard, and any other method returns a zero
+ * value. The calls made by the team system on its hot paths
+ * ({@code getUniqueId}, {@code getName}, {@code getScoreboard}) take no
+ * argument, and don't allocate either.
+ * <p>
+ * Player {@code UUID}s are derived from a counter, so that every run of a
+ * benchmark sees the same players in the same order. The number of calls made
+ * to the stubs is counted, which is useful to check that a change doesn't
+ * issue more Bukkit calls than before.
+ * @author Totom3
+ */
+public final class StubServer {
+
+    private final Map<String, Player> players = new HashMap<>();
+    private long nextPlayerId;
+
+    private long scoreboardCalls;
+    private long setScoreboardCalls;
+    private long messages;
+
+    /**
+     * Creates a new online player named {@code "Player" + n}, where {@code n}
+     * is the number of players created so far by this server.
+     * @return a new stub {@code Player}.
+     */
+    public Player newPlayer() {
+	long id = nextPlayerId++;
+	return newPlayer("Player" + id, new UUID(0, id));
+    }
+
+    public Player newPlayer(String name, UUID id) {
+	Player player = (Player) Proxy.newProxyInstance(StubServer.class.getClassLoader(), new Class<?>[]{Player.class}, new PlayerStub(name, id));
+	players.put(name, player);
+	return player;
+    }
+
+    /**
+     * Creates {@code count} new players.
+     * @param count the number of players to create.
+     * @return an array containing the new players.
+     */
+    public Player[] newPlayers(int count) {
+	Player[] players = new Player[count];
+	for (int i = 0; i < count; ++i) {
+	    players[i] = newPlayer();
+	}
+	return players;
+    }
+
+    public Scoreboard newScoreboard() {
+	return new StubScoreboard();
+    }
+
+    /**
+     * Returns the number of calls made to the scoreboards and teams of this
+     * server, getters included.
+     * @return the number of scoreboard calls.
+     */
+    public long getScoreboardCalls() {
+	return scoreboardCalls;
+    }
+
+    public long getSetScoreboardCalls() {
+	return setScoreboardCalls;
+    }
+
+    public long getMessages() {
+	return messages;
+    }
+
+    public void resetCounters() {
+	scoreboardCalls = 0;
+	setScoreboardCalls = 0;
+	messages = 0;
+    }
+
+    // -----------------------=[ Internal ]=-----------------------
+    private static Object defaultValue(Class<?> type) {
+	if (!type.isPrimitive() || type == void.class) {
+	    return null;
+	}
+	if (type == boolean.class) {
+	    return false;
+	}
+	if (type == char.class) {
+	    return '\0';
+	}
+	if (type == long.class) {
+	    return 0L;
+	}
+	if (type == float.class) {
+	    return 0F;
+	}
+	if (type == double.class) {
+	    return 0D;
+	}
+	if (type == byte.class) {
+	    return (byte) 0;
+	}
+	if (type == short.class) {
+	    return (short) 0;
+	}
+	return 0;
+    }
+
+    private final class PlayerStub implements InvocationHandler {
+
+	private final String name;
+	private final UUID id;
+	private Scoreboard scoreboard;
+	// boxed once, since players are hashed on hot paths
+	private Integer hashCode;
+
+	PlayerStub(String name, UUID id) {
+	    this.name = name;
+	    this.id = id;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) {
+	    switch (method.getName()) {
+		case "getUniqueId":
+		    return id;
+		case "getName":
+		case "getDisplayName":
+		    return name;
+		case "isOnline":
+		    return true;
+		case "getScoreboard":
+		    return scoreboard;
+		case "setScoreboard":
+		    ++setScoreboardCalls;
+		    scoreboard = (Scoreboard) args[0];
+		    return null;
+		case "sendMessage":
+		    ++messages;
+		    return null;
+		case "hashCode":
+		    if (hashCode == null) {
+			hashCode = System.identityHashCode(proxy);
+		    }
+		    return hashCode;
+		case "equals":
+		    return proxy == args[0];
+		case "toString":
+		    return name;
+		default:
+		    return defaultValue(method.getReturnType());
+	    }
+	}
+    }
+
+    private final class StubScoreboard implements Scoreboard {
+
+	private final Map<String, StubTeam> teams = new LinkedHashMap<>();
+	private final Map<String, StubTeam> entryTeams = new HashMap<>();
+
+	@Override
+	public Team registerNewTeam(String name) {
+	    ++scoreboardCalls;
+	    if (name == null) {
+		throw new IllegalArgumentException("Team name cannot be null");
+	    }
+	    if (name.length() > 16) {
+		throw new IllegalArgumentException("Team name '" + name + "' is longer than the limit of 16 characters");
+	    }
+	    if (teams.containsKey(name)) {
+		throw new IllegalArgumentException("Team name '" + name + "' is already in use");
+	    }
+	    StubTeam team = new StubTeam(name, this);
+	    teams.put(name, team);
+	    return team;
+	}
+
+	@Override
+	public Team getTeam(String name) {
+	    ++scoreboardCalls;
+	    return teams.get(name);
+	}
+
+	@Override
+	public Set<Team> getTeams() {
+	    ++scoreboardCalls;
+	    return new HashSet<Team>(teams.values());
+	}
+
+	@Override
+	@Deprecated
+	public Team getPlayerTeam(OfflinePlayer player) {
+	    ++scoreboardCalls;
+	    return entryTeams.get(player.getName());
+	}
+
+	@Override
+	public Team getEntryTeam(String entry) {
+	    ++scoreboardCalls;
+	    return entryTeams.get(entry);
+	}
+
+	@Override
+	public Set<String> getEntries() {
+	    ++scoreboardCalls;
+	    return new HashSet<>(entryTeams.keySet());
+	}
+
+	@Override
+	@Deprecated
+	public Set<OfflinePlayer> getPlayers() {
+	    ++scoreboardCalls;
+	    Set<OfflinePlayer> result = new HashSet<>();
+	    for (String entry : entryTeams.keySet()) {
+		Player player = players.get(entry);
+		if (player != null) {
+		    result.add(player);
+		}
+	    }
+	    return result;
+	}
+
+	@Override
+	public Objective registerNewObjective(String name, String criteria) {
+	    throw new UnsupportedOperationException("Objectives are not stubbed");
+	}
+
+	@Override
+	public Objective getObjective(String name) {
+	    return null;
+	}
+
+	@Override
+	public Objective getObjective(DisplaySlot slot) {
+	    return null;
+	}
+
+	@Override
+	public Set<Objective> getObjectivesByCriteria(String criteria) {
+	    return Collections.emptySet();
+	}
+
+	@Override
+	public Set<Objective> getObjectives() {
+	    return Collections.emptySet();
+	}
+
+	@Override
+	@Deprecated
+	public Set<Score> getScores(OfflinePlayer player) {
+	    return Collections.emptySet();
+	}
+
+	@Override
+	public Set<Score> getScores(String entry) {
+	    return Collections.emptySet();
+	}
+
+	@Override
+	@Deprecated
+	public void resetScores(OfflinePlayer player) {
+	}
+
+	@Override
+	public void resetScores(String entry) {
+	}
+
+	@Override
+	public void clearSlot(DisplaySlot slot) {
+	}
+
+	@Override
+	public String toString() {
+	    return "StubScoreboard" + teams.keySet();
+	}
+    }
+
+    private final class StubTeam implements Team {
+
+	private final String name;
+	private final StubScoreboard scoreboard;
+	private final Set<String> entries = new LinkedHashSet<>();
+	private boolean registered = true;
+	private String displayName;
+	private String prefix = "";
+	private String suffix = "";
+	private boolean friendlyFire = true;
+	private boolean seeInvisibles;
+	private NameTagVisibility nameTagVisibility = NameTagVisibility.ALWAYS;
+
+	StubTeam(String name, StubScoreboard scoreboard) {
+	    this.name = name;
+	    this.scoreboard = scoreboard;
+	    this.displayName = name;
+	}
+
+	private void checkRegistered() {
+	    ++scoreboardCalls;
+	    if (!registered) {
+		throw new IllegalStateException("Unregistered scoreboard component");
+	    }
+	}
+
+	@Override
+	public String getName() {
+	    checkRegistered();
+	    return name;
+	}
+
+	@Override
+	public Scoreboard getScoreboard() {
+	    checkRegistered();
+	    return scoreboard;
+	}
+
+	@Override
+	public String getDisplayName() {
+	    checkRegistered();
+	    return displayName;
+	}
+
+	@Override
+	public void setDisplayName(String displayName) {
+	    checkRegistered();
+	    this.displayName = displayName;
+	}
+
+	@Override
+	public String getPrefix() {
+	    checkRegistered();
+	    return prefix;
+	}
+
+	@Override
+	public void setPrefix(String prefix) {
+	    checkRegistered();
+	    this.prefix = prefix;
+	}
+
+	@Override
+	public String getSuffix() {
+	    checkRegistered();
+	    return suffix;
+	}
+
+	@Override
+	public void setSuffix(String suffix) {
+	    checkRegistered();
+	    this.suffix = suffix;
+	}
+
+	@Override
+	public boolean allowFriendlyFire() {
+	    checkRegistered();
+	    return friendlyFire;
+	}
+
+	@Override
+	public void setAllowFriendlyFire(boolean enabled) {
+	    checkRegistered();
+	    this.friendlyFire = enabled;
+	}
+
+	@Override
+	public boolean canSeeFriendlyInvisibles() {
+	    checkRegistered();
+	    return seeInvisibles;
+	}
+
+	@Override
+	public void setCanSeeFriendlyInvisibles(boolean enabled) {
+	    checkRegistered();
+	    this.seeInvisibles = enabled;
+	}
+
+	@Override
+	public NameTagVisibility getNameTagVisibility() {
+	    checkRegistered();
+	    return nameTagVisibility;
+	}
+
+	@Override
+	public void setNameTagVisibility(NameTagVisibility visibility) {
+	    checkRegistered();
+	    this.nameTagVisibility = visibility;
+	}
+
+	@Override
+	@Deprecated
+	public Set<OfflinePlayer> getPlayers() {
+	    checkRegistered();
+	    Set<OfflinePlayer> result = new HashSet<>();
+	    for (String entry : entries) {
+		Player player = players.get(entry);
+		if (player != null) {
+		    result.add(player);
+		}
+	    }
+	    return result;
+	}
+
+	@Override
+	public Set<String> getEntries() {
+	    checkRegistered();
+	    return new HashSet<>(entries);
+	}
+
+	@Override
+	public int getSize() {
+	    checkRegistered();
+	    return entries.size();
+	}
+
+	@Override
+	@Deprecated
+	public void addPlayer(OfflinePlayer player) {
+	    addEntry(player.getName());
+	}
+
+	@Override
+	public void addEntry(String entry) {
+	    checkRegistered();
+	    // an entry belongs to at most one team of a scoreboard
+	    StubTeam previous = scoreboard.entryTeams.put(entry, this);
+	    if (previous != null && previous != this) {
+		previous.entries.remove(entry);
+	    }
+	    entries.add(entry);
+	}
+
+	@Override
+	@Deprecated
+	public boolean removePlayer(OfflinePlayer player) {
+	    return removeEntry(player.getName());
+	}
+
+	@Override
+	public boolean removeEntry(String entry) {
+	    checkRegistered();
+	    if (!entries.remove(entry)) {
+		return false;
+	    }
+	    scoreboard.entryTeams.remove(entry);
+	    return true;
+	}
+
+	@Override
+	@Deprecated
+	public boolean hasPlayer(OfflinePlayer player) {
+	    return hasEntry(player.getName());
+	}
+
+	@Override
+	public boolean hasEntry(String entry) {
+	    checkRegistered();
+	    return entries.contains(entry);
+	}
+
+	@Override
+	public void unregister() {
+	    checkRegistered();
+	    for (String entry : entries) {
+		scoreboard.entryTeams.remove(entry);
+	    }
+	    entries.clear();
+	    scoreboard.teams.remove(name);
+	    registered = false;
+	}
+
+	@Override
+	public String toString() {
+	    return "StubTeam{" + name + "}";
+	}
+    }
+
+}
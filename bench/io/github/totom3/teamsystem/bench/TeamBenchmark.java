@@ -0,0 +1,128 @@
+package io.github.totom3.teamsystem.bench;
+
+import io.github.totom3.teamsystem.ArenaRegistry;
+import io.github.totom3.teamsystem.GameTeam;
+import io.github.totom3.teamsystem.GameUtils;
+import java.util.concurrent.TimeUnit;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the per-player operations of the team API with {@code size}
+ * players split between two teams. Every benchmark leaves the context in the
+ * state it found it in (or cycles through a fixed set of states), so that the
+ * measurements don't drift over an iteration.
+ * @author Totom3
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TeamBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    private BenchContext context;
+    private GameTeam red;
+    private GameTeam blue;
+    private Player[] players;
+    private Player outsider;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+	StubServer server = new StubServer();
+	ArenaRegistry registry = ArenaRegistry.detached(server.newScoreboard());
+	context = new BenchContext(registry, "bench");
+	red = context.getTeam(BenchContext.RED);
+	blue = context.getTeam(BenchContext.BLUE);
+
+	players = server.newPlayers(size);
+	context.distribute(players);
+	outsider = server.newPlayer();
+	registry.tick();
+    }
+
+    private Player nextPlayer() {
+	Player player = players[cursor];
+	cursor = (cursor + 1 == players.length) ? 0 : cursor + 1;
+	return player;
+    }
+
+    /**
+     * Adds a player who isn't in any team to a team, and removes it.
+     */
+    @Benchmark
+    public boolean addRemovePlayer() {
+	red.addPlayer(outsider);
+	return red.removePlayer(outsider);
+    }
+
+    /**
+     * Moves a player to the other team, and back.
+     */
+    @Benchmark
+    public boolean movePlayer() {
+	Player player = nextPlayer();
+	GameTeam team = context.getTeamOf(player);
+	GameTeam other = (team == red) ? blue : red;
+	other.addPlayer(player);
+	return team.addPlayer(player);
+    }
+
+    /**
+     * Moves a player to the other team, and back, through
+     * {@code setTeamOf()}.
+     */
+    @Benchmark
+    public GameTeam setTeamOf() {
+	Player player = nextPlayer();
+	ChatColor color = context.getTeamOf(player).getColor();
+	context.setTeamOf(player, (color == BenchContext.RED) ? BenchContext.BLUE : BenchContext.RED);
+	return context.setTeamOf(player, color);
+    }
+
+    @Benchmark
+    public GameTeam getTeamOf() {
+	return context.getTeamOf(nextPlayer());
+    }
+
+    @Benchmark
+    public String formatPlayers() {
+	return GameUtils.formatPlayers(red.getPlayers(), ChatColor.WHITE, ChatColor.RED);
+    }
+
+    /**
+     * Renders the roster of a team through its cache. The membership doesn't
+     * change between invocations, so that this measures a cache hit.
+     */
+    @Benchmark
+    public String formatPlayersCached() {
+	return red.formatPlayers(ChatColor.WHITE, ChatColor.RED);
+    }
+
+    /**
+     * Renders the first page of the roster of a team right after a change of
+     * membership, so that this measures a cache miss.
+     */
+    @Benchmark
+    public String formatPageAfterMove() {
+	movePlayer();
+	return red.formatPlayers(ChatColor.WHITE, ChatColor.RED, 0, 20);
+    }
+
+}
@@ -0,0 +1,89 @@
+package io.github.totom3.teamsystem;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.List;
+import org.bukkit.ChatColor;
+
+/**
+ * A template for messages announcing that one or several players did
+ * something, such as joining a team. Rendered messages list the names of the
+ * players, truncated to a fixed number of names:
+ * <pre>Steve is now infected!<br/>Steve, Alex and 12 others are now infected!</pre>
+ * @author Totom3
+ * @see BroadcastAggregator
+ */
+public final class Announcement {
+
+    private final String nameColor;
+    private final String textColor;
+    private final String singular;
+    private final String plural;
+    private final int maxNames;
+
+    /**
+     * Creates an {@code Announcement} showing up to 3 names.
+     * @param nameColor the color of the names.
+     * @param textColor the color of the rest of the text.
+     * @param singular  the text following a single name, such as
+     *                  {@code " is now infected!"}.
+     * @param plural    the text following several names, such as
+     *                  {@code " are now infected!"}.
+     */
+    public Announcement(ChatColor nameColor, ChatColor textColor, String singular, String plural) {
+	this(nameColor, textColor, singular, plural, 3);
+    }
+
+    /**
+     * Creates an {@code Announcement}.
+     * @param nameColor the color of the names.
+     * @param textColor the color of the rest of the text.
+     * @param singular  the text following a single name.
+     * @param plural    the text following several names.
+     * @param maxNames  the maximum number of names to show. Must be at least
+     *                  2. When there are more players, only
+     *                  {@code maxNames - 1} names are shown, followed by the
+     *                  number of other players.
+     * @throws NullPointerException     if any argument is {@code null}.
+     * @throws IllegalArgumentException if {@code maxNames} is less than 2.
+     */
+    public Announcement(ChatColor nameColor, ChatColor textColor, String singular, String plural, int maxNames) {
+	if (maxNames < 2) {
+	    throw new IllegalArgumentException("Expected at least 2 names, got " + maxNames);
+	}
+	this.nameColor = checkNotNull(nameColor, "Name color cannot be null").toString();
+	this.textColor = checkNotNull(textColor, "Text color cannot be null").toString();
+	this.singular = checkNotNull(singular, "Singular text cannot be null");
+	this.plural = checkNotNull(plural, "Plural text cannot be null");
+	this.maxNames = maxNames;
+    }
+
+    /**
+     * Renders this announcement for a list of names.
+     * @param names the names of the players. Must not be {@code null} nor
+     *              empty.
+     * @return the rendered message.
+     */
+    public String render(List<String> names) {
+	int count = names.size();
+	StringBuilder builder = new StringBuilder();
+
+	if (count == 1) {
+	    return builder.append(nameColor).append(names.get(0)).append(textColor).append(singular).toString();
+	}
+
+	int shown = (count <= maxNames) ? count - 1 : maxNames - 1;
+	builder.append(nameColor).append(names.get(0));
+	for (int i = 1; i < shown; ++i) {
+	    builder.append(textColor).append(", ").append(nameColor).append(names.get(i));
+	}
+
+	builder.append(textColor).append(" and ");
+	if (count <= maxNames) {
+	    builder.append(nameColor).append(names.get(count - 1));
+	} else {
+	    builder.append(count - shown).append(" others");
+	}
+	return builder.append(textColor).append(plural).toString();
+    }
+
+}
@@ -0,0 +1,125 @@
+package io.github.totom3.teamsystem;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerKickEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+
+/**
+ * The single listener of an {@code ArenaRegistry}. Routes every event to the
+ * listener of the arena owning the involved player.
+ * @author Totom3
+ */
+public class ArenaListener implements Listener {
+
+    private final ArenaRegistry registry;
+
+    public ArenaListener(ArenaRegistry registry) {
+	this.registry = registry;
+    }
+
+    @EventHandler
+    public void on(PlayerJoinEvent event) {
+	Player player = event.getPlayer();
+	GameContext context = registry.takeExpected(player.getUniqueId());
+	if (context == null) {
+	    // players kept by a reconnect cache still belong to their arena
+	    context = registry.getArenaOf(player);
+	    if (context == null) {
+		return;
+	    }
+	}
+
+	DefaultGameListener listener = context.getListener();
+	if (listener != null) {
+	    listener.onConnect(player);
+	} else if (!context.getReconnectCache().unpark(player)) {
+	    context.restoreMember(player);
+	}
+    }
+
+    @EventHandler
+    public void on(PlayerQuitEvent event) {
+	onQuit(event.getPlayer());
+    }
+
+    @EventHandler
+    public void on(PlayerKickEvent event) {
+	onQuit(event.getPlayer());
+    }
+
+    void onQuit(Player player) {
+	DefaultGameListener listener = listenerOf(player);
+	if (listener != null) {
+	    listener.dispatchQuit(player);
+	}
+    }
+
+    @EventHandler
+    public void on(EntityDamageByEntityEvent event) {
+	if (!(event.getEntity() instanceof Player)) {
+	    return;
+	}
+
+	if (!(event.getDamager() instanceof Player)) {
+	    return;
+	}
+
+	DefaultGameListener listener = listenerOf((Player) event.getEntity());
+	if (listener != null) {
+	    listener.dispatchDamage(event);
+	}
+    }
+
+    @EventHandler
+    public void on(PlayerDeathEvent event) {
+	DefaultGameListener listener = listenerOf(event.getEntity());
+	if (listener != null) {
+	    listener.dispatchDeath(event);
+	}
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void on(PlayerMoveEvent event) {
+	if (DefaultGameListener.hasMoved(event.getFrom(), event.getTo())) {
+	    onMove(event.getPlayer(), event.getTo());
+	}
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void on(PlayerTeleportEvent event) {
+	onMove(event.getPlayer(), event.getTo());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void on(PlayerRespawnEvent event) {
+	onMove(event.getPlayer(), event.getRespawnLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void on(PlayerChangedWorldEvent event) {
+	onMove(event.getPlayer(), event.getPlayer().getLocation());
+    }
+
+    private void onMove(Player player, Location location) {
+	DefaultGameListener listener = listenerOf(player);
+	if (listener != null) {
+	    listener.onMove(player, location);
+	}
+    }
+
+    private DefaultGameListener listenerOf(Player player) {
+	GameContext context = registry.getArenaOf(player);
+	return (context == null) ? null : context.getListener();
+    }
+}
@@ -0,0 +1,246 @@
+package io.github.totom3.teamsystem;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.HandlerList;
+import org.bukkit.scheduler.BukkitTask;
+import org.bukkit.scoreboard.Scoreboard;
+
+/**
+ * Holds several {@code GameContext}s ("arenas") sharing a scoreboard. The
+ * registry owns a single {@code ArenaListener}, and keeps an index of the
+ * context each player belongs to, so that every event is routed to the one
+ * context owning the player instead of being handled by every context.
+ * <p>
+ * A player may only be part of one arena of a registry at a time: joining a
+ * team of an arena removes the player from its team in any other arena.
+ * <p>
+ * A registry must be {@linkplain #close() closed} once it isn't used anymore,
+ * typically when the plugin is disabled, to unhook it from the server.
+ * @author Totom3
+ */
+public class ArenaRegistry implements AutoCloseable {
+
+    private final Scoreboard scoreboard;
+    private final Map<String, GameContext> arenas;
+    private final Map<UUID, GameContext> owners;
+    private final Map<UUID, GameContext> expected;
+    private final ArenaListener listener;
+    private final BukkitTask tickTask;
+    private final boolean attached;
+
+    private GameContext[] tickOrder;
+    private boolean closed;
+
+    private int nextArenaId;
+
+    public ArenaRegistry() {
+	this(Bukkit.getScoreboardManager().getMainScoreboard());
+    }
+
+    public ArenaRegistry(Scoreboard scoreboard) {
+	this(scoreboard, true);
+    }
+
+    private ArenaRegistry(Scoreboard scoreboard, boolean attached) {
+	this.scoreboard = checkNotNull(scoreboard, "Bukkit Scoreboard cannot be null");
+	this.arenas = new LinkedHashMap<>();
+	this.owners = new HashMap<>();
+	this.expected = new HashMap<>();
+	this.listener = new ArenaListener(this);
+	this.tickOrder = new GameContext[0];
+	this.attached = attached;
+
+	if (attached) {
+	    Bukkit.getPluginManager().registerEvents(listener, Main.get());
+	    this.tickTask = Bukkit.getScheduler().runTaskTimer(Main.get(), this::tick, 1, 1);
+	} else {
+	    this.tickTask = null;
+	}
+    }
+
+    /**
+     * Creates an {@code ArenaRegistry} which isn't attached to the server: its
+     * listener isn't registered, and its arenas aren't ticked. The owner of
+     * the registry must pass events to {@link #getListener()} and call
+     * {@link #tick()} itself. Meant for benchmarks and simulations running
+     * without a server.
+     * @param scoreboard the scoreboard shared by the arenas. Must not be
+     *                   {@code null}.
+     * @return a new, detached {@code ArenaRegistry}.
+     * @throws NullPointerException if {@code scoreboard} is {@code null}.
+     */
+    public static ArenaRegistry detached(Scoreboard scoreboard) {
+	return new ArenaRegistry(scoreboard, false);
+    }
+
+    public Scoreboard getScoreboard() {
+	return scoreboard;
+    }
+
+    public ArenaListener getListener() {
+	return listener;
+    }
+
+    public Map<String, GameContext> arenas() {
+	return Collections.unmodifiableMap(arenas);
+    }
+
+    public GameContext getArena(String name) {
+	return arenas.get(name);
+    }
+
+    /**
+     * Returns the arena the specified player currently belongs to.
+     * @param player the player to get the arena of. Must not be {@code null}.
+     * @return the context in which the player is in a team, or {@code null} if
+     *         the player isn't in any team of this registry.
+     */
+    public GameContext getArenaOf(Player player) {
+	return owners.get(GameUtils.checkPlayer(player).getUniqueId());
+    }
+
+    /**
+     * Removes an arena from this registry, and {@linkplain GameContext#close()
+     * closes} it. Every player of the arena is removed from its team, and the
+     * arena's teams are invalidated.
+     * @param name the name of the arena to remove.
+     * @return the removed arena, or {@code null} if there was no such arena.
+     */
+    public GameContext removeArena(String name) {
+	GameContext context = arenas.get(name);
+	if (context != null) {
+	    context.close();
+	}
+	return context;
+    }
+
+    /**
+     * Ticks every arena of this registry. Called once per tick on the main
+     * thread by a task scheduled on construction.
+     * @see GameContext#tick()
+     */
+    public void tick() {
+	for (GameContext context : tickOrder) {
+	    context.tick();
+	}
+    }
+
+    /**
+     * Closes this registry: every arena is {@linkplain GameContext#close()
+     * closed}, the listener of the registry is unregistered and its arenas
+     * are not ticked anymore. No arena can be added to a closed registry.
+     * Closing a registry more than once has no effect. Main thread only.
+     */
+    @Override
+    public void close() {
+	if (closed) {
+	    return;
+	}
+	closed = true;
+
+	// closing an arena detaches it from this registry
+	for (GameContext context : tickOrder) {
+	    context.close();
+	}
+	if (tickTask != null) {
+	    tickTask.cancel();
+	}
+	if (attached) {
+	    HandlerList.unregisterAll(listener);
+	}
+    }
+
+    public boolean isClosed() {
+	return closed;
+    }
+
+    // -----------------------=[ Internal ]=-----------------------
+    /**
+     * Only called by the {@code GameContext} constructor.
+     * @param name    the name of the arena. Must be unique in this registry.
+     * @param context the context to register.
+     * @return the namespace to prefix the names of the Bukkit teams of the
+     *         context with.
+     */
+    String add(String name, GameContext context) {
+	checkNotNull(name, "Arena name cannot be null");
+	if (closed) {
+	    throw new IllegalStateException("ArenaRegistry is closed");
+	}
+	if (arenas.containsKey(name)) {
+	    throw new IllegalArgumentException("Arena '" + name + "' already exists");
+	}
+
+	arenas.put(name, context);
+	tickOrder = arenas.values().toArray(new GameContext[arenas.size()]);
+	// Bukkit team names are limited to 16 characters, so use a short id
+	// rather than the arena name.
+	return "@" + Integer.toString(nextArenaId++, Character.MAX_RADIX) + ":";
+    }
+
+    /**
+     * Only called by {@link GameContext#close()}. Removes a closed context
+     * from this registry, along with the players still indexed to it.
+     */
+    void detach(GameContext context) {
+	if (arenas.remove(context.getArenaName()) == context) {
+	    tickOrder = arenas.values().toArray(new GameContext[arenas.size()]);
+	}
+	owners.values().removeIf(owner -> owner == context);
+	expected.values().removeIf(owner -> owner == context);
+    }
+
+    /**
+     * Called when a player joins its first team in a context. Removes the
+     * player from the arena it previously belonged to, if any.
+     */
+    void claim(Player player, GameContext context) {
+	GameContext previous = owners.put(player.getUniqueId(), context);
+	if (previous != null && previous != context) {
+	    previous.setTeamOf(player, null);
+	}
+    }
+
+    /**
+     * Called when a player leaves its last team in a context.
+     */
+    void release(Player player, GameContext context) {
+	UUID id = player.getUniqueId();
+	if (owners.get(id) == context) {
+	    owners.remove(id);
+	}
+    }
+
+    /**
+     * Called when a context restores the membership of a player who is
+     * offline. The context is notified when the player connects.
+     */
+    void expect(UUID id, GameContext context) {
+	expected.put(id, context);
+    }
+
+    /**
+     * Called when a context drops the restored membership of a player.
+     */
+    void forget(UUID id, GameContext context) {
+	if (expected.get(id) == context) {
+	    expected.remove(id);
+	}
+    }
+
+    /**
+     * Called when a player connects.
+     * @return the context expecting the player, or {@code null}.
+     */
+    GameContext takeExpected(UUID id) {
+	return expected.remove(id);
+    }
+
+}
@@ -0,0 +1,70 @@
+package io.github.totom3.teamsystem;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.bukkit.entity.Player;
+
+/**
+ * Collects the announcements made during a tick, and sends them once at the
+ * end of the tick. All the names announced with the same {@code Announcement}
+ * are combined into a single message, and every message is rendered once and
+ * shared by all recipients, which receive all the messages of the tick in a
+ * single call, in the order their announcements were first made. Main thread
+ * only.
+ * @author Totom3
+ * @see GameContext#getBroadcaster()
+ */
+public class BroadcastAggregator {
+
+    private final Map<Announcement, List<String>> pending;
+
+    public BroadcastAggregator() {
+	// keeps the lines in the order the announcements were first made, so
+	// that the messages of a tick are the same from run to run
+	this.pending = new LinkedHashMap<>();
+    }
+
+    /**
+     * Adds a name to an announcement, to be sent at the end of the tick.
+     * @param announcement the announcement. Must not be {@code null}.
+     * @param name         the name of the player. Must not be {@code null}.
+     * @throws NullPointerException if either argument is {@code null}.
+     */
+    public void announce(Announcement announcement, String name) {
+	List<String> names = pending.get(checkNotNull(announcement, "Announcement cannot be null"));
+	if (names == null) {
+	    names = new ArrayList<>();
+	    pending.put(announcement, names);
+	}
+	names.add(checkNotNull(name, "Name cannot be null"));
+    }
+
+    public boolean isEmpty() {
+	return pending.isEmpty();
+    }
+
+    /**
+     * Renders the pending announcements, and sends them to every recipient.
+     * @param recipients the players to send the messages to.
+     */
+    void flush(Iterable<? extends Player> recipients) {
+	if (pending.isEmpty()) {
+	    return;
+	}
+
+	String[] lines = new String[pending.size()];
+	int i = 0;
+	for (Map.Entry<Announcement, List<String>> entry : pending.entrySet()) {
+	    lines[i++] = entry.getKey().render(entry.getValue());
+	}
+	pending.clear();
+
+	for (Player player : recipients) {
+	    player.sendMessage(lines);
+	}
+    }
+
+}
@@ -0,0 +1,47 @@
+package io.github.totom3.teamsystem;
+
+import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.Scoreboard;
+import org.bukkit.scoreboard.Team;
+
+/**
+ * The default {@code TeamBackend}: teams are the Bukkit teams of a scoreboard,
+ * which the players of the context are given.
+ * @author Totom3
+ */
+final class BukkitTeamBackend implements TeamBackend {
+
+    private final Scoreboard scoreboard;
+
+    BukkitTeamBackend(Scoreboard scoreboard) {
+	this.scoreboard = scoreboard;
+    }
+
+    @Override
+    public Team getTeam(String name) {
+	Team team = scoreboard.getTeam(name);
+	if (team == null) {
+	    team = scoreboard.registerNewTeam(name);
+	}
+	return team;
+    }
+
+    @Override
+    public boolean show(Player player) {
+	if (player.getScoreboard() == scoreboard) {
+	    return false;
+	}
+	player.setScoreboard(scoreboard);
+	return true;
+    }
+
+    @Override
+    public void hide(Player player) {
+	// players keep the scoreboard
+    }
+
+    @Override
+    public void flush() {
+	// Bukkit sends changes as they are made
+    }
+}
@@ -0,0 +1,134 @@
+package io.github.totom3.teamsystem;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash table associating packed grid cells to the set of
+ * roster slots they contain. Keys are primitive {@code long}s, so that lookups
+ * neither box nor allocate. Empty cells are removed, so that {@link #size()}
+ * is the number of occupied cells.
+ * @author Totom3
+ */
+final class CellMap {
+
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+
+    private long[] keys;
+    private SlotSet[] values;
+    private int size;
+    private int shift;
+
+    CellMap() {
+	this.keys = new long[16];
+	this.values = new SlotSet[16];
+	this.shift = 64 - 4;
+    }
+
+    int size() {
+	return size;
+    }
+
+    /**
+     * Returns the slots of a cell.
+     * @param key the packed cell.
+     * @return the slots of the cell, or {@code null} if it is empty.
+     */
+    SlotSet get(long key) {
+	for (int i = index(key);; i = (i + 1) & (keys.length - 1)) {
+	    SlotSet value = values[i];
+	    if (value == null || keys[i] == key) {
+		return value;
+	    }
+	}
+    }
+
+    void add(long key, int slot) {
+	int i = index(key);
+	for (; values[i] != null; i = (i + 1) & (keys.length - 1)) {
+	    if (keys[i] == key) {
+		values[i].add(slot);
+		return;
+	    }
+	}
+
+	SlotSet value = new SlotSet();
+	value.add(slot);
+	keys[i] = key;
+	values[i] = value;
+	if (++size * 2 > keys.length) {
+	    resize(keys.length * 2);
+	}
+    }
+
+    void remove(long key, int slot) {
+	for (int i = index(key); values[i] != null; i = (i + 1) & (keys.length - 1)) {
+	    if (keys[i] == key) {
+		SlotSet value = values[i];
+		value.remove(slot);
+		if (value.isEmpty()) {
+		    delete(i);
+		}
+		return;
+	    }
+	}
+    }
+
+    void clear() {
+	Arrays.fill(values, null);
+	size = 0;
+    }
+
+    // Entries are read by index, from 0 inclusive to capacity() exclusive;
+    // valueAt(i) is null for free entries.
+    int capacity() {
+	return keys.length;
+    }
+
+    long keyAt(int index) {
+	return keys[index];
+    }
+
+    SlotSet valueAt(int index) {
+	return values[index];
+    }
+
+    private int index(long key) {
+	return (int) ((key * MIX) >>> shift);
+    }
+
+    private void delete(int index) {
+	// Shift back the following entries of the cluster, so that lookups
+	// never stop early on the freed entry.
+	int mask = keys.length - 1;
+	int free = index;
+	for (int i = (index + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+	    int home = index(keys[i]);
+	    if (((i - home) & mask) >= ((i - free) & mask)) {
+		keys[free] = keys[i];
+		values[free] = values[i];
+		free = i;
+	    }
+	}
+	values[free] = null;
+	--size;
+    }
+
+    private void resize(int capacity) {
+	long[] oldKeys = keys;
+	SlotSet[] oldValues = values;
+	keys = new long[capacity];
+	values = new SlotSet[capacity];
+	shift = 64 - Integer.numberOfTrailingZeros(capacity);
+	for (int i = 0; i < oldKeys.length; ++i) {
+	    if (oldValues[i] != null) {
+		int j = index(oldKeys[i]);
+		while (values[j] != null) {
+		    j = (j + 1) & (capacity - 1);
+		}
+		keys[j] = oldKeys[i];
+		values[j] = oldValues[i];
+	    }
+	}
+    }
+
+}
@@ -0,0 +1,234 @@
+package io.github.totom3.teamsystem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+
+/**
+ * A multiple-producers, single-consumer queue of commands submitted to a
+ * {@code GameContext} from any thread, and applied by the main thread once per
+ * tick. Moves submitted for the same player during a tick are collapsed into a
+ * single transition, and all moves of a tick are applied as one batch.
+ * @author Totom3
+ * @see GameContext#submitSetTeamOf(Player, ChatColor)
+ */
+final class CommandQueue {
+
+    private final GameContext context;
+    private final ConcurrentLinkedQueue<Object> queue;
+    private volatile boolean closed;
+
+    CommandQueue(GameContext context) {
+	this.context = context;
+	this.queue = new ConcurrentLinkedQueue<>();
+    }
+
+    CompletableFuture<GameTeam> submitMove(Player player, ChatColor color) {
+	MoveCommand command = new MoveCommand(player, color);
+	queue.add(command);
+	if (closed) {
+	    cancelPending();
+	}
+	return command.future;
+    }
+
+    CompletableFuture<Void> submitTask(Runnable task) {
+	TaskCommand command = new TaskCommand(task);
+	queue.add(command);
+	if (closed) {
+	    cancelPending();
+	}
+	return command.future;
+    }
+
+    boolean isEmpty() {
+	return queue.isEmpty();
+    }
+
+    /**
+     * Fails every pending command, and every command submitted from now on.
+     * Called when the context is closed.
+     */
+    void close() {
+	closed = true;
+	cancelPending();
+    }
+
+    private void cancelPending() {
+	Object command;
+	while ((command = queue.poll()) != null) {
+	    IllegalStateException ex = new IllegalStateException("GameContext is closed");
+	    if (command instanceof TaskCommand) {
+		((TaskCommand) command).future.completeExceptionally(ex);
+	    } else {
+		((MoveCommand) command).future.completeExceptionally(ex);
+	    }
+	}
+    }
+
+    /**
+     * Applies every command submitted so far, in the order they are polled.
+     * Tasks run as soon as they are polled; moves are collapsed per player,
+     * and applied as one batch once the queue is empty, that is after every
+     * task of this drain. A move that can't be applied only fails its own
+     * future: the other moves of the batch are still applied. Main thread
+     * only.
+     */
+    void drain() {
+	if (queue.isEmpty()) {
+	    return;
+	}
+
+	Map<UUID, Transition> transitions = new LinkedHashMap<>();
+	Object command;
+	while ((command = queue.poll()) != null) {
+	    if (command instanceof TaskCommand) {
+		((TaskCommand) command).run();
+		continue;
+	    }
+
+	    MoveCommand move = (MoveCommand) command;
+	    RuntimeException error = checkMove(move.player, move.color);
+	    if (error != null) {
+		move.future.completeExceptionally(error);
+		continue;
+	    }
+
+	    UUID id = move.player.getUniqueId();
+	    Transition transition = transitions.get(id);
+	    if (transition == null) {
+		transition = new Transition(context.getTeamOf(move.player));
+		transitions.put(id, transition);
+	    }
+	    transition.player = move.player;
+	    transition.color = move.color;
+	    transition.futures.add(move.future);
+	}
+
+	if (transitions.isEmpty()) {
+	    return;
+	}
+
+	// the tasks run above may have removed or drained a team since the
+	// moves into it were checked
+	Map<Player, ChatColor> assignments = new HashMap<>();
+	for (Iterator<Transition> it = transitions.values().iterator(); it.hasNext();) {
+	    Transition transition = it.next();
+	    RuntimeException error = checkMove(transition.player, transition.color);
+	    if (error != null) {
+		transition.fail(error);
+		it.remove();
+		continue;
+	    }
+	    assignments.put(transition.player, transition.color);
+	}
+
+	try {
+	    context.assignAll(assignments);
+	} catch (RuntimeException ex) {
+	    // a hook vetoed one of the moves: apply them one by one, so that only
+	    // the offending ones fail
+	    for (Transition transition : transitions.values()) {
+		try {
+		    context.assignAll(Collections.singletonMap(transition.player, transition.color));
+		} catch (RuntimeException moveEx) {
+		    transition.fail(moveEx);
+		    continue;
+		}
+		transition.complete();
+	    }
+	    return;
+	}
+
+	for (Transition transition : transitions.values()) {
+	    transition.complete();
+	}
+    }
+
+    /**
+     * Checks that a move can be applied.
+     * @return the exception to fail the move with, or {@code null} if the move
+     *         is valid.
+     */
+    private RuntimeException checkMove(Player player, ChatColor color) {
+	if (color == null) {
+	    return null;
+	}
+	GameTeam team = context.getTeam(color);
+	if (team == null) {
+	    return new IllegalArgumentException("No such team " + color);
+	}
+	if (team.isDraining()) {
+	    return new IllegalStateException("Team " + color + " is draining");
+	}
+	if (!player.isOnline()) {
+	    return new IllegalStateException("Player " + player.getName() + " is offline");
+	}
+	return null;
+    }
+
+    private static class Transition {
+
+	final GameTeam previousTeam;
+	final List<CompletableFuture<GameTeam>> futures = new ArrayList<>(1);
+	Player player;
+	ChatColor color;
+
+	Transition(GameTeam previousTeam) {
+	    this.previousTeam = previousTeam;
+	}
+
+	void complete() {
+	    for (CompletableFuture<GameTeam> future : futures) {
+		future.complete(previousTeam);
+	    }
+	}
+
+	void fail(RuntimeException ex) {
+	    for (CompletableFuture<GameTeam> future : futures) {
+		future.completeExceptionally(ex);
+	    }
+	}
+    }
+
+    private static class MoveCommand {
+
+	final Player player;
+	final ChatColor color;
+	final CompletableFuture<GameTeam> future = new CompletableFuture<>();
+
+	MoveCommand(Player player, ChatColor color) {
+	    this.player = player;
+	    this.color = color;
+	}
+    }
+
+    private static class TaskCommand {
+
+	final Runnable task;
+	final CompletableFuture<Void> future = new CompletableFuture<>();
+
+	TaskCommand(Runnable task) {
+	    this.task = task;
+	}
+
+	void run() {
+	    try {
+		task.run();
+		future.complete(null);
+	    } catch (RuntimeException ex) {
+		future.completeExceptionally(ex);
+	    }
+	}
+    }
+
+}
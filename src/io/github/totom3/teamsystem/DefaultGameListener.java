@@ -1,10 +1,19 @@
 package io.github.totom3.teamsystem;
 
+import org.bukkit.Location;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerKickEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
 
 /**
  *
@@ -13,25 +22,181 @@ import org.bukkit.event.player.PlayerQuitEvent;
 public class DefaultGameListener implements Listener {
 
     private final GameContext context;
+    private final Listener positionTracker = new PositionTracker();
 
     public DefaultGameListener(GameContext context) {
 	this.context = context;
     }
 
+    public GameContext getContext() {
+	return context;
+    }
+
+    @EventHandler
+    public void on(PlayerJoinEvent event) {
+	onConnect(event.getPlayer());
+    }
+
     @EventHandler
-    void on(PlayerQuitEvent event) {
-	onQuit(event.getPlayer());
+    public void on(PlayerQuitEvent event) {
+	dispatchQuit(event.getPlayer());
     }
 
     @EventHandler
-    void on(PlayerKickEvent event) {
-	onQuit(event.getPlayer());
+    public void on(PlayerKickEvent event) {
+	dispatchQuit(event.getPlayer());
+    }
+
+    /**
+     * Only called by the context of this listener. Returns the listener
+     * calling {@link #onMove(Player, Location)}, which a standalone context
+     * registers along with its spatial index: contexts without one don't see
+     * every move of every player of the server.
+     * @return the listener of the moves of players.
+     */
+    final Listener getPositionTracker() {
+	return positionTracker;
+    }
+
+    /**
+     * Returns whether or not a movement changes the position of the player,
+     * rather than only the direction it is looking at.
+     */
+    static boolean hasMoved(Location from, Location to) {
+	return from.getX() != to.getX() || from.getY() != to.getY() || from.getZ() != to.getZ() || from.getWorld() != to.getWorld();
+    }
+
+    // -------------------=[ Dispatch ]=-------------------
+    // Event handlers call the hooks through these methods, which record their
+    // latency in the metrics of the context.
+    protected final void dispatchQuit(Player player) {
+	Metrics metrics = context.getMetrics();
+	long start = metrics.start();
+	try {
+	    onQuit(player);
+	} finally {
+	    metrics.stop(Metrics.Probe.QUIT, start);
+	}
+    }
+
+    protected final void dispatchDamage(EntityDamageByEntityEvent event) {
+	Metrics metrics = context.getMetrics();
+	long start = metrics.start();
+	try {
+	    onDamage(event);
+	} finally {
+	    metrics.stop(Metrics.Probe.DAMAGE, start);
+	}
     }
 
-    void onQuit(Player player) {
+    protected final void dispatchDeath(PlayerDeathEvent event) {
+	Metrics metrics = context.getMetrics();
+	long start = metrics.start();
+	try {
+	    onDeath(event);
+	} finally {
+	    metrics.stop(Metrics.Probe.DEATH, start);
+	}
+    }
+
+    // -------------------=[ Hooks ]=-------------------
+    /**
+     * Called when a player connects to the server. Puts the player back in
+     * the team it was kept in by the {@code ReconnectCache} of the context, or
+     * else in the team it had in a restored state of the context, if any.
+     * Contexts managed by an {@code ArenaRegistry} only get this hook called
+     * for the players they expect or keep.
+     * @param player the player.
+     * @see TeamStateStore#restore(String, GameContext)
+     */
+    protected void onConnect(Player player) {
+	if (!context.getReconnectCache().unpark(player)) {
+	    context.restoreMember(player);
+	}
+    }
+
+    /**
+     * Called when a player quits or is kicked. Removes the player from its
+     * team, unless the {@code ReconnectCache} of the context keeps it for a
+     * grace period.
+     * @param player the player.
+     * @see GameContext#getReconnectCache()
+     */
+    protected void onQuit(Player player) {
 	GameTeam team = context.getTeamOf(player);
-	if (team != null) {
+	if (team != null && !context.getReconnectCache().park(player)) {
 	    team.removePlayer(player);
 	}
     }
+
+    /**
+     * Called by the {@code ReconnectCache} of the context when a disconnected
+     * player didn't reconnect in time, or was evicted to make room. Removes
+     * the player from its team. The hooks of the event bus are notified, but
+     * can't veto the removal.
+     * @param player the disconnected player, still in its team.
+     */
+    protected void onGraceExpired(Player player) {
+	GameTeam team = context.getTeamOf(player);
+	if (team != null) {
+	    team.removePlayerForced(player);
+	}
+    }
+
+    /**
+     * Called when a player moves, teleports, respawns or changes world, once
+     * the spatial index of the context exists. Records the new position of
+     * the player in the spatial index of the context. Overriding methods must
+     * call {@code super.onMove()}.
+     * @param player   the player.
+     * @param location the new location of the player.
+     * @see GameContext#getSpatialIndex()
+     */
+    protected void onMove(Player player, Location location) {
+	context.updatePosition(player, location);
+    }
+
+    /**
+     * Called by an {@code ArenaRegistry} when a player of this listener's
+     * context is damaged by another player. Does nothing by default.
+     * Standalone contexts must declare their own {@code EventHandler} for this
+     * hook to be called.
+     * @param event the event, whose entity and damager are both players.
+     */
+    protected void onDamage(EntityDamageByEntityEvent event) {
+    }
+
+    /**
+     * Called by an {@code ArenaRegistry} when a player of this listener's
+     * context dies. Does nothing by default. Standalone contexts must declare
+     * their own {@code EventHandler} for this hook to be called.
+     * @param event the event.
+     */
+    protected void onDeath(PlayerDeathEvent event) {
+    }
+
+    private final class PositionTracker implements Listener {
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void on(PlayerMoveEvent event) {
+	    if (hasMoved(event.getFrom(), event.getTo())) {
+		onMove(event.getPlayer(), event.getTo());
+	    }
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void on(PlayerTeleportEvent event) {
+	    onMove(event.getPlayer(), event.getTo());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void on(PlayerRespawnEvent event) {
+	    onMove(event.getPlayer(), event.getRespawnLocation());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void on(PlayerChangedWorldEvent event) {
+	    onMove(event.getPlayer(), event.getPlayer().getLocation());
+	}
+    }
 }
@@ -1,14 +1,30 @@
 package io.github.totom3.teamsystem;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
+import org.bukkit.Location;
 import org.bukkit.entity.Player;
-import org.bukkit.event.Listener;
+import org.bukkit.event.HandlerList;
+import org.bukkit.scheduler.BukkitTask;
 import org.bukkit.scoreboard.NameTagVisibility;
 import org.bukkit.scoreboard.Scoreboard;
 import org.bukkit.scoreboard.Team;
@@ -17,11 +33,59 @@ import org.bukkit.scoreboard.Team;
  *
  * @author Totom3
  */
-public class GameContext {
+public class GameContext implements AutoCloseable {
+
+    /**
+     * The maximum number of teams of a context. Team ids range from {@code 0}
+     * inclusive to this value exclusive.
+     */
+    public static final int MAX_TEAMS = 1 << 16;
+
+    private static final Logger LOGGER = Logger.getLogger(GameContext.class.getName());
+
+    // Maximum number of names printed by toString()
+    private static final int TO_STRING_NAMES = 20;
 
     private final Scoreboard scoreboard;
-    private final Map<Player, GameTeam> players;
-    private final Map<ChatColor, GameTeam> teams;
+    private final ArenaRegistry registry;
+    private final String arenaName;
+    private final String namespace;
+    private final DefaultGameListener listener;
+    private final BukkitTask tickTask;
+    private final CommandQueue commands;
+    private final TickScheduler tickScheduler;
+    private final BroadcastAggregator broadcaster;
+    private final Metrics metrics;
+    private final LeakDetector.Tracker leakTracker;
+    private final TeamEventBus eventBus;
+    private volatile boolean closed;
+    private final TeamBalancer balancer;
+    private TeamSpatialIndex spatialIndex;
+    private TeamJournal journal;
+    private final ReconnectCache reconnectCache;
+    private ScoreboardPool scoreboardPool;
+    private TeamBackend teamBackend;
+    private final PlayerRoster roster;
+
+    // Teams indexed by id. The table grows with the greatest id; relations
+    // are stored in rows indexed by the id of the first team, allocated on
+    // first write (null rows and entries hold the default relation).
+    private GameTeam[] teamTable;
+    private int teamCount;
+    private TeamRelation[][] relationRows;
+
+    // Memberships restored by a TeamStateStore for players not online yet
+    private final Map<UUID, PendingMember> pendingMembers = new HashMap<>();
+
+    // Membership snapshots
+    private final Thread mainThread;
+    private volatile MembershipSnapshot snapshot;
+    private boolean snapshotDirty;
+
+    private boolean settingsDirty;
+
+    // How long an empty team keeps its Bukkit team
+    private long teamReleaseNanos = TimeUnit.SECONDS.toNanos(60);
 
     // Global settings
     private boolean allowFriendlyFire = true;
@@ -34,72 +98,503 @@ public class GameContext {
 
     public GameContext(Scoreboard scoreboard) {
 	this.scoreboard = checkNotNull(scoreboard, "Bukkit Scoreboard cannot be null");
-	this.players = new WeakHashMap<>();
-	this.teams = new EnumMap<>(ChatColor.class);
+	this.teamBackend = new BukkitTeamBackend(scoreboard);
+	this.registry = null;
+	this.arenaName = null;
+	this.namespace = null;
+	this.roster = new PlayerRoster();
+	this.teamTable = new GameTeam[ChatColor.values().length];
+	this.relationRows = new TeamRelation[teamTable.length][];
+	this.balancer = new TeamBalancer(this, teamTable.length);
+	this.mainThread = Thread.currentThread();
+	this.commands = new CommandQueue(this);
+	this.tickScheduler = new TickScheduler();
+	this.broadcaster = new BroadcastAggregator();
+	this.metrics = new Metrics();
+	this.eventBus = new TeamEventBus();
+	this.reconnectCache = new ReconnectCache(this);
+	publishSnapshot();
 
-	Listener listener = makeListener();
+	this.listener = makeListener();
 	if (listener != null) {
 	    Bukkit.getPluginManager().registerEvents(listener, Main.get());
 	}
+	this.tickTask = Bukkit.getScheduler().runTaskTimer(Main.get(), this::tick, 1, 1);
+	this.leakTracker = LeakDetector.track(this, getClass().getName());
+    }
+
+    /**
+     * Creates a {@code GameContext} managed by an {@code ArenaRegistry}. The
+     * context uses the scoreboard of the registry, and its listener is not
+     * registered: the registry routes events to it instead. The names of the
+     * Bukkit teams of the context are prefixed with a namespace unique to the
+     * arena. The context is ticked by the registry.
+     * @param registry  the registry to add the context to. Must not be
+     *                  {@code null}.
+     * @param arenaName the name of the arena. Must not be {@code null} and must
+     *                  be unique in the registry.
+     * @throws IllegalArgumentException if {@code registry} already holds an
+     *                                  arena with the specified name.
+     * @throws IllegalStateException    if {@code registry} is closed.
+     */
+    public GameContext(ArenaRegistry registry, String arenaName) {
+	this.registry = checkNotNull(registry, "ArenaRegistry cannot be null");
+	this.scoreboard = registry.getScoreboard();
+	this.teamBackend = new BukkitTeamBackend(scoreboard);
+	this.arenaName = arenaName;
+	this.namespace = registry.add(arenaName, this);
+	this.roster = new PlayerRoster();
+	this.teamTable = new GameTeam[ChatColor.values().length];
+	this.relationRows = new TeamRelation[teamTable.length][];
+	this.balancer = new TeamBalancer(this, teamTable.length);
+	this.mainThread = Thread.currentThread();
+	this.commands = new CommandQueue(this);
+	this.tickScheduler = new TickScheduler();
+	this.broadcaster = new BroadcastAggregator();
+	this.metrics = new Metrics();
+	this.eventBus = new TeamEventBus();
+	this.reconnectCache = new ReconnectCache(this);
+	publishSnapshot();
+
+	this.listener = makeListener();
+	this.tickTask = null;
+	this.leakTracker = LeakDetector.track(this, getClass().getName() + " '" + arenaName + "'");
     }
 
+    /**
+     * Returns the teams of this {@code GameContext} that can be looked up by
+     * color, as of the latest {@linkplain #snapshot() snapshot}. May be called
+     * from any thread.
+     * @return an immutable {@code Map} associating colors to teams.
+     * @see #getTeam(ChatColor)
+     */
     public Map<ChatColor, GameTeam> teams() {
-	return Collections.unmodifiableMap(teams);
+	return snapshot().teams();
+    }
+
+    /**
+     * Returns every team of this {@code GameContext}, ordered by id, as of the
+     * latest {@linkplain #snapshot() snapshot}. May be called from any thread.
+     * @return an immutable {@code List} of the teams.
+     */
+    public List<GameTeam> allTeams() {
+	return snapshot().allTeams();
     }
 
+    /**
+     * Returns the players of this {@code GameContext} and their team, as of the
+     * latest {@linkplain #snapshot() snapshot}. May be called from any thread.
+     * @return an immutable {@code Map} associating each player to its team.
+     */
     public Map<Player, GameTeam> players() {
-	return Collections.unmodifiableMap(players);
+	return snapshot().players();
+    }
+
+    /**
+     * Returns an immutable snapshot of the teams and players of this
+     * {@code GameContext}. This method never blocks and may be called from any
+     * thread. When called from the main thread, the returned snapshot always
+     * reflects the current membership; other threads get the snapshot
+     * published at the end of the latest tick in which the membership
+     * changed.
+     * @return the latest {@code MembershipSnapshot} of this context.
+     */
+    public MembershipSnapshot snapshot() {
+	if (Thread.currentThread() == mainThread && snapshotDirty) {
+	    publishSnapshot();
+	}
+	return snapshot;
     }
 
     public Scoreboard getScoreboard() {
 	return scoreboard;
     }
 
+    /**
+     * Returns the registry managing this {@code GameContext}.
+     * @return the {@code ArenaRegistry} of this context, or {@code null} if
+     *         this context is standalone.
+     */
+    public ArenaRegistry getRegistry() {
+	return registry;
+    }
+
+    /**
+     * Returns the name of this context in its registry.
+     * @return the arena name, or {@code null} if this context is standalone.
+     */
+    public String getArenaName() {
+	return arenaName;
+    }
+
+    public DefaultGameListener getListener() {
+	return listener;
+    }
+
+    /**
+     * Returns the team of a color: the team whose id is the ordinal of that
+     * color, if it has that color. Teams created with
+     * {@link #createTeam(ChatColor)} can always be looked up this way; teams
+     * created with an arbitrary id should be looked up by id.
+     * @param color the color of the team. Must not be a format and must not be
+     *              equal to {@link ChatColor#RESET}.
+     * @return the team of that color, or {@code null} if there is none.
+     */
     public GameTeam getTeam(ChatColor color) {
-	return teams.get(GameUtils.checkColor(color));
+	GameTeam team = getTeam(GameUtils.checkColor(color).ordinal());
+	return (team != null && team.getColor() == color) ? team : null;
+    }
+
+    /**
+     * Returns the team with the specified id, in constant time.
+     * @param id the id of the team.
+     * @return the team with that id, or {@code null} if there is none.
+     */
+    public GameTeam getTeam(int id) {
+	return (id >= 0 && id < teamTable.length) ? teamTable[id] : null;
     }
 
     public boolean hasTeam(ChatColor color) {
-	/*
-	 * using Map#get(K) instead of Map#containsKey() in case extending
-	 * classes have a bug where keys are assigned to null values (in which
-	 * case containsKey() will return true)
-	 */
-	return teams.get(GameUtils.checkColor(color)) != null;
+	return getTeam(color) != null;
+    }
+
+    public boolean hasTeam(int id) {
+	return getTeam(id) != null;
+    }
+
+    /**
+     * Returns the number of teams of this {@code GameContext}.
+     * @return the number of teams.
+     */
+    public int getTeamCount() {
+	return teamCount;
     }
 
     // -------------------=[ Team Editing ]=-------------------
     // Only subclasses may create, remove, or clear teams.
+    /**
+     * Creates the team of a color, whose id is the ordinal of the color. Any
+     * team previously holding that id is invalidated.
+     * @param color the color of the team.
+     * @return the team previously holding the id, or {@code null}.
+     */
     protected GameTeam createTeam(ChatColor color) {
-	GameTeam newTeam = makeTeam(GameUtils.checkColor(color));
-	GameTeam oldTeam = teams.put(color, newTeam);
+	return putTeam(makeTeam(GameUtils.checkColor(color)));
+    }
+
+    /**
+     * Creates a team with an arbitrary id. Any team previously holding that id
+     * is invalidated. Ids should be kept dense, since the tables of the context
+     * grow with the greatest id.
+     * @param id    the id of the team, between {@code 0} inclusive and
+     *              {@link #MAX_TEAMS} exclusive.
+     * @param color the color of the team. Several teams may share a color.
+     * @return the team previously holding the id, or {@code null}.
+     * @throws IllegalArgumentException if {@code id} is out of range.
+     */
+    protected GameTeam createTeam(int id, ChatColor color) {
+	return putTeam(makeTeam(checkTeamId(id), GameUtils.checkColor(color)));
+    }
+
+    private GameTeam putTeam(GameTeam newTeam) {
+	if (closed) {
+	    throw new IllegalStateException("GameContext is closed");
+	}
+	int id = newTeam.getId();
+	ensureTeamCapacity(id + 1);
+	GameTeam oldTeam = teamTable[id];
+	teamTable[id] = newTeam;
 
 	if (oldTeam != null) {
 	    oldTeam.invalidate();
+	    balancer.onTeamRemoved(id);
+	    if (spatialIndex != null) {
+		spatialIndex.onTeamRemoved(id);
+	    }
+	} else {
+	    ++teamCount;
+	}
+	balancer.onTeamAdded(id);
+	if (journal != null) {
+	    if (oldTeam != null) {
+		journal.teamRemoved(id);
+	    }
+	    journal.teamCreated(id, newTeam.getColor());
 	}
+	if (scoreboardPool != null) {
+	    if (oldTeam != null) {
+		scoreboardPool.onTeamRemoved(id);
+	    }
+	    scoreboardPool.onTeamAdded(newTeam);
+	}
+	snapshotDirty = true;
 	return oldTeam;
     }
 
+    private void ensureTeamCapacity(int capacity) {
+	if (capacity <= teamTable.length) {
+	    return;
+	}
+	int newLength = Math.min(Math.max(teamTable.length * 2, capacity), MAX_TEAMS);
+	teamTable = Arrays.copyOf(teamTable, newLength);
+	relationRows = Arrays.copyOf(relationRows, newLength);
+	balancer.ensureTeamCapacity(newLength);
+    }
+
+    static int checkTeamId(int id) {
+	if (id < 0 || id >= MAX_TEAMS) {
+	    throw new IllegalArgumentException("Team id out of range: " + id);
+	}
+	return id;
+    }
+
     protected void clearTeams() {
-	for (GameTeam team : teams.values()) {
-	    team.invalidate();
+	for (GameTeam team : teamTable) {
+	    if (team != null) {
+		team.invalidate();
+		balancer.onTeamRemoved(team.getId());
+		if (spatialIndex != null) {
+		    spatialIndex.onTeamRemoved(team.getId());
+		}
+		if (journal != null) {
+		    journal.teamRemoved(team.getId());
+		}
+		if (scoreboardPool != null) {
+		    scoreboardPool.onTeamRemoved(team.getId());
+		}
+	    }
 	}
-	teams.clear();
-	players.clear();
+	roster.clear();
+	Arrays.fill(teamTable, null);
+	teamCount = 0;
+	reconnectCache.clear();
+	clearPendingRestores();
+	snapshotDirty = true;
     }
 
     protected GameTeam removeTeam(ChatColor color) {
 	GameTeam team = getTeam(color);
+	return (team == null) ? null : removeTeam0(team);
+    }
+
+    protected GameTeam removeTeam(int id) {
+	GameTeam team = getTeam(id);
+	return (team == null) ? null : removeTeam0(team);
+    }
+
+    private GameTeam removeTeam0(GameTeam team) {
+	team.invalidate();
+	teamTable[team.getId()] = null;
+	--teamCount;
+	balancer.onTeamRemoved(team.getId());
+	if (spatialIndex != null) {
+	    spatialIndex.onTeamRemoved(team.getId());
+	}
+	if (journal != null) {
+	    journal.teamRemoved(team.getId());
+	}
+	if (scoreboardPool != null) {
+	    scoreboardPool.onTeamRemoved(team.getId());
+	}
+	snapshotDirty = true;
+	return team;
+    }
+
+    /**
+     * Removes a team incrementally: its players are removed over several ticks,
+     * spending at most the tick budget of this context per tick, and the team
+     * is then removed. The team is
+     * {@linkplain GameTeam#isDraining() draining} until the returned future
+     * completes.
+     * @param color the color of the team to remove.
+     * @return a future completed with the removed team, or with {@code null}
+     *         if there was no team with that color.
+     * @throws IllegalStateException if the team is already draining.
+     * @see #setTickBudgetMillis(long)
+     */
+    protected CompletableFuture<GameTeam> removeTeamIncrementally(ChatColor color) {
+	return removeTeamIncrementally(getTeam(color));
+    }
+
+    /**
+     * Removes a team incrementally, like
+     * {@link #removeTeamIncrementally(ChatColor)}.
+     * @param id the id of the team to remove.
+     * @return a future completed with the removed team, or with {@code null}
+     *         if there was no team with that id.
+     * @throws IllegalStateException if the team is already draining.
+     */
+    protected CompletableFuture<GameTeam> removeTeamIncrementally(int id) {
+	return removeTeamIncrementally(getTeam(id));
+    }
+
+    private CompletableFuture<GameTeam> removeTeamIncrementally(final GameTeam team) {
 	if (team == null) {
-	    return null;
+	    return CompletableFuture.completedFuture(null);
 	}
 
-	for (Player player : team.getPlayers()) {
-	    players.remove(player);
+	team.startDraining();
+	final CompletableFuture<GameTeam> future = new CompletableFuture<>();
+	tickScheduler.submit(new TickScheduler.Job() {
+	    @Override
+	    public boolean run(long deadline) {
+		if (!team.drain(deadline)) {
+		    return false;
+		}
+		team.stopDraining();
+		removeDrainedTeam(team);
+		future.complete(team);
+		return true;
+	    }
+
+	    @Override
+	    public void abort(RuntimeException cause) {
+		team.stopDraining();
+		future.completeExceptionally(cause);
+	    }
+	});
+	return future;
+    }
+
+    /**
+     * Removes every team incrementally, like
+     * {@link #removeTeamIncrementally(ChatColor)}. Teams created after this
+     * method is called are not removed.
+     * @return a future completed once every team is removed.
+     * @throws IllegalStateException if a team is already draining.
+     */
+    protected CompletableFuture<Void> clearTeamsIncrementally() {
+	final GameTeam[] drained = new GameTeam[teamCount];
+	int count = 0;
+	for (GameTeam team : teamTable) {
+	    if (team != null) {
+		drained[count++] = team;
+	    }
 	}
-	team.invalidate();
-	teams.remove(color);
-	return team;
+	for (GameTeam team : drained) {
+	    team.checkNotDraining();
+	}
+	for (GameTeam team : drained) {
+	    team.startDraining();
+	}
+
+	final CompletableFuture<Void> future = new CompletableFuture<>();
+	tickScheduler.submit(new TickScheduler.Job() {
+	    @Override
+	    public boolean run(long deadline) {
+		for (GameTeam team : drained) {
+		    if (!team.drain(deadline)) {
+			return false;
+		    }
+		}
+		for (GameTeam team : drained) {
+		    team.stopDraining();
+		    removeDrainedTeam(team);
+		}
+		future.complete(null);
+		return true;
+	    }
+
+	    @Override
+	    public void abort(RuntimeException cause) {
+		for (GameTeam team : drained) {
+		    team.stopDraining();
+		}
+		future.completeExceptionally(cause);
+	    }
+	});
+	return future;
+    }
+
+    private void removeDrainedTeam(GameTeam team) {
+	if (teamTable[team.getId()] == team) {
+	    removeTeam0(team);
+	}
+    }
+
+    /**
+     * Resets this context: every player instantly leaves its team, in a time
+     * independent of the number of players. This bumps the
+     * {@linkplain #getEpoch() epoch} of the context, so that memberships of
+     * previous epochs are treated as empty. Teams are kept, and are
+     * immediately ready to accept players again.
+     * <p>
+     * The Bukkit teams are cleaned up in the background, within the tick
+     * budget of this context. {@link GameTeam#onQuit(Player)} is not called
+     * for the players of a reset context.
+     * @see #setTickBudgetMillis(long)
+     */
+    public void reset() {
+	TeamChangeEvent event = eventBus.beforeReset();
+	roster.reset();
+	balancer.onReset();
+	if (spatialIndex != null) {
+	    spatialIndex.onReset();
+	}
+	if (journal != null) {
+	    journal.reset();
+	}
+	if (scoreboardPool != null) {
+	    scoreboardPool.onReset();
+	}
+	reconnectCache.clear();
+	clearPendingRestores();
+	for (GameTeam team : teamTable) {
+	    if (team == null) {
+		continue;
+	    }
+	    final GameTeam fTeam = team;
+	    final SlotSet stale = team.resetMembers();
+	    if (stale.isEmpty()) {
+		continue;
+	    }
+
+	    tickScheduler.submit(new TickScheduler.Job() {
+		@Override
+		public boolean run(long deadline) {
+		    return fTeam.reconcile(stale, deadline);
+		}
+
+		@Override
+		public void abort(RuntimeException cause) {
+		    fTeam.abandon(stale);
+		}
+	    });
+	}
+	snapshotDirty = true;
+	eventBus.publish(event);
+    }
+
+    /**
+     * Returns the number of restored memberships waiting for their player to
+     * connect.
+     * @return the number of pending restored memberships.
+     * @see TeamStateStore#restore(String, GameContext)
+     */
+    public int getPendingRestoreCount() {
+	return pendingMembers.size();
+    }
+
+    /**
+     * Drops every restored membership whose player hasn't connected yet. Called
+     * by {@link #reset()} and {@link #clearTeams()}.
+     */
+    public void clearPendingRestores() {
+	if (registry != null) {
+	    for (UUID id : pendingMembers.keySet()) {
+		registry.forget(id, this);
+	    }
+	}
+	pendingMembers.clear();
+    }
+
+    /**
+     * Returns the current epoch of this context, which is incremented by every
+     * call to {@link #reset()}.
+     * @return the epoch of this context.
+     */
+    public int getEpoch() {
+	return roster.getEpoch();
     }
 
     // -------------------=[ Players' Team ]=-------------------
@@ -110,7 +605,22 @@ public class GameContext {
      *         the player isn't in any team.
      */
     public GameTeam getTeamOf(Player player) {
-	return players.get(GameUtils.checkPlayer(player));
+	int slot = roster.slotOf(GameUtils.checkPlayer(player));
+	return (slot == PlayerRoster.NO_SLOT) ? null : teamTable[roster.getTeam(slot)];
+    }
+
+    /**
+     * Returns the time at which a player joined its first team of this context.
+     * Moving between teams, with {@link GameTeam#addPlayer(Player)} or the
+     * batch editing methods, keeps that time; restored memberships keep the
+     * time of the original join.
+     * @param player the player.
+     * @return the join time of the player, in milliseconds since the epoch, or
+     *         {@code -1} if the player isn't in any team.
+     */
+    public long getJoinTime(Player player) {
+	int slot = roster.slotOf(GameUtils.checkPlayer(player));
+	return (slot == PlayerRoster.NO_SLOT) ? -1 : roster.getJoinTime(slot);
     }
 
     /**
@@ -127,17 +637,29 @@ public class GameContext {
      *                                  it equals {@link ChatColor#RESET}.
      */
     public GameTeam setTeamOf(Player player, ChatColor teamColor) {
+	long start = metrics.start();
+	try {
+	    return setTeamOf0(player, teamColor);
+	} finally {
+	    metrics.stop(Metrics.Probe.SET_TEAM_OF, start);
+	}
+    }
+
+    private GameTeam setTeamOf0(Player player, ChatColor teamColor) {
 	/*
 	 * Internal note: this method will first fetch the team with the
 	 * specified color, and will then call GameTeam#addPlayer(Player)
 	 * or GameTeam#removePlayer(Player). These two methods will in turn
-	 * invoke GameContext#setTeam0(Player, GameTeam), which will complete
-	 * the transition internally.
+	 * invoke GameContext#join0(Player, GameTeam) or
+	 * GameContext#leave0(int), which will complete the transition
+	 * internally.
 	 */
 	GameTeam oldTeam = getTeamOf(player);
 
 	if (teamColor == null) {
-	    oldTeam.removePlayer(player);
+	    if (oldTeam != null) {
+		oldTeam.removePlayer(player);
+	    }
 	    return oldTeam;
 	}
 
@@ -150,20 +672,1073 @@ public class GameContext {
 	return oldTeam;
     }
 
+    // -------------------=[ Async Commands ]=-------------------
+    /**
+     * Submits a change of team, to be applied by the main thread on the next
+     * tick. May be called from any thread. All the changes submitted for the
+     * same player during a tick are collapsed into one transition to the last
+     * submitted team, and the changes of every player are applied as one
+     * batch, as if by {@link #assignAll(Map)}.
+     * @param player    the player to set the team of. Must not be
+     *                  {@code null}.
+     * @param teamColor the color of the team to set, or {@code null} to remove
+     *                  the player from its team.
+     * @return a future completed with the team the player was in at the
+     *         beginning of the tick (or {@code null}), or completed
+     *         exceptionally if there is no team with the specified color, if
+     *         the player is offline by then, or if a hook vetoes the change.
+     *         A failing change doesn't prevent the other changes of the
+     *         batch.
+     * @throws NullPointerException     if {@code player} is {@code null}.
+     * @throws IllegalArgumentException if {@code teamColor} is a format, or if
+     *                                  it equals {@link ChatColor#RESET}.
+     */
+    public CompletableFuture<GameTeam> submitSetTeamOf(Player player, ChatColor teamColor) {
+	GameUtils.checkPlayer(player);
+	if (teamColor != null) {
+	    GameUtils.checkColor(teamColor);
+	}
+	return commands.submitMove(player, teamColor);
+    }
+
+    /**
+     * Submits the removal of a player from its team, to be applied by the main
+     * thread on the next tick. Equivalent to
+     * {@code submitSetTeamOf(player, null)}.
+     * @param player the player to remove. Must not be {@code null}.
+     * @return a future completed with the team the player was in at the
+     *         beginning of the tick, or {@code null}.
+     * @throws NullPointerException if {@code player} is {@code null}.
+     */
+    public CompletableFuture<GameTeam> submitRemove(Player player) {
+	return submitSetTeamOf(player, null);
+    }
+
+    /**
+     * Submits a change of the friendly fire setting, applied by the main thread
+     * on the next tick. May be called from any thread.
+     * @param allowFriendlyFire {@code true} to allow friendly fire,
+     *                          {@code false} to disable.
+     * @return a future completed once the setting is applied.
+     * @see #setFriendlyFire(boolean)
+     */
+    public CompletableFuture<Void> submitFriendlyFire(final boolean allowFriendlyFire) {
+	return commands.submitTask(() -> setFriendlyFire(allowFriendlyFire));
+    }
+
+    /**
+     * Submits a change of the can see friendly invisibles setting, applied by
+     * the main thread on the next tick. May be called from any thread.
+     * @param seeFriendlyInvisibles {@code true} to allow players to see
+     *                              invisible teammates, {@code false}
+     *                              otherwise.
+     * @return a future completed once the setting is applied.
+     * @see #setCanSeeFriendlyInvisibles(boolean)
+     */
+    public CompletableFuture<Void> submitCanSeeFriendlyInvisibles(final boolean seeFriendlyInvisibles) {
+	return commands.submitTask(() -> setCanSeeFriendlyInvisibles(seeFriendlyInvisibles));
+    }
+
+    /**
+     * Submits a change of the {@code NameTagVisibility}, applied by the main
+     * thread on the next tick. May be called from any thread.
+     * @param nameTagVisibility the new {@code NameTagVisibility} to set. Must
+     *                          not be {@code null}.
+     * @return a future completed once the setting is applied.
+     * @throws NullPointerException if {@code nameTagVisibility} is
+     *                              {@code null}.
+     * @see #setNameTagVisibility(NameTagVisibility)
+     */
+    public CompletableFuture<Void> submitNameTagVisibility(final NameTagVisibility nameTagVisibility) {
+	checkNotNull(nameTagVisibility);
+	return commands.submitTask(() -> setNameTagVisibility(nameTagVisibility));
+    }
+
+    // ----------------------=[ Lifecycle ]=----------------------
+    /**
+     * Closes this {@code GameContext}. Every player is removed from its team,
+     * the teams are invalidated and their Bukkit teams unregistered, and the
+     * listener and tick task of this context are cancelled; a context managed
+     * by an {@code ArenaRegistry} is removed from it. Pending incremental
+     * operations and commands submitted from other threads fail with an
+     * {@code IllegalStateException}, and the subscriptions of the event bus
+     * are closed once they delivered the last changes. The journal of this
+     * context, if any, is closed once it wrote the last changes.
+     * {@link GameTeam#onQuit(Player)} is called for every removed player. A
+     * closed context can't create teams anymore. Closing a closed context has
+     * no effect. Main thread only.
+     * <p>
+     * Contexts created per match must be closed once the match is over:
+     * otherwise, their listener and tick task keep them alive, along with
+     * their Bukkit teams.
+     * @see LeakDetector
+     */
+    @Override
+    public void close() {
+	if (closed) {
+	    return;
+	}
+	closed = true;
+
+	IllegalStateException cause = new IllegalStateException("GameContext is closed");
+	commands.close();
+	tickScheduler.abortAll(cause);
+	if (scoreboardPool != null) {
+	    scoreboardPool.detach();
+	    scoreboardPool = null;
+	}
+	clearTeams();
+	spatialIndex = null;
+	teamBackend.flush();
+	eventBus.close();
+	if (journal != null) {
+	    closeJournal();
+	}
+
+	if (tickTask != null) {
+	    tickTask.cancel();
+	}
+	if (listener != null && registry == null) {
+	    HandlerList.unregisterAll(listener);
+	    HandlerList.unregisterAll(listener.getPositionTracker());
+	}
+	if (registry != null) {
+	    registry.detach(this);
+	}
+	if (leakTracker != null) {
+	    leakTracker.close();
+	}
+    }
+
+    /**
+     * Returns whether or not this context was closed. May be called from any
+     * thread.
+     * @return {@code true} if this context is closed, {@code false} otherwise.
+     * @see #close()
+     */
+    public boolean isClosed() {
+	return closed;
+    }
+
+    /**
+     * Performs the per-tick work of this {@code GameContext}, such as applying
+     * the commands submitted from other threads. Called once per tick on the
+     * main thread, by the {@code ArenaRegistry} managing this context or, for
+     * standalone contexts, by a task scheduled on construction. Overriding
+     * methods must call {@code super.tick()}. Closed contexts are not ticked.
+     */
+    public void tick() {
+	if (closed) {
+	    return;
+	}
+	commands.drain();
+	reconnectCache.expire();
+	tickScheduler.run();
+	releaseIdleTeams();
+	flush();
+	eventBus.flush();
+	if (journal != null) {
+	    journal.flush();
+	}
+	broadcaster.flush(players().keySet());
+
+	// publish the changes of this tick for other threads
+	snapshot();
+    }
+
+    /**
+     * Returns the {@code BroadcastAggregator} of this context. Announcements
+     * made through it are sent to every player of this context at the end of
+     * the tick.
+     * @return the {@code BroadcastAggregator} of this context.
+     */
+    public BroadcastAggregator getBroadcaster() {
+	return broadcaster;
+    }
+
+    /**
+     * Returns the {@code Metrics} of this context, which record the latency of
+     * its team operations and event handlers.
+     * @return the {@code Metrics} of this context.
+     */
+    public Metrics getMetrics() {
+	return metrics;
+    }
+
+    /**
+     * Returns the {@code TeamBalancer} of this context, which distributes
+     * players over its teams.
+     * @return the {@code TeamBalancer} of this context.
+     */
+    public TeamBalancer getBalancer() {
+	return balancer;
+    }
+
+    /**
+     * Returns the {@code TeamSpatialIndex} of this context, which answers
+     * spatial queries on its teams. The index is created on the first call,
+     * and is then kept up to date by the listener of the context: contexts
+     * that never call this method don't pay for tracking positions. A
+     * standalone context only starts listening to the moves of players at
+     * that point.
+     * @return the {@code TeamSpatialIndex} of this context.
+     */
+    public TeamSpatialIndex getSpatialIndex() {
+	if (spatialIndex == null) {
+	    if (listener != null && registry == null && !closed) {
+		Bukkit.getPluginManager().registerEvents(listener.getPositionTracker(), Main.get());
+	    }
+	    spatialIndex = new TeamSpatialIndex(this);
+	    for (int slot = 0, bound = roster.slotBound(); slot < bound; ++slot) {
+		Player player = roster.getPlayer(slot);
+		if (roster.isLive(slot) && !reconnectCache.isParked(player.getUniqueId())) {
+		    spatialIndex.onJoin(slot, player, roster.getTeam(slot));
+		}
+	    }
+	}
+	return spatialIndex;
+    }
+
+    /**
+     * Returns the {@code TeamEventBus} publishing the changes of membership of
+     * this context, to synchronous hooks and asynchronous subscribers.
+     * @return the event bus of this context.
+     */
+    public TeamEventBus getEventBus() {
+	return eventBus;
+    }
+
+    /**
+     * Returns the {@code ReconnectCache} of this context, which keeps the
+     * players who disconnect in their team for a grace period. Disabled by
+     * default.
+     * @return the {@code ReconnectCache} of this context.
+     */
+    public ReconnectCache getReconnectCache() {
+	return reconnectCache;
+    }
+
+    /**
+     * Returns the {@code ScoreboardPool} handing out the scoreboards of the
+     * views of this context.
+     * @return the pool of this context, or {@code null} if this context has no
+     *         {@code TeamView}.
+     * @see #setTeamView(TeamView)
+     */
+    public ScoreboardPool getScoreboardPool() {
+	return scoreboardPool;
+    }
+
+    /**
+     * Sets the {@code TeamView} of this context. With a view, the players of
+     * this context don't see the scoreboard of this context, but the pooled
+     * scoreboard of their view, on which the teams are styled for that view.
+     * The players already in a team are moved to the scoreboard of their view
+     * immediately. Main thread only.
+     * @param view the view of this context, or {@code null} to show the
+     *             scoreboard of this context to every player again.
+     */
+    public void setTeamView(TeamView view) {
+	if (view != null && !(teamBackend instanceof BukkitTeamBackend)) {
+	    throw new IllegalStateException("Team views require the Bukkit teams backend");
+	}
+	if (scoreboardPool != null) {
+	    scoreboardPool.detach();
+	    scoreboardPool = null;
+	}
+	if (view != null) {
+	    scoreboardPool = new ScoreboardPool(this, view, Bukkit.getScoreboardManager()::getNewScoreboard);
+	    scoreboardPool.attach();
+	}
+    }
+
+    /**
+     * Returns the {@code TeamBackend} rendering the teams of this context.
+     * @return the backend of this context.
+     * @see #setTeamBackend(TeamBackend)
+     */
+    public TeamBackend getTeamBackend() {
+	return teamBackend;
+    }
+
+    /**
+     * Sets the {@code TeamBackend} rendering the teams of this context. By
+     * default, teams are the Bukkit teams of the scoreboard of this context.
+     * The backend can only be changed before the first team is created, and a
+     * backend other than the default one can't be used with a
+     * {@code TeamView}.
+     * @param backend the backend of this context. Must not be {@code null}.
+     * @throws IllegalStateException if this context already has teams, or a
+     *                               {@code TeamView}.
+     */
+    public void setTeamBackend(TeamBackend backend) {
+	checkNotNull(backend, "TeamBackend cannot be null");
+	if (teamCount != 0) {
+	    throw new IllegalStateException("Cannot change the backend of a context with teams");
+	}
+	if (scoreboardPool != null && !(backend instanceof BukkitTeamBackend)) {
+	    throw new IllegalStateException("Team views require the Bukkit teams backend");
+	}
+	this.teamBackend = backend;
+    }
+
+    /**
+     * Returns the journal recording the changes of this context.
+     * @return the journal of this context, or {@code null} if none.
+     * @see #setJournal(TeamJournal)
+     */
+    public TeamJournal getJournal() {
+	return journal;
+    }
+
     /**
-     * Only called by
-     * {@link GameTeam#addPlayer(Player)}, {@link GameTeam#removePlayer(Player)}
-     * and {@link GameTeam#clearPlayers()}. No other code should call this
-     * method, to ensure that no infinite loops are created.
+     * Attaches a journal to this context, which then records every change of
+     * membership, team, relation and setting of the context. A checkpoint of
+     * the current state of the context is recorded first. The context owns
+     * the attached journal, and closes it when the context is closed. Main
+     * thread only.
+     * @param journal the journal to attach, or {@code null} to detach the
+     *                current one. Detaching a journal doesn't close it: the
+     *                caller then owns it, and must close it.
+     * @see JournalReader
+     */
+    public void setJournal(TeamJournal journal) {
+	if (this.journal != null) {
+	    this.journal.flush();
+	}
+	this.journal = journal;
+	if (journal == null) {
+	    return;
+	}
+
+	journal.checkpoint();
+	journal.settings(allowFriendlyFire, seeFriendlyInvisibles, nameTagVisibility);
+	for (GameTeam team : teamTable) {
+	    if (team != null) {
+		journal.teamCreated(team.getId(), team.getColor());
+	    }
+	}
+	for (int from = 0; from < relationRows.length; ++from) {
+	    TeamRelation[] row = relationRows[from];
+	    for (int to = 0; row != null && to < row.length; ++to) {
+		if (row[to] != null) {
+		    journal.relation(from, to, row[to]);
+		}
+	    }
+	}
+	for (int slot = 0, bound = roster.slotBound(); slot < bound; ++slot) {
+	    if (roster.isLive(slot)) {
+		journal.join(roster.getPlayer(slot).getUniqueId(), roster.getTeam(slot));
+	    }
+	}
+    }
+
+    /**
+     * Returns the maximum time spent per tick on incremental operations.
+     * @return the tick budget of this context, in milliseconds.
+     */
+    public long getTickBudgetMillis() {
+	return tickScheduler.getBudgetMillis();
+    }
+
+    /**
+     * Sets the maximum time spent per tick on incremental operations, such as
+     * {@link GameTeam#clearPlayersIncrementally()}. At least one player is
+     * processed per tick whatever the budget.
+     * @param millis the new budget, in milliseconds. Must be positive.
+     * @throws IllegalArgumentException if {@code millis} is not positive.
+     */
+    public void setTickBudgetMillis(long millis) {
+	tickScheduler.setBudgetMillis(millis);
+    }
+
+    /**
+     * Returns how long a team must stay empty before its Bukkit team is
+     * released.
+     * @return the release delay of this context, in milliseconds.
+     */
+    public long getTeamReleaseMillis() {
+	return TimeUnit.NANOSECONDS.toMillis(teamReleaseNanos);
+    }
+
+    /**
+     * Sets how long a team must stay empty before its Bukkit team is
+     * unregistered. Bukkit teams are only created when the first player joins,
+     * so that teams which never get a player cost no Bukkit team, and are
+     * created again when a player joins after the release. Teams are checked
+     * once per tick.
+     * @param millis the new delay, in milliseconds. {@code 0} releases a Bukkit
+     *               team on the tick after its team is found empty.
+     * @throws IllegalArgumentException if {@code millis} is negative.
+     */
+    public void setTeamReleaseMillis(long millis) {
+	if (millis < 0) {
+	    throw new IllegalArgumentException("Release delay cannot be negative, got " + millis);
+	}
+	this.teamReleaseNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    // -------------------=[ Team Relations ]=-------------------
+    /**
+     * Returns the relation of the team of a player towards the team of another
+     * player. This method doesn't allocate nor hash any object, and is meant to
+     * be called from hot paths such as damage listeners.
+     * @param from the first player. Must not be {@code null}.
+     * @param to   the second player. Must not be {@code null}.
+     * @return the relation of {@code from}'s team towards {@code to}'s team, or
+     *         {@link TeamRelation#NEUTRAL} if either player isn't in any team.
+     * @throws NullPointerException if either player is {@code null}.
+     */
+    public TeamRelation relation(Player from, Player to) {
+	int fromSlot = roster.slotOf(GameUtils.checkPlayer(from));
+	if (fromSlot == PlayerRoster.NO_SLOT) {
+	    return TeamRelation.NEUTRAL;
+	}
+
+	int toSlot = roster.slotOf(GameUtils.checkPlayer(to));
+	if (toSlot == PlayerRoster.NO_SLOT) {
+	    return TeamRelation.NEUTRAL;
+	}
+
+	return relation0(roster.getTeam(fromSlot), roster.getTeam(toSlot));
+    }
+
+    /**
+     * Returns the relation of a team towards another team. By default, a team
+     * is an {@link TeamRelation#ALLY} of itself and an
+     * {@link TeamRelation#ENEMY} of every other team.
+     * @param from the color of the first team.
+     * @param to   the color of the second team.
+     * @return the relation of the first team towards the second team.
+     */
+    public TeamRelation getRelation(ChatColor from, ChatColor to) {
+	return relation0(GameUtils.checkColor(from).ordinal(), GameUtils.checkColor(to).ordinal());
+    }
+
+    /**
+     * Returns the relation of a team towards another team, by id.
+     * @param fromId the id of the first team.
+     * @param toId   the id of the second team.
+     * @return the relation of the first team towards the second team.
+     * @throws IllegalArgumentException if an id is out of range.
+     * @see #getRelation(ChatColor, ChatColor)
+     */
+    public TeamRelation getRelation(int fromId, int toId) {
+	return relation0(checkTeamId(fromId), checkTeamId(toId));
+    }
+
+    /**
+     * Sets the relation of a team towards another team. Relations are not
+     * symmetric: setting the relation of {@code from} towards {@code to}
+     * doesn't change the relation of {@code to} towards {@code from}.
+     * Relations are kept when teams are re-created.
+     * @param from     the color of the first team.
+     * @param to       the color of the second team.
+     * @param relation the relation to set. Must not be {@code null}.
+     * @throws NullPointerException if any argument is {@code null}.
+     */
+    public void setRelation(ChatColor from, ChatColor to, TeamRelation relation) {
+	setRelation0(GameUtils.checkColor(from).ordinal(), GameUtils.checkColor(to).ordinal(), checkNotNull(relation, "Relation cannot be null"));
+    }
+
+    /**
+     * Sets the relation of a team towards another team, by id. Only the
+     * relations differing from the default take memory.
+     * @param fromId   the id of the first team.
+     * @param toId     the id of the second team.
+     * @param relation the relation to set. Must not be {@code null}.
+     * @throws NullPointerException     if {@code relation} is {@code null}.
+     * @throws IllegalArgumentException if an id is out of range.
+     * @see #setRelation(ChatColor, ChatColor, TeamRelation)
+     */
+    public void setRelation(int fromId, int toId, TeamRelation relation) {
+	setRelation0(checkTeamId(fromId), checkTeamId(toId), checkNotNull(relation, "Relation cannot be null"));
+    }
+
+    TeamRelation relation0(int fromId, int toId) {
+	if (fromId < relationRows.length) {
+	    TeamRelation[] row = relationRows[fromId];
+	    if (row != null && toId < row.length && row[toId] != null) {
+		return row[toId];
+	    }
+	}
+	return (fromId == toId) ? TeamRelation.ALLY : TeamRelation.ENEMY;
+    }
+
+    private void setRelation0(int fromId, int toId, TeamRelation relation) {
+	ensureTeamCapacity(Math.max(fromId, toId) + 1);
+	TeamRelation[] row = relationRows[fromId];
+	if (row == null) {
+	    row = relationRows[fromId] = new TeamRelation[teamTable.length];
+	} else if (toId >= row.length) {
+	    row = relationRows[fromId] = Arrays.copyOf(row, teamTable.length);
+	}
+	row[toId] = relation;
+	if (journal != null) {
+	    journal.relation(fromId, toId, relation);
+	}
+	if (scoreboardPool != null) {
+	    // views may depend on relations
+	    markSettingsDirty();
+	}
+    }
+
+    /**
+     * Only called by {@code TeamStateStore} and {@code JournalState}. Resets
+     * every relation to its default, before the saved relations are applied.
+     */
+    void clearRelations() {
+	for (int from = 0; from < relationRows.length; ++from) {
+	    TeamRelation[] row = relationRows[from];
+	    if (row == null) {
+		continue;
+	    }
+	    if (journal != null) {
+		for (int to = 0; to < row.length; ++to) {
+		    if (row[to] != null) {
+			journal.relation(from, to, (from == to) ? TeamRelation.ALLY : TeamRelation.ENEMY);
+		    }
+		}
+	    }
+	    relationRows[from] = null;
+	}
+	if (scoreboardPool != null) {
+	    markSettingsDirty();
+	}
+    }
+
+    // -------------------=[ Batch Editing ]=-------------------
+    /**
+     * Sets the team of several players at once. The final membership of every
+     * player is computed and committed first; the Bukkit teams are then
+     * updated in a single pass, the scoreboard of each player is set at most
+     * once, and {@link GameTeam#onQuit(Player)} and
+     * {@link GameTeam#onJoin(Player)} are called once the whole batch is
+     * committed. Players are matched by UUID: if a player appears
+     * several times, only its last assignment is applied.
+     * @param assignments a {@code Map} associating players to the color of
+     *                    the team to put them in. Must not be {@code null}. A
+     *                    {@code null} color removes the player from its
+     *                    current team.
+     * @return the number of players whose team has changed.
+     * @throws NullPointerException     if {@code assignments} is {@code null},
+     *                                  or if it contains a {@code null} key.
+     * @throws IllegalArgumentException if one of the colors is a format, is
+     *                                  {@link ChatColor#RESET}, or if there is
+     *                                  no team with that color. No player is
+     *                                  moved in that case.
+     * @throws IllegalStateException    if one of the teams is draining. No
+     *                                  player is moved in that case.
+     */
+    public int assignAll(Map<? extends Player, ChatColor> assignments) {
+	checkNotNull(assignments, "Assignments cannot be null");
+
+	// Resolve every team first, so that invalid input leaves all players
+	// untouched.
+	Collection<Map.Entry<Player, ChatColor>> entries = lastByPlayer(assignments);
+	int size = entries.size();
+	Player[] movedPlayers = new Player[size];
+	GameTeam[] oldTeams = new GameTeam[size];
+	GameTeam[] newTeams = new GameTeam[size];
+	int count = 0;
+
+	for (Map.Entry<Player, ChatColor> entry : entries) {
+	    Player player = entry.getKey();
+	    ChatColor color = entry.getValue();
+
+	    GameTeam newTeam = null;
+	    if (color != null) {
+		newTeam = getTeam(color);
+		if (newTeam == null) {
+		    throw new IllegalArgumentException("No such team " + color);
+		}
+		newTeam.checkNotDraining();
+	    }
+
+	    GameTeam oldTeam = getTeamOf(player);
+	    if (oldTeam == newTeam) {
+		continue;
+	    }
+
+	    movedPlayers[count] = player;
+	    oldTeams[count] = oldTeam;
+	    newTeams[count] = newTeam;
+	    ++count;
+	}
+
+	commitBatch(movedPlayers, oldTeams, newTeams, count);
+	return count;
+    }
+
+    /**
+     * Sets the team of several players at once, like {@link #assignAll(Map)},
+     * with the teams given directly rather than by color.
+     * @param assignments a {@code Map} associating players to the team to put
+     *                    them in. Must not be {@code null}. A {@code null} team
+     *                    removes the player from its current team.
+     * @return the number of players whose team has changed.
+     * @throws NullPointerException     if {@code assignments} is {@code null},
+     *                                  or if it contains a {@code null} key.
+     * @throws IllegalArgumentException if one of the teams isn't a current
+     *                                  team of this context. No player is moved
+     *                                  in that case.
+     * @throws IllegalStateException    if one of the teams is draining. No
+     *                                  player is moved in that case.
+     */
+    public int assignTeams(Map<? extends Player, ? extends GameTeam> assignments) {
+	checkNotNull(assignments, "Assignments cannot be null");
+
+	Collection<Map.Entry<Player, GameTeam>> entries = lastByPlayer(assignments);
+	int size = entries.size();
+	Player[] movedPlayers = new Player[size];
+	GameTeam[] oldTeams = new GameTeam[size];
+	GameTeam[] newTeams = new GameTeam[size];
+	int count = 0;
+
+	for (Map.Entry<Player, GameTeam> entry : entries) {
+	    Player player = entry.getKey();
+	    GameTeam newTeam = entry.getValue();
+
+	    if (newTeam != null) {
+		if (newTeam.getContext() != this || getTeam(newTeam.getId()) != newTeam) {
+		    throw new IllegalArgumentException("Not a team of this context: " + newTeam);
+		}
+		newTeam.checkNotDraining();
+	    }
+
+	    GameTeam oldTeam = getTeamOf(player);
+	    if (oldTeam == newTeam) {
+		continue;
+	    }
+
+	    movedPlayers[count] = player;
+	    oldTeams[count] = oldTeam;
+	    newTeams[count] = newTeam;
+	    ++count;
+	}
+
+	commitBatch(movedPlayers, oldTeams, newTeams, count);
+	return count;
+    }
+
+    /**
+     * Removes several players from their team at once. Behaves like
+     * {@link #assignAll(Map)} with a {@code null} color for every player.
+     * @param players the players to remove. Must not be {@code null} and must
+     *                not contain {@code null} elements.
+     * @return the number of players that were removed from their team.
+     * @throws NullPointerException if {@code players} is {@code null}, or if it
+     *                              contains {@code null} elements.
+     */
+    public int removeAll(Collection<? extends Player> players) {
+	checkNotNull(players, "Players cannot be null");
+
+	// a player listed twice must only be removed once
+	Map<UUID, Player> unique = new LinkedHashMap<>();
+	for (Player player : players) {
+	    GameUtils.checkPlayer(player);
+	    unique.put(player.getUniqueId(), player);
+	}
+
+	int size = unique.size();
+	Player[] movedPlayers = new Player[size];
+	GameTeam[] oldTeams = new GameTeam[size];
+	int count = 0;
+
+	for (Player player : unique.values()) {
+	    GameTeam oldTeam = getTeamOf(player);
+	    if (oldTeam == null) {
+		continue;
+	    }
+
+	    movedPlayers[count] = player;
+	    oldTeams[count] = oldTeam;
+	    ++count;
+	}
+
+	commitBatch(movedPlayers, oldTeams, new GameTeam[count], count);
+	return count;
+    }
+
+    /**
+     * Keeps the last assignment of each player of a batch. A player may appear
+     * several times, as distinct {@code Player} objects with the same UUID,
+     * and would otherwise be moved once per entry, from a team it already
+     * left.
+     * @param assignments the assignments of the batch.
+     * @return the remaining assignments, ordered by the last entry of each
+     *         player.
+     * @throws NullPointerException if one of the players is {@code null}.
+     */
+    private static <V> Collection<Map.Entry<Player, V>> lastByPlayer(Map<? extends Player, ? extends V> assignments) {
+	Map<UUID, Map.Entry<Player, V>> last = new LinkedHashMap<>();
+	for (Map.Entry<? extends Player, ? extends V> entry : assignments.entrySet()) {
+	    Player player = GameUtils.checkPlayer(entry.getKey());
+	    last.remove(player.getUniqueId());
+	    last.put(player.getUniqueId(), Maps.immutableEntry(player, entry.getValue()));
+	}
+	return last.values();
+    }
+
+    private void commitBatch(Player[] players, GameTeam[] oldTeams, GameTeam[] newTeams, int count) {
+	// 0. Let the hooks veto the batch before anything changes
+	TeamChangeEvent[] events = eventBus.before(players, oldTeams, newTeams, count);
+
+	// 1. Commit the new membership
+	for (int i = 0; i < count; ++i) {
+	    Player player = players[i];
+	    GameTeam oldTeam = oldTeams[i];
+	    GameTeam newTeam = newTeams[i];
+
+	    int slot;
+	    if (oldTeam == null) {
+		slot = join0(player, newTeam);
+	    } else {
+		slot = roster.slotOf(player);
+		oldTeam.getMembers().remove(slot);
+		if (newTeam == null) {
+		    leave0(slot);
+		    continue;
+		}
+		move0(slot, player, oldTeam, newTeam);
+	    }
+	    newTeam.getMembers().add(slot);
+	}
+
+	// 2. Apply the Bukkit side in one pass
+	int bukkitCalls = 0;
+	for (int i = 0; i < count; ++i) {
+	    Player player = players[i];
+	    Team from = (oldTeams[i] == null) ? null : oldTeams[i].getBukkitTeam();
+
+	    if (newTeams[i] == null) {
+		from.removePlayer(player);
+		++bukkitCalls;
+		continue;
+	    }
+
+	    Team to = newTeams[i].getBukkitTeam();
+	    Scoreboard board = to.getScoreboard();
+
+	    // joining a team implicitly leaves any team of the same scoreboard
+	    if (from != null && from.getScoreboard() != board) {
+		from.removePlayer(player);
+		++bukkitCalls;
+	    }
+	    if (showTeams(roster.slotOf(player), player)) {
+		++bukkitCalls;
+	    }
+	    to.addPlayer(player);
+	    ++bukkitCalls;
+	}
+	metrics.countBukkitCalls(bukkitCalls);
+
+	// 3. Notify the teams
+	for (int i = 0; i < count; ++i) {
+	    if (oldTeams[i] != null) {
+		oldTeams[i].onQuit(players[i]);
+	    }
+	}
+	for (int i = 0; i < count; ++i) {
+	    if (newTeams[i] != null) {
+		newTeams[i].onJoin(players[i]);
+	    }
+	}
+
+	// 4. Publish the changes
+	eventBus.publish(events);
+    }
+
+    /**
+     * Only called by {@link GameTeam#addPlayer(Player)} and the batch editing
+     * methods. No other code should call this method, to ensure that no
+     * infinite loops are created. The player must not currently be in any
+     * team.
      * @param player the player to change the team of.
-     * @param team   the team to set, or null
+     * @param team   the team to set. Must not be {@code null}.
+     * @return the roster slot of the player.
      */
-    GameTeam setTeam0(Player player, GameTeam team) {
-	if (team == null) {
-	    return players.remove(player);
-	} else {
-	    return players.put(player, team);
+    int join0(Player player, GameTeam team) {
+	if (registry != null) {
+	    registry.claim(player, this);
+	}
+	int slot = roster.join(player);
+	roster.setTeam(slot, team.getId());
+	roster.setJoinTime(slot, System.currentTimeMillis());
+	balancer.onJoin(slot, player, team.getId());
+	if (spatialIndex != null) {
+	    spatialIndex.onJoin(slot, player, team.getId());
+	}
+	if (journal != null) {
+	    journal.join(player.getUniqueId(), team.getId());
 	}
+	if (scoreboardPool != null) {
+	    scoreboardPool.onJoin(slot, player, team);
+	}
+	snapshotDirty = true;
+	return slot;
+    }
+
+    /**
+     * Only called by {@link GameTeam#addPlayer(Player)} and the batch editing
+     * methods. No other code should call this method, to ensure that no
+     * infinite loops are created. Moves a player to another team of this
+     * context, keeping its roster slot, its join time and its claim in the
+     * registry.
+     * @param slot    the roster slot of the player.
+     * @param player  the player to move.
+     * @param oldTeam the team the player leaves.
+     * @param newTeam the team the player joins. Must not be {@code null}.
+     */
+    void move0(int slot, Player player, GameTeam oldTeam, GameTeam newTeam) {
+	roster.setTeam(slot, newTeam.getId());
+	balancer.onMove(slot, oldTeam.getId(), newTeam.getId());
+	if (spatialIndex != null) {
+	    spatialIndex.onMove(slot, oldTeam.getId(), newTeam.getId());
+	}
+	if (journal != null) {
+	    journal.move(player.getUniqueId(), oldTeam.getId(), newTeam.getId());
+	}
+	if (scoreboardPool != null) {
+	    scoreboardPool.onMove(slot, player, newTeam);
+	}
+	snapshotDirty = true;
+    }
+
+    /**
+     * Only called by {@link GameTeam#removePlayer(Player)},
+     * {@link GameTeam#clearPlayers()} and the batch editing methods. No other
+     * code should call this method, to ensure that no infinite loops are
+     * created. Releases the roster slot of a player who has left its team.
+     * @param slot the roster slot of the player.
+     */
+    void leave0(int slot) {
+	if (registry != null) {
+	    registry.release(roster.getPlayer(slot), this);
+	}
+	balancer.onLeave(slot, roster.getTeam(slot));
+	if (spatialIndex != null) {
+	    spatialIndex.onLeave(slot, roster.getTeam(slot));
+	}
+	if (journal != null) {
+	    journal.leave(roster.getPlayer(slot).getUniqueId(), roster.getTeam(slot));
+	}
+	if (scoreboardPool != null) {
+	    scoreboardPool.onLeave(slot, roster.getPlayer(slot), roster.getTeam(slot));
+	}
+	reconnectCache.onLeave(roster.getPlayer(slot).getUniqueId());
+	teamBackend.hide(roster.getPlayer(slot));
+	roster.leave(slot);
+	snapshotDirty = true;
+    }
+
+    /**
+     * Only called by {@link GameTeam#reconcile(SlotSet, long)} and
+     * {@link GameTeam#abandon(SlotSet)}. Releases the roster slot of a player
+     * left in a team by a reset of this context.
+     * @param slot the stale roster slot.
+     */
+    void releaseStale(int slot) {
+	if (registry != null) {
+	    registry.release(roster.getPlayer(slot), this);
+	}
+	teamBackend.hide(roster.getPlayer(slot));
+	roster.leave(slot);
+    }
+
+    /**
+     * Only called by the listener of this context. Records the new position
+     * of a player in the spatial index, if any.
+     * @param player   the player who moved.
+     * @param location the new location of the player.
+     */
+    void updatePosition(Player player, Location location) {
+	if (spatialIndex != null) {
+	    spatialIndex.update(player, location);
+	}
+    }
+
+    /**
+     * Only called by {@code TeamStateStore}. Records the restored membership
+     * of a player who is offline, applied when the player connects.
+     */
+    void expectMember(UUID id, int teamId, long joinTime) {
+	pendingMembers.put(id, new PendingMember(teamId, joinTime));
+	if (registry != null) {
+	    registry.expect(id, this);
+	}
+    }
+
+    /**
+     * Only called by {@code TeamStateStore}. Returns the restored memberships
+     * whose player hasn't connected yet, so that saving the state again keeps
+     * them.
+     * @return an unmodifiable view of the pending memberships, by player.
+     */
+    Map<UUID, PendingMember> getPendingMembers() {
+	return Collections.unmodifiableMap(pendingMembers);
+    }
+
+    /**
+     * Puts a player back in its restored team, if any. The player is left
+     * alone if it already is in a team, or if its team doesn't exist anymore
+     * or is draining. The player already joined its team before the state was
+     * saved: restoring it neither calls {@link GameTeam#onJoin(Player)} nor
+     * publishes a change on the event bus.
+     * @param player the player who connected.
+     * @return {@code true} if the player was put back in its team.
+     */
+    boolean restoreMember(Player player) {
+	PendingMember pending = pendingMembers.remove(player.getUniqueId());
+	if (pending == null || getTeamOf(player) != null) {
+	    return false;
+	}
+
+	GameTeam team = getTeam(pending.teamId);
+	if (team == null || team.isDraining()) {
+	    return false;
+	}
+	team.restorePlayer(player, pending.joinTime);
+	return true;
+    }
+
+    /**
+     * Only called by {@code ReconnectCache}, when a player in a team
+     * disconnects. The player stays in its team, but its position is not
+     * tracked until it reconnects.
+     * @param player the player who disconnected.
+     */
+    void park(Player player) {
+	if (spatialIndex != null) {
+	    int slot = roster.slotOf(player);
+	    spatialIndex.onLeave(slot, roster.getTeam(slot));
+	}
+    }
+
+    /**
+     * Only called by {@code ReconnectCache}. Puts a player who reconnects back
+     * in the team it was kept in: the new {@code Player} object replaces the
+     * old one, and gets the scoreboard of the team.
+     * @param player the player who reconnected.
+     * @return {@code false} if the player isn't in a team anymore.
+     */
+    boolean reconnect(Player player) {
+	int slot = roster.slotOf(player);
+	if (slot == PlayerRoster.NO_SLOT) {
+	    return false;
+	}
+
+	roster.join(player);
+	GameTeam team = teamTable[roster.getTeam(slot)];
+	if (showTeams(slot, player)) {
+	    metrics.countBukkitCalls(1);
+	}
+	if (spatialIndex != null) {
+	    spatialIndex.onJoin(slot, player, team.getId());
+	}
+	snapshotDirty = true;
+	return true;
+    }
+
+    /**
+     * Only called by {@code TeamStateStore}. Returns the row of the relations
+     * set from a team, whose {@code null} entries hold the default relation.
+     * @param fromId the id of the team.
+     * @return the row of the team, or {@code null} if every relation from the
+     *         team is the default.
+     */
+    TeamRelation[] relationRow(int fromId) {
+	return (fromId < relationRows.length) ? relationRows[fromId] : null;
+    }
+
+    int relationBound() {
+	return relationRows.length;
+    }
+
+    /**
+     * Returns an exclusive upper bound for the ids of the teams of this
+     * context.
+     */
+    int teamBound() {
+	return teamTable.length;
+    }
+
+    /**
+     * Shows the teams to a member of this context: the scoreboard of its view
+     * if this context has a {@code TeamView}, or else the teams of the
+     * backend.
+     * @param slot   the roster slot of the player.
+     * @param player the player.
+     * @return {@code true} if a Bukkit call was made.
+     */
+    boolean showTeams(int slot, Player player) {
+	if (scoreboardPool == null) {
+	    return teamBackend.show(player);
+	}
+	Scoreboard view = scoreboardPool.scoreboardOf(slot);
+	if (player.getScoreboard() == view) {
+	    return false;
+	}
+	player.setScoreboard(view);
+	return true;
+    }
+
+    PlayerRoster getRoster() {
+	return roster;
+    }
+
+    TickScheduler getTickScheduler() {
+	return tickScheduler;
+    }
+
+    private void publishSnapshot() {
+	ImmutableMap.Builder<Player, GameTeam> players = ImmutableMap.builder();
+	ImmutableMap.Builder<UUID, GameTeam> playerIds = ImmutableMap.builder();
+	for (int slot = 0, bound = roster.slotBound(); slot < bound; ++slot) {
+	    if (roster.isLive(slot)) {
+		Player player = roster.getPlayer(slot);
+		GameTeam team = teamTable[roster.getTeam(slot)];
+		players.put(player, team);
+		playerIds.put(player.getUniqueId(), team);
+	    }
+	}
+
+	Map<ChatColor, GameTeam> colorTeams = new EnumMap<>(ChatColor.class);
+	ImmutableList.Builder<GameTeam> allTeams = ImmutableList.builder();
+	ImmutableMap.Builder<GameTeam, ImmutableSet<Player>> rosters = ImmutableMap.builder();
+	for (GameTeam team : teamTable) {
+	    if (team == null) {
+		continue;
+	    }
+	    if (team.getId() == team.getColor().ordinal()) {
+		colorTeams.put(team.getColor(), team);
+	    }
+	    allTeams.add(team);
+	    rosters.put(team, team.snapshotPlayers());
+	}
+
+	long version = (snapshot == null) ? 0 : snapshot.getVersion() + 1;
+	snapshotDirty = false;
+	snapshot = new MembershipSnapshot(version, Maps.immutableEnumMap(colorTeams), allTeams.build(), players.build(), playerIds.build(), rosters.build());
+    }
+
+    /**
+     * Returns the name of the Bukkit team backing a team of this context.
+     * Standalone contexts use the name of the team for teams of a color, and
+     * {@code "Team #<id>"} for other teams; contexts managed by an
+     * {@code ArenaRegistry} use their namespace followed by the id of the team
+     * in base 36 (the color code of the team, for teams of a color), so that
+     * arenas sharing a scoreboard never collide (and the name fits the 16
+     * characters limit).
+     * @param team the team to get the Bukkit name of.
+     * @return the name of the Bukkit team of {@code team}.
+     */
+    String getBukkitTeamName(GameTeam team) {
+	int id = team.getId();
+	if (namespace != null) {
+	    return namespace + Integer.toString(id, Character.MAX_RADIX);
+	}
+	return (id == team.getColor().ordinal()) ? team.getName() : "Team #" + id;
     }
 
     /**
@@ -180,16 +1755,44 @@ public class GameContext {
 	return new GameTeam(this, color);
     }
 
+    /**
+     * Creates a team with an arbitrary id, appropriate for this
+     * {@code GameContext}. When the id is the ordinal of the color, delegates
+     * by default to {@link #makeTeam(ChatColor)}, so that subclasses only
+     * overriding that method get their teams back from
+     * {@code TeamStateStore} and {@code JournalState}; otherwise,
+     * instantiates a {@code GameTeam} with this {@code GameContext}, the
+     * specified id and the specified color. Implementations may override this
+     * method to instantiate a specialized subclass of {@code GameTeam}.
+     * @param id    the id of the team to create. The returned team must have
+     *              this id.
+     * @param color the color of the team to create. Must not be a format and
+     *              must not be equal to {@link ChatColor#RESET}.
+     * @return a newly created {@code GameTeam} with the specified id and color
+     *         and this {@code GameContext}.
+     */
+    protected GameTeam makeTeam(int id, ChatColor color) {
+	if (id == color.ordinal()) {
+	    return makeTeam(color);
+	}
+	return new GameTeam(this, id, color);
+    }
+
     /**
      * Creates a {@code Listener} that will remove players from their teams when
      * they disconnect and optionally other tasks, or {@code null} if no
      * listener should be registered. Returns by default a
-     * {@code DefaultGameListener}.
+     * {@code DefaultGameListener}. Contexts managed by an
+     * {@code ArenaRegistry} don't register this listener: the registry calls
+     * its hooks directly.
+     * <p>
+     * Players are not held weakly: if no listener is created, players must be
+     * removed from their team by other means when they disconnect.
      * @return a {@code Listener} that will remove players from their teams, or
      *         {@code null} if a listener is provided externally, or if no
      *         listener should be created.
      */
-    protected Listener makeListener() {
+    protected DefaultGameListener makeListener() {
 	return new DefaultGameListener(this);
     }
 
@@ -205,7 +1808,8 @@ public class GameContext {
 
     /**
      * Sets whether or not player may hurt other teammates. The setting will
-     * apply to all teams in this {@code GameContext}.
+     * apply to all teams in this {@code GameContext}, on the next
+     * {@linkplain #flush() flush}.
      * @param allowFriendlyFire {@code true} to allow friendly fire,
      *                          {@code false} to disable.
      */
@@ -214,9 +1818,8 @@ public class GameContext {
 	    return;
 	}
 	this.allowFriendlyFire = allowFriendlyFire;
-	for (GameTeam team : teams.values()) {
-	    team.getBukkitTeam().setAllowFriendlyFire(allowFriendlyFire);
-	}
+	markTeamsDirty(GameTeam.DIRTY_FRIENDLY_FIRE);
+	journalSettings();
     }
 
     /**
@@ -231,7 +1834,8 @@ public class GameContext {
 
     /**
      * Sets wether or not players will be able to see other invisible teammates.
-     * The setting will apply to all teams in this {@code GameContext}.
+     * The setting will apply to all teams in this {@code GameContext}, on the
+     * next {@linkplain #flush() flush}.
      * @param seeFriendlyInvisibles {@code true} to allow players to see
      *                              invisible teammates, {@code false}
      *                              otherwise.
@@ -242,9 +1846,8 @@ public class GameContext {
 	}
 
 	this.seeFriendlyInvisibles = seeFriendlyInvisibles;
-	for (GameTeam team : teams.values()) {
-	    team.getBukkitTeam().setCanSeeFriendlyInvisibles(seeFriendlyInvisibles);
-	}
+	markTeamsDirty(GameTeam.DIRTY_SEE_INVISIBLES);
+	journalSettings();
     }
 
     /**
@@ -257,7 +1860,8 @@ public class GameContext {
     }
 
     /**
-     * Sets the {@code NameTagVisibility} for this {@code GameContext}.
+     * Sets the {@code NameTagVisibility} for this {@code GameContext}. The
+     * setting will apply to all teams on the next {@linkplain #flush() flush}.
      * @param nameTagVisibility the new {@code NameTagVisibility} to set. Must
      *                          not be {@code null}.
      * @throws NullPointerException if {@code nameTagVisibility} is
@@ -269,35 +1873,119 @@ public class GameContext {
 	}
 
 	this.nameTagVisibility = checkNotNull(nameTagVisibility);
-	for (GameTeam team : teams.values()) {
-	    team.getBukkitTeam().setNameTagVisibility(nameTagVisibility);
-	}
+	markTeamsDirty(GameTeam.DIRTY_NAME_TAG);
+	journalSettings();
     }
 
     /**
      * Applies the friendly fire, can see friendly invisibles and nametag
-     * visibility settings, and also updates the display names for each team.
-     * This method is not required to call {@link GameTeam#applySettings()} and
-     * doesn't, by default.
+     * visibility settings, and also updates the display names for each team,
+     * on the next {@linkplain #flush() flush}. This method is not required to
+     * call {@link GameTeam#applySettings()} and doesn't, by default.
      * @see GameTeam#applySettings()
      */
     public void applySettings() {
-	boolean friendlyFire = allowFriendlyFire;
-	boolean seeInvisibles = seeFriendlyInvisibles;
-	NameTagVisibility nametag = nameTagVisibility;
+	markTeamsDirty(GameTeam.DIRTY_ALL);
+    }
+
+    /**
+     * Pushes the pending changes of settings to the Bukkit teams. Changes of
+     * settings are coalesced: each setting reaches each Bukkit team at most
+     * once per flush, and only if its value actually changed. The backend of
+     * this context then sends its own pending changes. This method is called
+     * at the end of every tick, and only needs to be called explicitly
+     * when the Bukkit teams must be up to date immediately.
+     */
+    public void flush() {
+	boolean dirty = settingsDirty;
+	if (dirty) {
+	    settingsDirty = false;
+	    long start = metrics.start();
+	    for (GameTeam team : teamTable) {
+		if (team != null) {
+		    team.flushSettings();
+		}
+	    }
+	    metrics.stop(Metrics.Probe.FLUSH_SETTINGS, start);
+	}
+	if (scoreboardPool != null) {
+	    scoreboardPool.flush(dirty);
+	}
+	teamBackend.flush();
+    }
+
+    private void releaseIdleTeams() {
+	long now = System.nanoTime();
+	for (GameTeam team : teamTable) {
+	    if (team != null) {
+		team.releaseIfIdle(now, teamReleaseNanos);
+	    }
+	}
+    }
+
+    private void markTeamsDirty(int flags) {
+	for (GameTeam team : teamTable) {
+	    if (team != null) {
+		team.markDirty(flags);
+	    }
+	}
+    }
+
+    void markSettingsDirty() {
+	settingsDirty = true;
+    }
 
-	for (GameTeam team : teams.values()) {
-	    Team bukkitTeam = team.getBukkitTeam();
-	    bukkitTeam.setNameTagVisibility(nametag);
-	    bukkitTeam.setAllowFriendlyFire(friendlyFire);
-	    bukkitTeam.setCanSeeFriendlyInvisibles(seeInvisibles);
-	    bukkitTeam.setDisplayName(team.getDisplayName());
+    private void closeJournal() {
+	try {
+	    journal.close();
+	} catch (IOException ex) {
+	    LOGGER.log(Level.WARNING, "Journal " + journal.getName() + " failed", ex);
+	} catch (InterruptedException ex) {
+	    Thread.currentThread().interrupt();
+	}
+    }
+
+    private void journalSettings() {
+	if (journal != null) {
+	    journal.settings(allowFriendlyFire, seeFriendlyInvisibles, nameTagVisibility);
+	}
+    }
+
+    static final class PendingMember {
+
+	final int teamId;
+	final long joinTime;
+
+	PendingMember(int teamId, long joinTime) {
+	    this.teamId = teamId;
+	    this.joinTime = joinTime;
 	}
     }
 
     @Override
     public String toString() {
-	return getClass().getSimpleName() + "{" + "teams=" + teams + ", players=" + GameUtils.formatPlayers(players.keySet(), true) + '}';
+	StringBuilder builder = new StringBuilder(getClass().getSimpleName()).append("{teams=[");
+	String separator = "";
+	for (GameTeam team : teamTable) {
+	    if (team != null) {
+		builder.append(separator).append(team);
+		separator = ", ";
+	    }
+	}
+	builder.append("], players=[");
+	int count = 0;
+	for (int slot = 0, bound = roster.slotBound(); slot < bound && count < TO_STRING_NAMES; ++slot) {
+	    if (roster.isLive(slot)) {
+		if (count++ != 0) {
+		    builder.append(", ");
+		}
+		builder.append(roster.getPlayer(slot).getName());
+	    }
+	}
+	if (count < roster.size()) {
+	    GameUtils.appendMore(builder, roster.size() - count, null, null);
+	}
+	return builder.append("]}").toString();
     }
 
 }
@@ -1,13 +1,15 @@
 package io.github.totom3.teamsystem;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import java.util.Collections;
-import java.util.HashSet;
+import com.google.common.collect.ImmutableSet;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
 import org.bukkit.ChatColor;
 import org.bukkit.entity.Player;
-import org.bukkit.scoreboard.Scoreboard;
+import org.bukkit.scoreboard.NameTagVisibility;
 import org.bukkit.scoreboard.Team;
 
 /**
@@ -16,96 +18,388 @@ import org.bukkit.scoreboard.Team;
  */
 public class GameTeam {
 
-    private final Team bukkitTeam;
+    // Settings dirty flags
+    static final int DIRTY_FRIENDLY_FIRE = 1;
+    static final int DIRTY_SEE_INVISIBLES = 1 << 1;
+    static final int DIRTY_NAME_TAG = 1 << 2;
+    static final int DIRTY_DISPLAY_NAME = 1 << 3;
+    static final int DIRTY_ALL = DIRTY_FRIENDLY_FIRE | DIRTY_SEE_INVISIBLES | DIRTY_NAME_TAG | DIRTY_DISPLAY_NAME;
+
+    // Maximum number of names printed by toString()
+    private static final int TO_STRING_NAMES = 20;
+
+    private Team bukkitTeam;
     private final ChatColor color;
     private final GameContext context;
-    private final Set<Player> players;
+    private final int id;
+    private SlotSet members;
+    private final Set<Player> playersView;
+    private final RosterRenderer rosterRenderer;
+
+    private ImmutableSet<Player> playersSnapshot;
+    private int playersSnapshotModCount;
 
     private boolean valid;
+    private boolean draining;
+    private int dirtySettings;
 
+    // Whether or not the Bukkit team was found empty, and since when
+    private boolean idle;
+    private long idleSince;
+
+    /**
+     * Creates a team whose id is the ordinal of its color. Such teams can be
+     * looked up by color in their context.
+     * @param context the context of the team. Must not be {@code null}.
+     * @param color   the color of the team. Must not be a format and must not
+     *                be equal to {@link ChatColor#RESET}.
+     * @see GameContext#getTeam(ChatColor)
+     */
     public GameTeam(GameContext context, ChatColor color) {
+	this(context, GameUtils.checkColor(color).ordinal(), color);
+    }
+
+    /**
+     * Creates a team with the specified id. The color is only a display
+     * property: several teams of a context may share the same color.
+     * @param context the context of the team. Must not be {@code null}.
+     * @param id      the id of the team, between {@code 0} inclusive and
+     *                {@link GameContext#MAX_TEAMS} exclusive.
+     * @param color   the color of the team. Must not be a format and must not
+     *                be equal to {@link ChatColor#RESET}.
+     * @throws IllegalArgumentException if {@code id} is out of range.
+     */
+    public GameTeam(GameContext context, int id, ChatColor color) {
 	this.color = GameUtils.checkColor(color);
 	this.context = checkNotNull(context, "GameContext cannot be null");
 
+	this.id = GameContext.checkTeamId(id);
 	this.valid = true;
-	this.players = Collections.newSetFromMap(new WeakHashMap<Player, Boolean>());
+	this.members = new SlotSet();
+	this.playersView = new PlayersView();
+	this.rosterRenderer = new RosterRenderer(this);
+	// the Bukkit team is created on the first join
+    }
 
-	Team bTeam = createBukkitTeam();
-	bTeam.setDisplayName(getDisplayName());
-	bTeam.setAllowFriendlyFire(context.hasFriendlyFire());
-	bTeam.setNameTagVisibility(context.getNameTagVisibility());
-	bTeam.setCanSeeFriendlyInvisibles(context.canSeeFriendlyInvisibles());
-	bukkitTeam = bTeam;
+    /**
+     * Returns the id of this team, unique among the teams of its context.
+     * Teams created by color have the ordinal of their color as id.
+     * @return the id of this team.
+     */
+    public int getId() {
+	return id;
     }
 
     public ChatColor getColor() {
 	return color;
     }
 
+    /**
+     * Returns the Bukkit team of this team, creating it if needed. Bukkit
+     * teams are created lazily, when the first player joins, with the
+     * settings of the context and the display name of this team already
+     * applied. They are unregistered once this team stayed empty for the
+     * release delay of its context or this team is invalidated; the Bukkit
+     * team returned by this method must not be kept.
+     * @return the Bukkit team of this team, or {@code null} if this team is
+     *         invalid.
+     * @see GameContext#setTeamReleaseMillis(long)
+     */
     public Team getBukkitTeam() {
+	if (bukkitTeam == null && valid) {
+	    bukkitTeam = createBukkitTeam();
+	    context.getMetrics().countBukkitCalls(1);
+	    // apply the settings before the first player joins, rather than
+	    // running with the Bukkit defaults until the end of the tick
+	    dirtySettings |= DIRTY_ALL;
+	    flushSettings();
+	}
 	return bukkitTeam;
     }
 
+    /**
+     * Returns whether or not the Bukkit team of this team currently exists.
+     * @return {@code true} if the Bukkit team exists, {@code false} if it was
+     *         not created yet, or was released.
+     * @see #getBukkitTeam()
+     */
+    public boolean hasBukkitTeam() {
+	return bukkitTeam != null;
+    }
+
     public GameContext getContext() {
 	return context;
     }
 
     public int getPlayerCount() {
-	return players.size();
+	return members.size();
     }
 
     public boolean isEmpty() {
-	return players.isEmpty();
+	return members.isEmpty();
     }
 
+    /**
+     * Returns an unmodifiable, live view of the players in this team. This view
+     * must only be used from the main thread; other threads should use
+     * {@link GameContext#snapshot()} instead.
+     * @return a {@code Set} containing the players of this team.
+     */
     public Set<Player> getPlayers() {
-	return players;
+	return playersView;
+    }
+
+    /**
+     * Returns the names of the players of this team, formatted like
+     * {@link GameUtils#formatPlayers(Set, ChatColor, ChatColor)}. The result
+     * is cached until the membership of this team changes. Main thread only.
+     * @param color1 the color to use for the commas. Must not be {@code null}.
+     * @param color2 the color to use for the names. Must not be {@code null}.
+     * @return the formatted names of every player of this team.
+     * @throws NullPointerException if {@code color1} or {@code color2} is
+     *                              {@code null}.
+     */
+    public String formatPlayers(ChatColor color1, ChatColor color2) {
+	return formatPlayers(color1, color2, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns one page of the names of the players of this team, formatted
+     * like {@link GameUtils#formatPlayers(Set, ChatColor, ChatColor)}. If
+     * there are players after that page, the result ends with
+     * {@code "…and N more"}, so that its length only depends on
+     * {@code pageSize}. The result is cached until the membership of this team
+     * changes. Players are paginated in an order which is stable as long as
+     * nobody leaves the team. Main thread only.
+     * @param color1   the color to use for the commas. Must not be
+     *                 {@code null}.
+     * @param color2   the color to use for the names. Must not be
+     *                 {@code null}.
+     * @param page     the index of the page, starting at {@code 0}.
+     * @param pageSize the maximum number of names per page. Must be positive.
+     * @return the formatted names of the players of that page, or an empty
+     *         string if there is no such page.
+     * @throws NullPointerException     if {@code color1} or {@code color2} is
+     *                                  {@code null}.
+     * @throws IllegalArgumentException if {@code page} is negative, or if
+     *                                  {@code pageSize} is not positive.
+     */
+    public String formatPlayers(ChatColor color1, ChatColor color2, int page, int pageSize) {
+	checkNotNull(color1, "Color cannot be null");
+	checkNotNull(color2, "Color cannot be null");
+	if (page < 0) {
+	    throw new IllegalArgumentException("Page cannot be negative, got " + page);
+	}
+	if (pageSize <= 0) {
+	    throw new IllegalArgumentException("Page size must be positive, got " + pageSize);
+	}
+	int offset = (int) Math.min(Integer.MAX_VALUE, (long) page * pageSize);
+	return rosterRenderer.render(color1, color2, offset, pageSize);
     }
 
     public boolean addPlayer(Player player) {
+	Metrics metrics = context.getMetrics();
+	long start = metrics.start();
+	try {
+	    return addPlayer0(player);
+	} finally {
+	    metrics.stop(Metrics.Probe.ADD_PLAYER, start);
+	}
+    }
+
+    private boolean addPlayer0(Player player) {
 	checkValid();
-	if (!players.add(GameUtils.checkPlayer(player))) {
+	checkNotDraining();
+	GameTeam oldTeam = context.getTeamOf(GameUtils.checkPlayer(player));
+	if (oldTeam == this) {
 	    return false;
 	}
 
-	GameTeam oldTeam = context.getTeamOf(player);
+	TeamEventBus bus = context.getEventBus();
+	TeamChangeEvent event = bus.before(player, oldTeam, this);
+	Team bTeam = getBukkitTeam();
+	int slot;
+	int calls = 1;
+	if (oldTeam == null) {
+	    slot = context.join0(player, this);
+	} else {
+	    // a move keeps the slot, the join time and the claim of the player
+	    slot = context.getRoster().slotOf(player);
+	    oldTeam.members.remove(slot);
+	    context.move0(slot, player, oldTeam, this);
+
+	    // joining a team implicitly leaves any team of the same scoreboard
+	    Team from = oldTeam.bukkitTeam;
+	    if (from != null && from.getScoreboard() != bTeam.getScoreboard()) {
+		from.removePlayer(player);
+		++calls;
+	    }
+	}
+	members.add(slot);
+	if (context.showTeams(slot, player)) {
+	    ++calls;
+	}
+	bTeam.addPlayer(player);
+	context.getMetrics().countBukkitCalls(calls);
 	if (oldTeam != null) {
-	    oldTeam.removePlayer(player);
+	    oldTeam.onQuit(player);
 	}
-
-	context.setTeam0(player, this);
-	player.setScoreboard(bukkitTeam.getScoreboard());
-	bukkitTeam.addPlayer(player);
 	onJoin(player);
+	bus.publish(event);
 	return true;
     }
 
+    /**
+     * Only called by {@link GameContext#restoreMember(Player)}. Puts a player
+     * who isn't in any team back in this team, with the join time it had when
+     * the state was saved. Unlike {@link #addPlayer(Player)}, neither
+     * {@link #onJoin(Player)} nor the hooks of the event bus are called, and
+     * no change is published: the player already joined before the restart.
+     * @param player   the player to put back.
+     * @param joinTime the restored join time of the player.
+     */
+    void restorePlayer(Player player, long joinTime) {
+	Team bTeam = getBukkitTeam();
+	int slot = context.join0(player, this);
+	context.getRoster().setJoinTime(slot, joinTime);
+	members.add(slot);
+	int calls = 1;
+	if (context.showTeams(slot, player)) {
+	    ++calls;
+	}
+	bTeam.addPlayer(player);
+	context.getMetrics().countBukkitCalls(calls);
+    }
+
     public boolean removePlayer(Player player) {
+	return removePlayer(player, true);
+    }
+
+    /**
+     * Only called when the grace period of a disconnected player expires.
+     * Same as {@link #removePlayer(Player)}, except that the hooks of the
+     * event bus can't veto the removal: exceptions they throw are logged.
+     * @param player the player to remove.
+     * @return {@code true} if the player was a member of this team.
+     */
+    boolean removePlayerForced(Player player) {
+	return removePlayer(player, false);
+    }
+
+    private boolean removePlayer(Player player, boolean vetoable) {
+	Metrics metrics = context.getMetrics();
+	long start = metrics.start();
+	try {
+	    return removePlayer0(player, vetoable);
+	} finally {
+	    metrics.stop(Metrics.Probe.REMOVE_PLAYER, start);
+	}
+    }
+
+    private boolean removePlayer0(Player player, boolean vetoable) {
 	checkValid();
-	if (!players.remove(player)) {
+	int slot = context.getRoster().slotOf(GameUtils.checkPlayer(player));
+	if (slot == PlayerRoster.NO_SLOT || !members.contains(slot)) {
 	    return false;
 	}
 
-	context.setTeam0(player, null);
+	TeamEventBus bus = context.getEventBus();
+	TeamChangeEvent event = vetoable ? bus.before(player, this, null) : bus.beforeForced(player, this, null);
+	removeMember(slot, player);
+	bus.publish(event);
+	return true;
+    }
+
+    /**
+     * Removes a member of this team, without publishing the change.
+     */
+    private void removeMember(int slot, Player player) {
+	members.remove(slot);
+	context.leave0(slot);
 	bukkitTeam.removePlayer(player);
+	context.getMetrics().countBukkitCalls(1);
 	onQuit(player);
-	return true;
     }
 
     public void clearPlayers() {
-	Set<Player> set = new HashSet<>(players);
-	players.clear();
-	for (Player player : set) {
+	clearPlayers(true);
+    }
+
+    private void clearPlayers(boolean vetoable) {
+	PlayerRoster roster = context.getRoster();
+	TeamEventBus bus = context.getEventBus();
+	int[] slots = members.toArray();
+	Player[] players = new Player[slots.length];
+	TeamChangeEvent[] events = new TeamChangeEvent[slots.length];
+	for (int i = 0; i < slots.length; ++i) {
+	    players[i] = roster.getPlayer(slots[i]);
+	    events[i] = vetoable ? bus.before(players[i], this, null) : bus.beforeForced(players[i], this, null);
+	}
+	members.clear();
+
+	for (int slot : slots) {
+	    context.leave0(slot);
+	}
+	for (Player player : players) {
 	    bukkitTeam.removePlayer(player);
 	    onQuit(player);
 	}
+	context.getMetrics().countBukkitCalls(players.length);
+	for (TeamChangeEvent event : events) {
+	    bus.publish(event);
+	}
+    }
 
+    /**
+     * Removes every player of this team incrementally, spending at most the
+     * tick budget of the context per tick. Until the returned future
+     * completes, this team is {@linkplain #isDraining() draining}: it still
+     * holds the players that weren't removed yet, but it doesn't accept new
+     * players.
+     * @return a future completed once this team is empty.
+     * @throws IllegalStateException if this team is invalid, or already
+     *                               draining.
+     * @see GameContext#setTickBudgetMillis(long)
+     */
+    public CompletableFuture<Void> clearPlayersIncrementally() {
+	checkValid();
+	startDraining();
+
+	final CompletableFuture<Void> future = new CompletableFuture<>();
+	context.getTickScheduler().submit(new TickScheduler.Job() {
+	    @Override
+	    public boolean run(long deadline) {
+		if (!drain(deadline)) {
+		    return false;
+		}
+		stopDraining();
+		future.complete(null);
+		return true;
+	    }
+
+	    @Override
+	    public void abort(RuntimeException cause) {
+		stopDraining();
+		future.completeExceptionally(cause);
+	    }
+	});
+	return future;
     }
 
     public boolean isValid() {
 	return valid;
     }
 
+    /**
+     * Returns whether or not this team is being emptied incrementally. A
+     * draining team doesn't accept new players.
+     * @return {@code true} if this team is draining, {@code false} otherwise.
+     * @see #clearPlayersIncrementally()
+     */
+    public boolean isDraining() {
+	return draining;
+    }
+
     public String getName() {
 	String colorName = getColor().name();
 	return colorName.charAt(0) + colorName.substring(1).toLowerCase() + " Team";
@@ -115,17 +409,196 @@ public class GameTeam {
 	return getName();
     }
 
+    /**
+     * Schedules the friendly fire, can see friendly invisibles and nametag
+     * visibility settings of the context, as well as the display name of this
+     * team, to be pushed to the Bukkit team. Settings are pushed at the end of
+     * the tick, or by {@link GameContext#flush()}.
+     */
     public void applySettings() {
-	bukkitTeam.setAllowFriendlyFire(context.hasFriendlyFire());
-	bukkitTeam.setCanSeeFriendlyInvisibles(context.canSeeFriendlyInvisibles());
-	bukkitTeam.setNameTagVisibility(context.getNameTagVisibility());
-	bukkitTeam.setDisplayName(getDisplayName());
+	markDirty(DIRTY_ALL);
     }
 
     // -----------------------=[ Internal ]=-----------------------
+    void markDirty(int flags) {
+	dirtySettings |= flags;
+	context.markSettingsDirty();
+    }
+
+    /**
+     * Pushes the dirty settings to the Bukkit team, skipping those that the
+     * Bukkit team already has.
+     */
+    void flushSettings() {
+	int flags = dirtySettings;
+	if (flags == 0) {
+	    return;
+	}
+	dirtySettings = 0;
+
+	Team bTeam = bukkitTeam;
+	if (bTeam == null) {
+	    // pushed again when the Bukkit team is created
+	    return;
+	}
+	int calls = 0;
+	if ((flags & DIRTY_FRIENDLY_FIRE) != 0) {
+	    boolean friendlyFire = context.hasFriendlyFire();
+	    if (bTeam.allowFriendlyFire() != friendlyFire) {
+		bTeam.setAllowFriendlyFire(friendlyFire);
+		++calls;
+	    }
+	}
+	if ((flags & DIRTY_SEE_INVISIBLES) != 0) {
+	    boolean seeInvisibles = context.canSeeFriendlyInvisibles();
+	    if (bTeam.canSeeFriendlyInvisibles() != seeInvisibles) {
+		bTeam.setCanSeeFriendlyInvisibles(seeInvisibles);
+		++calls;
+	    }
+	}
+	if ((flags & DIRTY_NAME_TAG) != 0) {
+	    NameTagVisibility nametag = context.getNameTagVisibility();
+	    if (bTeam.getNameTagVisibility() != nametag) {
+		bTeam.setNameTagVisibility(nametag);
+		++calls;
+	    }
+	}
+	if ((flags & DIRTY_DISPLAY_NAME) != 0) {
+	    String displayName = getDisplayName();
+	    if (!displayName.equals(bTeam.getDisplayName())) {
+		bTeam.setDisplayName(displayName);
+		++calls;
+	    }
+	}
+	context.getMetrics().countBukkitCalls(calls);
+    }
+
+    SlotSet getMembers() {
+	return members;
+    }
+
+    /**
+     * Detaches the members of this team, which is left empty. Only called by
+     * {@link GameContext#reset()}.
+     * @return the former members of this team.
+     */
+    SlotSet resetMembers() {
+	SlotSet stale = members;
+	members = new SlotSet();
+	playersSnapshot = null;
+	return stale;
+    }
+
+    /**
+     * Removes the stale members left by a reset of the context from the
+     * Bukkit team, and releases their roster slot, until the deadline is
+     * reached. Members that joined this team again since the reset are kept.
+     * @param stale    the members detached by {@link #resetMembers()}.
+     * @param deadline the value of {@link System#nanoTime()} after which this
+     *                 method must return.
+     * @return {@code true} if every stale member was handled, {@code false}
+     *         otherwise.
+     */
+    boolean reconcile(SlotSet stale, long deadline) {
+	PlayerRoster roster = context.getRoster();
+	while (!stale.isEmpty()) {
+	    int slot = stale.get(stale.size() - 1);
+	    stale.remove(slot);
+
+	    // a released Bukkit team took its stale entries along
+	    Player player = roster.getPlayer(slot);
+	    if (player != null) {
+		if (!roster.isLive(slot)) {
+		    if (bukkitTeam != null) {
+			bukkitTeam.removePlayer(player);
+			context.getMetrics().countBukkitCalls(1);
+		    }
+		    context.releaseStale(slot);
+		} else if (roster.getTeam(slot) != id && bukkitTeam != null) {
+		    bukkitTeam.removePlayer(player);
+		    context.getMetrics().countBukkitCalls(1);
+		}
+	    }
+
+	    if (System.nanoTime() >= deadline) {
+		return stale.isEmpty();
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Releases the roster slot of every stale member left, without touching
+     * the Bukkit team. Called when the reconciliation is aborted, so that the
+     * slots of the remaining members aren't leaked.
+     * @param stale the members detached by {@link #resetMembers()}.
+     */
+    void abandon(SlotSet stale) {
+	PlayerRoster roster = context.getRoster();
+	for (int i = 0, size = stale.size(); i < size; ++i) {
+	    int slot = stale.get(i);
+	    if (roster.getPlayer(slot) != null && !roster.isLive(slot)) {
+		context.releaseStale(slot);
+	    }
+	}
+	stale.clear();
+    }
+
+    /**
+     * Returns an immutable copy of the players of this team, rebuilt only if
+     * the membership changed since the last call. Main thread only.
+     */
+    ImmutableSet<Player> snapshotPlayers() {
+	if (playersSnapshot == null || playersSnapshotModCount != members.modCount()) {
+	    PlayerRoster roster = context.getRoster();
+	    ImmutableSet.Builder<Player> builder = ImmutableSet.builder();
+	    for (int i = 0, size = members.size(); i < size; ++i) {
+		builder.add(roster.getPlayer(members.get(i)));
+	    }
+	    playersSnapshot = builder.build();
+	    playersSnapshotModCount = members.modCount();
+	}
+	return playersSnapshot;
+    }
+
+    /**
+     * Unregisters the Bukkit team of this team once this team stayed empty
+     * for the release delay. Only called by {@link GameContext#tick()}.
+     * @param now          the current value of {@link System#nanoTime()}.
+     * @param releaseNanos the release delay of the context, in nanoseconds.
+     */
+    void releaseIfIdle(long now, long releaseNanos) {
+	if (bukkitTeam == null || !members.isEmpty()) {
+	    idle = false;
+	    return;
+	}
+	if (!idle) {
+	    idle = true;
+	    idleSince = now;
+	    return;
+	}
+	if (now - idleSince >= releaseNanos) {
+	    releaseBukkitTeam();
+	}
+    }
+
+    /**
+     * Removes every player, and unregisters the Bukkit team. Players left by
+     * a reset of the context are removed from the Bukkit team along with it.
+     */
     void invalidate() {
 	valid = false;
-	clearPlayers();
+	clearPlayers(false);
+	if (bukkitTeam != null) {
+	    releaseBukkitTeam();
+	}
+    }
+
+    private void releaseBukkitTeam() {
+	bukkitTeam.unregister();
+	bukkitTeam = null;
+	idle = false;
+	context.getMetrics().countBukkitCalls(1);
     }
 
     void checkValid() {
@@ -134,23 +607,58 @@ public class GameTeam {
 	}
     }
 
-    // -----------------------=[ - ]=-----------------------
-    protected Team createBukkitTeam() {
-	String name = getName();
-	Scoreboard sb = context.getScoreboard();
+    void checkNotDraining() {
+	if (draining) {
+	    throw new IllegalStateException("Team is draining");
+	}
+    }
 
-	Team bTeam = sb.getTeam(name);
-	if (bTeam == null) {
-	    bTeam = sb.registerNewTeam(name);
+    void startDraining() {
+	checkNotDraining();
+	draining = true;
+    }
+
+    void stopDraining() {
+	draining = false;
+    }
+
+    /**
+     * Removes players from this team until it is empty, or until the deadline
+     * is reached. At least one player is removed on each call.
+     * @param deadline the value of {@link System#nanoTime()} after which this
+     *                 method must return.
+     * @return {@code true} if this team is now empty, {@code false} otherwise.
+     */
+    boolean drain(long deadline) {
+	PlayerRoster roster = context.getRoster();
+	TeamEventBus bus = context.getEventBus();
+	while (!members.isEmpty()) {
+	    int slot = members.get(members.size() - 1);
+	    Player player = roster.getPlayer(slot);
+
+	    TeamChangeEvent event = bus.before(player, this, null);
+	    removeMember(slot, player);
+	    bus.publish(event);
+
+	    if (System.nanoTime() >= deadline) {
+		return members.isEmpty();
+	    }
 	}
+	return true;
+    }
 
-	return bTeam;
+    // -----------------------=[ - ]=-----------------------
+    protected Team createBukkitTeam() {
+	return context.getTeamBackend().getTeam(context.getBukkitTeamName(this));
     }
 
     /**
      * Called when a player joins the team. When this method is called, the
-     * player is already registered in the team.
+     * player is already registered in the team. This method runs inside the
+     * team operation; code outside of the team system should rather use the
+     * {@linkplain GameContext#getEventBus() event bus} of the context.
      * @param player the player to join the team.
+     * @see TeamEventBus
      */
     protected void onJoin(Player player) {
     }
@@ -165,7 +673,40 @@ public class GameTeam {
 
     @Override
     public String toString() {
-	return getClass().getSimpleName() + "{" + "color=" + color + ", players=" + players + ", valid=" + valid + '}';
+	return getClass().getSimpleName() + "{" + "id=" + id + ", color=" + color + ", players=" + rosterRenderer.render(null, null, 0, TO_STRING_NAMES) + ", valid=" + valid + '}';
+    }
+
+    private class PlayersView extends AbstractSet<Player> {
+
+	@Override
+	public int size() {
+	    return members.size();
+	}
+
+	@Override
+	public boolean contains(Object o) {
+	    return (o instanceof Player) && context.getTeamOf((Player) o) == GameTeam.this;
+	}
+
+	@Override
+	public Iterator<Player> iterator() {
+	    return new Iterator<Player>() {
+		private int next = 0;
+
+		@Override
+		public boolean hasNext() {
+		    return next < members.size();
+		}
+
+		@Override
+		public Player next() {
+		    if (!hasNext()) {
+			throw new NoSuchElementException();
+		    }
+		    return context.getRoster().getPlayer(members.get(next++));
+		}
+	    };
+	}
     }
 
 }
@@ -1,6 +1,7 @@
 package io.github.totom3.teamsystem;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Set;
 import org.bukkit.ChatColor;
@@ -113,6 +114,67 @@ public class GameUtils {
 	}
     }
 
+    /**
+     * Prints at most {@code limit} players of a {@code Collection}, formatted
+     * like {@link #formatPlayers(Set, ChatColor, ChatColor)}. If the
+     * collection holds more players, the string ends with
+     * {@code "…and N more"}, so that its length doesn't depend on the size of
+     * the collection.
+     * @param players the players to format. Must not be {@code null} and must
+     *                not contain any {@code null} elements.
+     * @param color1  the color to use for the commas. Must not be
+     *                {@code null}.
+     * @param color2  the color to use for the names. Must not be {@code null}.
+     * @param limit   the maximum number of names to print.
+     * @return a formatted string containing the names of at most
+     *         {@code limit} players.
+     * @throws NullPointerException     if either {@code color1}, {@code color2}
+     *                                  or {@code players} is {@code null}, or
+     *                                  if {@code players} contains one or more
+     *                                  {@code null} elements.
+     * @throws IllegalArgumentException if {@code limit} is negative.
+     * @see GameTeam#formatPlayers(ChatColor, ChatColor, int, int)
+     */
+    public static String formatPlayers(Collection<Player> players, ChatColor color1, ChatColor color2, int limit) {
+	if (limit < 0) {
+	    throw new IllegalArgumentException("Limit cannot be negative, got " + limit);
+	}
+	String separator = color1.toString() + ", ";
+	String strColor2 = color2.toString();
+
+	StringBuilder builder = new StringBuilder();
+	int count = 0;
+	for (Iterator<Player> it = players.iterator(); it.hasNext() && count < limit; ++count) {
+	    if (count != 0) {
+		builder.append(separator);
+	    }
+	    builder.append(strColor2).append(it.next().getName());
+	}
+
+	int size = players.size();
+	if (count < size) {
+	    appendMore(builder, size - count, color1, color2);
+	}
+	return builder.toString();
+    }
+
+    /**
+     * Appends {@code "…and N more"} to a rendering of player names.
+     * @param color1 the color of the text, or {@code null} for plain text.
+     * @param color2 the color of the number. Ignored if {@code color1} is
+     *               {@code null}.
+     */
+    static void appendMore(StringBuilder builder, int more, ChatColor color1, ChatColor color2) {
+	if (builder.length() != 0 && builder.charAt(builder.length() - 1) != '[') {
+	    builder.append(' ');
+	}
+	if (color1 == null) {
+	    builder.append("\u2026and ").append(more).append(" more");
+	} else {
+	    builder.append(color1).append("\u2026and ").append(color2).append(more).append(color1).append(" more");
+	}
+    }
+
     private GameUtils() {
 	throw new AssertionError("no GameUtils instance for you! :P");
     }
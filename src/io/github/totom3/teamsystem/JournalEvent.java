@@ -0,0 +1,168 @@
+package io.github.totom3.teamsystem;
+
+import java.util.UUID;
+import org.bukkit.ChatColor;
+import org.bukkit.scoreboard.NameTagVisibility;
+
+/**
+ * A record of a {@code TeamJournal}, as read by a {@code JournalReader}. Which
+ * properties are set depends on the type of the event; the others are
+ * {@code null}, {@code false} or {@code -1}.
+ * @author Totom3
+ * @see JournalReader#replay(java.util.function.Consumer)
+ */
+public final class JournalEvent {
+
+    public enum Type {
+
+	/**
+	 * A journal was attached to the context. The whole state of the context
+	 * follows, as settings, team creation, relation and join events.
+	 */
+	CHECKPOINT,
+	/**
+	 * The settings of the context changed. Sets
+	 * {@link #hasFriendlyFire()}, {@link #canSeeFriendlyInvisibles()} and
+	 * {@link #getNameTagVisibility()}.
+	 */
+	SETTINGS,
+	/**
+	 * A team was created. Sets {@link #getToTeam()} and
+	 * {@link #getColor()}.
+	 */
+	TEAM_CREATED,
+	/**
+	 * A team was removed, after its players left it. Sets
+	 * {@link #getFromTeam()}.
+	 */
+	TEAM_REMOVED,
+	/**
+	 * The relation of a team towards another changed. Sets
+	 * {@link #getFromTeam()}, {@link #getToTeam()} and
+	 * {@link #getRelation()}.
+	 */
+	RELATION,
+	/**
+	 * A player joined a team. Sets {@link #getPlayerId()} and
+	 * {@link #getToTeam()}.
+	 */
+	JOIN,
+	/**
+	 * A player left a team. Sets {@link #getPlayerId()} and
+	 * {@link #getFromTeam()}.
+	 */
+	LEAVE,
+	/**
+	 * A player moved from a team to another. Sets {@link #getPlayerId()},
+	 * {@link #getFromTeam()} and {@link #getToTeam()}.
+	 */
+	MOVE,
+	/**
+	 * The context was reset: every player left its team.
+	 */
+	RESET
+    }
+
+    private final long time;
+    private final Type type;
+    private final UUID playerId;
+    private final int fromTeam;
+    private final int toTeam;
+    private final ChatColor color;
+    private final TeamRelation relation;
+    private final int settings;
+    private final NameTagVisibility nameTagVisibility;
+
+    JournalEvent(long time, Type type, UUID playerId, int fromTeam, int toTeam, ChatColor color, TeamRelation relation, int settings, NameTagVisibility nameTagVisibility) {
+	this.time = time;
+	this.type = type;
+	this.playerId = playerId;
+	this.fromTeam = fromTeam;
+	this.toTeam = toTeam;
+	this.color = color;
+	this.relation = relation;
+	this.settings = settings;
+	this.nameTagVisibility = nameTagVisibility;
+    }
+
+    /**
+     * Returns the time of the event.
+     * @return the time of the event, in milliseconds since the epoch.
+     */
+    public long getTime() {
+	return time;
+    }
+
+    public Type getType() {
+	return type;
+    }
+
+    public UUID getPlayerId() {
+	return playerId;
+    }
+
+    /**
+     * Returns the id of the team left or removed, or of the team whose
+     * relation changed.
+     * @return the id of the team, or {@code -1}.
+     */
+    public int getFromTeam() {
+	return fromTeam;
+    }
+
+    /**
+     * Returns the id of the team joined or created, or of the team the
+     * relation is directed to.
+     * @return the id of the team, or {@code -1}.
+     */
+    public int getToTeam() {
+	return toTeam;
+    }
+
+    public ChatColor getColor() {
+	return color;
+    }
+
+    public TeamRelation getRelation() {
+	return relation;
+    }
+
+    public boolean hasFriendlyFire() {
+	return (settings & 1) != 0;
+    }
+
+    public boolean canSeeFriendlyInvisibles() {
+	return (settings & 2) != 0;
+    }
+
+    public NameTagVisibility getNameTagVisibility() {
+	return nameTagVisibility;
+    }
+
+    @Override
+    public String toString() {
+	StringBuilder builder = new StringBuilder("JournalEvent{time=").append(time).append(", type=").append(type);
+	if (playerId != null) {
+	    builder.append(", player=").append(playerId);
+	}
+	if (fromTeam >= 0) {
+	    builder.append(", from=").append(fromTeam);
+	}
+	if (toTeam >= 0) {
+	    builder.append(", to=").append(toTeam);
+	}
+	if (color != null) {
+	    builder.append(", color=").append(color.name());
+	}
+	if (relation != null) {
+	    builder.append(", relation=").append(relation);
+	}
+	if (type == Type.SETTINGS) {
+	    builder.append(", friendlyFire=").append(hasFriendlyFire())
+		    .append(", seeFriendlyInvisibles=").append(canSeeFriendlyInvisibles())
+		    .append(", nameTagVisibility=").append(nameTagVisibility);
+	}
+	return builder.append('}').toString();
+    }
+
+}
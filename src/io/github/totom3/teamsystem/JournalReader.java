@@ -0,0 +1,210 @@
+package io.github.totom3.teamsystem;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.bukkit.ChatColor;
+import org.bukkit.scoreboard.NameTagVisibility;
+
+/**
+ * Reads the files of a {@code TeamJournal}, in the order they were written.
+ * A truncated record at the end of a file (left by a crash) ends that file,
+ * and records of unknown types are skipped. Readers may run on any thread,
+ * including while the journal is being written.
+ * @author Totom3
+ * @see TeamJournal
+ */
+public final class JournalReader {
+
+    private final File directory;
+    private final String name;
+
+    /**
+     * Creates a reader of the files of a journal.
+     * @param directory the directory of the journal files. Must not be
+     *                  {@code null}.
+     * @param name      the name of the journal. Must not be {@code null}.
+     */
+    public JournalReader(File directory, String name) {
+	this.directory = checkNotNull(directory, "Directory cannot be null");
+	this.name = checkNotNull(name, "Name cannot be null");
+    }
+
+    /**
+     * Returns the files of the journal, ordered by sequence number.
+     * @return the files of the journal. Empty if there is none.
+     */
+    public File[] getFiles() {
+	int[] sequences = sequences(directory, name);
+	File[] files = new File[sequences.length];
+	for (int i = 0; i < sequences.length; ++i) {
+	    files[i] = new File(directory, name + "-" + sequences[i] + TeamJournal.EXTENSION);
+	}
+	return files;
+    }
+
+    /**
+     * Streams every event of the journal, in the order they were recorded.
+     * @param consumer the consumer of the events. Must not be {@code null}.
+     * @return the number of events read.
+     * @throws IOException if a file couldn't be read, or isn't a journal file.
+     */
+    public long replay(Consumer<? super JournalEvent> consumer) throws IOException {
+	return replay(Long.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Streams the events of the journal, in the order they were recorded, up
+     * to the first event recorded after a given time.
+     * @param until    the time of the last events to read, in milliseconds
+     *                 since the epoch.
+     * @param consumer the consumer of the events. Must not be {@code null}.
+     * @return the number of events read.
+     * @throws IOException if a file couldn't be read, or isn't a journal file.
+     */
+    public long replay(long until, Consumer<? super JournalEvent> consumer) throws IOException {
+	checkNotNull(consumer, "Consumer cannot be null");
+	long count = 0;
+	for (File file : getFiles()) {
+	    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+		if (in.readInt() != TeamJournal.MAGIC) {
+		    throw new IOException("Not a journal file: " + file);
+		}
+		for (;;) {
+		    JournalEvent event = read(in);
+		    if (event == null) {
+			break;
+		    }
+		    if (event.getTime() > until) {
+			return count;
+		    }
+		    consumer.accept(event);
+		    ++count;
+		}
+	    } catch (EOFException ex) {
+		// Empty file, created right before a crash
+	    }
+	}
+	return count;
+    }
+
+    /**
+     * Rebuilds the state of the journaled context at a given time, by
+     * replaying the journal up to that time.
+     * @param time the time of the state, in milliseconds since the epoch.
+     * @return the state of the context at that time.
+     * @throws IOException if a file couldn't be read, or isn't a journal file.
+     * @see JournalState#restore(GameContext)
+     */
+    public JournalState stateAt(long time) throws IOException {
+	JournalState state = new JournalState();
+	replay(time, state::apply);
+	return state;
+    }
+
+    // -----------------------=[ Format ]=-----------------------
+    // Returns null at the end of the file, or on a truncated record.
+    private static JournalEvent read(DataInputStream in) throws IOException {
+	byte[] record;
+	for (;;) {
+	    int length;
+	    try {
+		length = in.readInt();
+	    } catch (EOFException ex) {
+		return null;
+	    }
+	    if (length < 9) {
+		throw new IOException("Invalid record length " + length);
+	    }
+	    record = new byte[length];
+	    try {
+		in.readFully(record);
+	    } catch (EOFException ex) {
+		return null;
+	    }
+	    if ((record[0] & 0xFF) < JournalEvent.Type.values().length) {
+		break;
+	    }
+	}
+
+	JournalEvent.Type type = JournalEvent.Type.values()[record[0] & 0xFF];
+	long time = getLong(record, 1);
+	try {
+	    switch (type) {
+		case SETTINGS:
+		    return new JournalEvent(time, type, null, -1, -1, null, null, record[9], valueOf(NameTagVisibility.values(), record[10]));
+		case TEAM_CREATED:
+		    return new JournalEvent(time, type, null, -1, getInt(record, 9), valueOf(ChatColor.values(), record[13]), null, 0, null);
+		case TEAM_REMOVED:
+		    return new JournalEvent(time, type, null, getInt(record, 9), -1, null, null, 0, null);
+		case RELATION:
+		    return new JournalEvent(time, type, null, getInt(record, 9), getInt(record, 13), null, valueOf(TeamRelation.values(), record[17]), 0, null);
+		case JOIN:
+		    return new JournalEvent(time, type, getUUID(record, 9), -1, getInt(record, 25), null, null, 0, null);
+		case LEAVE:
+		    return new JournalEvent(time, type, getUUID(record, 9), getInt(record, 25), -1, null, null, 0, null);
+		case MOVE:
+		    return new JournalEvent(time, type, getUUID(record, 9), getInt(record, 25), getInt(record, 29), null, null, 0, null);
+		default:
+		    return new JournalEvent(time, type, null, -1, -1, null, null, 0, null);
+	    }
+	} catch (ArrayIndexOutOfBoundsException ex) {
+	    throw new IOException("Record too short for " + type, ex);
+	}
+    }
+
+    private static int getInt(byte[] data, int offset) {
+	return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16 | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+    }
+
+    private static long getLong(byte[] data, int offset) {
+	return (long) getInt(data, offset) << 32 | (getInt(data, offset + 4) & 0xFFFFFFFFL);
+    }
+
+    private static UUID getUUID(byte[] data, int offset) {
+	return new UUID(getLong(data, offset), getLong(data, offset + 8));
+    }
+
+    private static <E> E valueOf(E[] values, byte ordinal) throws IOException {
+	if ((ordinal & 0xFF) >= values.length) {
+	    throw new IOException("Invalid ordinal " + (ordinal & 0xFF));
+	}
+	return values[ordinal & 0xFF];
+    }
+
+    // -----------------------=[ Files ]=-----------------------
+    static int lastSequence(File directory, String name) {
+	int[] sequences = sequences(directory, name);
+	return (sequences.length == 0) ? 0 : sequences[sequences.length - 1];
+    }
+
+    private static int[] sequences(File directory, String name) {
+	String[] files = directory.list();
+	if (files == null) {
+	    return new int[0];
+	}
+
+	Pattern pattern = Pattern.compile(Pattern.quote(name + "-") + "([0-9]{1,9})" + Pattern.quote(TeamJournal.EXTENSION));
+	int[] sequences = new int[files.length];
+	int count = 0;
+	for (String file : files) {
+	    Matcher matcher = pattern.matcher(file);
+	    if (matcher.matches()) {
+		sequences[count++] = Integer.parseInt(matcher.group(1));
+	    }
+	}
+	sequences = Arrays.copyOf(sequences, count);
+	Arrays.sort(sequences);
+	return sequences;
+    }
+
+}
@@ -0,0 +1,188 @@
+package io.github.totom3.teamsystem;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.NameTagVisibility;
+
+/**
+ * The state of a journaled context at some point in time, rebuilt by
+ * {@link JournalReader#stateAt(long)}. Memberships are identified by the UUID
+ * of their player; the join time of a player is the time of its last
+ * {@code JOIN} event, which is the time the journal was attached for the
+ * players already in a team at that time.
+ * @author Totom3
+ */
+public final class JournalState {
+
+    private long time;
+    private boolean friendlyFire = true;
+    private boolean seeFriendlyInvisibles = false;
+    private NameTagVisibility nameTagVisibility = NameTagVisibility.ALWAYS;
+    private final Map<Integer, ChatColor> teams = new TreeMap<>();
+    private final Map<Long, TeamRelation> relations = new HashMap<>();
+    private final Map<UUID, Integer> members = new HashMap<>();
+    private final Map<UUID, Long> joinTimes = new HashMap<>();
+
+    JournalState() {
+    }
+
+    /**
+     * Returns the time of the last event applied to this state.
+     * @return the time of the state, in milliseconds since the epoch, or
+     *         {@code 0} if no event was recorded before the requested time.
+     */
+    public long getTime() {
+	return time;
+    }
+
+    public boolean hasFriendlyFire() {
+	return friendlyFire;
+    }
+
+    public boolean canSeeFriendlyInvisibles() {
+	return seeFriendlyInvisibles;
+    }
+
+    public NameTagVisibility getNameTagVisibility() {
+	return nameTagVisibility;
+    }
+
+    /**
+     * Returns the teams of the context.
+     * @return an unmodifiable {@code Map} associating the ids of the teams to
+     *         their color, ordered by id.
+     */
+    public Map<Integer, ChatColor> getTeams() {
+	return Collections.unmodifiableMap(teams);
+    }
+
+    /**
+     * Returns the relation of a team towards another.
+     * @param fromId the id of the first team.
+     * @param toId   the id of the second team.
+     * @return the relation of the first team towards the second.
+     * @see GameContext#getRelation(int, int)
+     */
+    public TeamRelation getRelation(int fromId, int toId) {
+	TeamRelation relation = relations.get(key(fromId, toId));
+	if (relation != null) {
+	    return relation;
+	}
+	return (fromId == toId) ? TeamRelation.ALLY : TeamRelation.ENEMY;
+    }
+
+    /**
+     * Returns the memberships of the context.
+     * @return an unmodifiable {@code Map} associating the UUIDs of the players
+     *         to the id of their team.
+     */
+    public Map<UUID, Integer> getMembers() {
+	return Collections.unmodifiableMap(members);
+    }
+
+    /**
+     * Returns the time a player joined its team.
+     * @param playerId the UUID of the player. Must not be {@code null}.
+     * @return the join time of the player, in milliseconds since the epoch, or
+     *         {@code -1} if the player isn't in a team.
+     */
+    public long getJoinTime(UUID playerId) {
+	Long joinTime = joinTimes.get(checkNotNull(playerId, "Player UUID cannot be null"));
+	return (joinTime == null) ? -1 : joinTime;
+    }
+
+    /**
+     * Applies this state to a context, the same way
+     * {@link TeamStateStore#restore(String, GameContext)} does: settings and
+     * relations are replaced, missing teams are created, online players are put
+     * back in their team and the memberships of the others are applied when
+     * they connect. Main thread only.
+     * @param context the context to restore. Must not be {@code null}.
+     * @return the number of memberships of this state.
+     */
+    public int restore(GameContext context) {
+	checkNotNull(context, "GameContext cannot be null");
+	context.setFriendlyFire(friendlyFire);
+	context.setCanSeeFriendlyInvisibles(seeFriendlyInvisibles);
+	context.setNameTagVisibility(nameTagVisibility);
+	for (Map.Entry<Integer, ChatColor> entry : teams.entrySet()) {
+	    if (context.getTeam(entry.getKey()) == null) {
+		context.createTeam(entry.getKey(), entry.getValue());
+	    }
+	}
+	context.clearRelations();
+	for (Map.Entry<Long, TeamRelation> entry : relations.entrySet()) {
+	    long key = entry.getKey();
+	    context.setRelation((int) (key >>> 32), (int) key, entry.getValue());
+	}
+	for (Map.Entry<UUID, Integer> entry : members.entrySet()) {
+	    UUID id = entry.getKey();
+	    context.expectMember(id, entry.getValue(), joinTimes.get(id));
+	    Player player = Bukkit.getPlayer(id);
+	    if (player != null) {
+		context.restoreMember(player);
+	    }
+	}
+	return members.size();
+    }
+
+    // -----------------------=[ Internal ]=-----------------------
+    void apply(JournalEvent event) {
+	time = event.getTime();
+	switch (event.getType()) {
+	    case CHECKPOINT:
+		friendlyFire = true;
+		seeFriendlyInvisibles = false;
+		nameTagVisibility = NameTagVisibility.ALWAYS;
+		teams.clear();
+		relations.clear();
+		members.clear();
+		joinTimes.clear();
+		break;
+	    case SETTINGS:
+		friendlyFire = event.hasFriendlyFire();
+		seeFriendlyInvisibles = event.canSeeFriendlyInvisibles();
+		nameTagVisibility = event.getNameTagVisibility();
+		break;
+	    case TEAM_CREATED:
+		teams.put(event.getToTeam(), event.getColor());
+		break;
+	    case TEAM_REMOVED:
+		teams.remove(event.getFromTeam());
+		members.values().removeIf(team -> team == event.getFromTeam());
+		joinTimes.keySet().retainAll(members.keySet());
+		break;
+	    case RELATION:
+		relations.put(key(event.getFromTeam(), event.getToTeam()), event.getRelation());
+		break;
+	    case JOIN:
+		members.put(event.getPlayerId(), event.getToTeam());
+		joinTimes.put(event.getPlayerId(), event.getTime());
+		break;
+	    case LEAVE:
+		members.remove(event.getPlayerId());
+		joinTimes.remove(event.getPlayerId());
+		break;
+	    case MOVE:
+		members.put(event.getPlayerId(), event.getToTeam());
+		joinTimes.putIfAbsent(event.getPlayerId(), event.getTime());
+		break;
+	    case RESET:
+		members.clear();
+		joinTimes.clear();
+		break;
+	}
+    }
+
+    private static long key(int fromId, int toId) {
+	return (long) fromId << 32 | (toId & 0xFFFFFFFFL);
+    }
+
+}
@@ -0,0 +1,136 @@
+package io.github.totom3.teamsystem;
+
+import com.google.common.collect.ImmutableList;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A debugging aid reporting the {@code GameContext}s that are never closed.
+ * When enabled, every context created from then on is tracked by a phantom
+ * reference, along with the stack trace of its creation. A context garbage
+ * collected without having been closed is reported as soon as the collector
+ * notices it; contexts still open can be listed at any time, typically when
+ * the plugin is disabled, to find those that were abandoned but are still
+ * reachable through a Bukkit listener or task.
+ * <p>
+ * Disabled by default, since recording the creation of contexts is costly;
+ * it can also be enabled with the {@code teamsystem.leakDetection} system
+ * property. Reports are logged as warnings.
+ * @author Totom3
+ * @see GameContext#close()
+ */
+public final class LeakDetector {
+
+    private static final Logger LOGGER = Logger.getLogger(LeakDetector.class.getName());
+
+    private static volatile boolean enabled = Boolean.getBoolean("teamsystem.leakDetection");
+
+    // Phantom references must stay reachable until they are enqueued
+    private static final Set<Tracker> trackers = ConcurrentHashMap.newKeySet();
+    private static final ReferenceQueue<GameContext> queue = new ReferenceQueue<>();
+    private static Thread reaper;
+
+    private LeakDetector() {
+    }
+
+    public static boolean isEnabled() {
+	return enabled;
+    }
+
+    /**
+     * Enables or disables the leak detector. Contexts created while the
+     * detector is disabled are never tracked; disabling the detector doesn't
+     * forget the contexts already tracked.
+     * @param enabled {@code true} to track the contexts created from now on.
+     */
+    public static void setEnabled(boolean enabled) {
+	LeakDetector.enabled = enabled;
+    }
+
+    /**
+     * Returns the number of tracked contexts that are still open.
+     * @return the number of open contexts.
+     */
+    public static int getOpenCount() {
+	return trackers.size();
+    }
+
+    /**
+     * Logs a warning for every tracked context that is still open, with the
+     * stack trace of its creation.
+     * @return the descriptions of the open contexts.
+     */
+    public static List<String> reportOpen() {
+	ImmutableList.Builder<String> open = ImmutableList.builder();
+	for (Tracker tracker : trackers) {
+	    LOGGER.log(Level.WARNING, tracker.description + " was never closed", tracker.creation);
+	    open.add(tracker.description);
+	}
+	return open.build();
+    }
+
+    // -----------------------=[ Internal ]=-----------------------
+    /**
+     * Only called by the {@code GameContext} constructors.
+     * @param context     the context to track.
+     * @param description a description of the context, for the reports.
+     * @return the tracker to close along with the context, or {@code null} if
+     *         the detector is disabled.
+     */
+    static Tracker track(GameContext context, String description) {
+	if (!enabled) {
+	    return null;
+	}
+	Tracker tracker = new Tracker(context, description);
+	trackers.add(tracker);
+	startReaper();
+	return tracker;
+    }
+
+    private static synchronized void startReaper() {
+	if (reaper != null) {
+	    return;
+	}
+	reaper = new Thread(LeakDetector::reap, "TeamSystem leak detector");
+	reaper.setDaemon(true);
+	reaper.start();
+    }
+
+    private static void reap() {
+	while (true) {
+	    Tracker tracker;
+	    try {
+		tracker = (Tracker) queue.remove();
+	    } catch (InterruptedException ex) {
+		return;
+	    }
+	    // closed contexts are forgotten before they can be collected
+	    if (trackers.remove(tracker)) {
+		LOGGER.log(Level.WARNING, tracker.description + " was garbage collected without being closed", tracker.creation);
+	    }
+	}
+    }
+
+    static final class Tracker extends PhantomReference<GameContext> {
+
+	// must not reference the context, which could then never be collected
+	final String description;
+	final Throwable creation;
+
+	Tracker(GameContext context, String description) {
+	    super(context, queue);
+	    this.description = description;
+	    this.creation = new Throwable("Created here");
+	}
+
+	void close() {
+	    trackers.remove(this);
+	    clear();
+	}
+    }
+}
@@ -2,6 +2,10 @@ package io.github.totom3.teamsystem;
 
 import io.github.totom3.teamsystem.demo.InfectedGameCommandExecutor;
 import io.github.totom3.teamsystem.demo.InfectedGameContext;
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import org.bukkit.Bukkit;
 import org.bukkit.plugin.java.JavaPlugin;
 
 /**
@@ -12,6 +16,13 @@ public class Main extends JavaPlugin {
 
     private static Main instance;
 
+    // Ticks between two saves of the demo context
+    private static final long AUTOSAVE_PERIOD = 20 * 60;
+
+    private ArenaRegistry arenaRegistry;
+    private TeamStateStore stateStore;
+    private InfectedGameContext infected;
+
     public static Main get() {
 	if (instance == null) {
 	    throw new IllegalStateException("plugin not initialized yet");
@@ -23,13 +34,61 @@ public class Main extends JavaPlugin {
 	instance = this;
     }
 
+    public ArenaRegistry getArenaRegistry() {
+	return arenaRegistry;
+    }
+
+    public TeamStateStore getStateStore() {
+	return stateStore;
+    }
+
     @Override
     public void onEnable() {
+	arenaRegistry = new ArenaRegistry();
+	stateStore = new TeamStateStore(new File(getDataFolder(), "state"));
+
 	// ----------=[ Demo Infected Teams Initialization ]=----------
 	// (not related to API)
 	
-	InfectedGameContext context = new InfectedGameContext();
-	getCommand("infected").setExecutor(new InfectedGameCommandExecutor(context));
+	infected = new InfectedGameContext(arenaRegistry, "infected");
+	getCommand("infected").setExecutor(new InfectedGameCommandExecutor(infected));
+
+	// put the players back in the teams they had before the restart
+	try {
+	    stateStore.restore("infected", infected);
+	} catch (IOException ex) {
+	    getLogger().log(Level.WARNING, "Could not restore the Infected teams", ex);
+	}
+	Bukkit.getScheduler().runTaskTimer(this, this::autosave, AUTOSAVE_PERIOD, AUTOSAVE_PERIOD);
+    }
+
+    private void autosave() {
+	stateStore.save("infected", infected).exceptionally(ex -> {
+	    getLogger().log(Level.WARNING, "Could not save the Infected teams", ex);
+	    return null;
+	});
+    }
+
+    @Override
+    public void onDisable() {
+	try {
+	    stateStore.saveNow("infected", infected);
+	} catch (IOException ex) {
+	    getLogger().log(Level.WARNING, "Could not save the Infected teams", ex);
+	}
+
+	// closes every arena, the Infected one included
+	arenaRegistry.close();
+
+	try {
+	    stateStore.close();
+	} catch (InterruptedException ex) {
+	    Thread.currentThread().interrupt();
+	}
+
+	if (LeakDetector.isEnabled()) {
+	    LeakDetector.reportOpen();
+	}
     }
     
     
@@ -0,0 +1,105 @@
+package io.github.totom3.teamsystem;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+
+/**
+ * An immutable view of the teams and players of a {@code GameContext} at a
+ * given point in time. Snapshots may be freely read from any thread without
+ * locking. Successive snapshots of a context have increasing versions.
+ * <p>
+ * Snapshots are published by the main thread at the end of each tick in
+ * which the membership changed, and whenever the main thread reads the
+ * snapshot of a changed context. Other threads therefore see the membership
+ * as of the end of a tick: they never observe the intermediate states of a
+ * tick, and lag behind the main thread by at most one tick. Building a
+ * snapshot is linear in the number of players, so it is done at most once
+ * per tick rather than after every change.
+ * <p>
+ * Note that while the snapshot itself is immutable, the {@code GameTeam}s it
+ * references are not: only their immutable properties (id, color, name,
+ * context) should be read off the main thread.
+ * @author Totom3
+ * @see GameContext#snapshot()
+ */
+public final class MembershipSnapshot {
+
+    private final long version;
+    private final ImmutableMap<ChatColor, GameTeam> teams;
+    private final ImmutableList<GameTeam> allTeams;
+    private final ImmutableMap<Player, GameTeam> players;
+    private final ImmutableMap<UUID, GameTeam> playerIds;
+    private final ImmutableMap<GameTeam, ImmutableSet<Player>> rosters;
+
+    MembershipSnapshot(long version, ImmutableMap<ChatColor, GameTeam> teams, ImmutableList<GameTeam> allTeams, ImmutableMap<Player, GameTeam> players, ImmutableMap<UUID, GameTeam> playerIds, ImmutableMap<GameTeam, ImmutableSet<Player>> rosters) {
+	this.version = version;
+	this.teams = teams;
+	this.allTeams = allTeams;
+	this.players = players;
+	this.playerIds = playerIds;
+	this.rosters = rosters;
+    }
+
+    /**
+     * Returns the version of this snapshot. A snapshot with a greater version
+     * than another snapshot of the same context is more recent.
+     * @return the version of this snapshot.
+     */
+    public long getVersion() {
+	return version;
+    }
+
+    /**
+     * Returns the teams that can be looked up by color: the teams whose id is
+     * the ordinal of their color.
+     * @return an immutable {@code Map} associating colors to teams.
+     * @see GameContext#getTeam(ChatColor)
+     */
+    public Map<ChatColor, GameTeam> teams() {
+	return teams;
+    }
+
+    /**
+     * Returns every team of the context, ordered by id.
+     * @return an immutable {@code List} of the teams.
+     */
+    public List<GameTeam> allTeams() {
+	return allTeams;
+    }
+
+    public Map<Player, GameTeam> players() {
+	return players;
+    }
+
+    public GameTeam getTeamOf(Player player) {
+	return players.get(GameUtils.checkPlayer(player));
+    }
+
+    public GameTeam getTeamOf(UUID playerId) {
+	return playerIds.get(playerId);
+    }
+
+    /**
+     * Returns the players of a team at the time of this snapshot.
+     * @param team the team to get the players of.
+     * @return an immutable {@code Set} containing the players of the team, or
+     *         an empty set if the team wasn't part of the context.
+     */
+    public Set<Player> getPlayers(GameTeam team) {
+	ImmutableSet<Player> set = rosters.get(team);
+	return (set == null) ? ImmutableSet.<Player>of() : set;
+    }
+
+    @Override
+    public String toString() {
+	return getClass().getSimpleName() + "{" + "version=" + version + ", players=" + GameUtils.formatPlayers(players.keySet(), true) + '}';
+    }
+
+}
@@ -0,0 +1,150 @@
+package io.github.totom3.teamsystem;
+
+import java.util.EnumMap;
+import java.util.Map;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.PlayerDeathEvent;
+
+/**
+ * Records the latency of the team operations and event handlers of a
+ * {@code GameContext}, and counts the calls made to Bukkit teams and
+ * scoreboards. Recording can be switched off at any time, in which case an
+ * instrumented operation only costs the read of a field.
+ * <p>
+ * Metrics are recorded on the main thread, and should be read from it.
+ * @author Totom3
+ * @see GameContext#getMetrics()
+ */
+public final class Metrics {
+
+    /**
+     * The instrumented operations.
+     */
+    public enum Probe {
+
+	/**
+	 * {@link GameTeam#addPlayer(Player)}.
+	 */
+	ADD_PLAYER,
+	/**
+	 * {@link GameTeam#removePlayer(Player)}.
+	 */
+	REMOVE_PLAYER,
+	/**
+	 * {@link GameContext#setTeamOf(Player, ChatColor)}.
+	 */
+	SET_TEAM_OF,
+	/**
+	 * Pushing the settings of the context to the Bukkit teams.
+	 */
+	FLUSH_SETTINGS,
+	/**
+	 * {@link DefaultGameListener#onQuit(Player)}.
+	 */
+	QUIT,
+	/**
+	 * {@link DefaultGameListener#onDamage(EntityDamageByEntityEvent)}.
+	 */
+	DAMAGE,
+	/**
+	 * {@link DefaultGameListener#onDeath(PlayerDeathEvent)}.
+	 */
+	DEATH
+    }
+
+    private static final Probe[] PROBES = Probe.values();
+
+    private final LatencyHistogram[] histograms;
+    private volatile boolean enabled;
+    private long bukkitCalls;
+
+    public Metrics() {
+	this.histograms = new LatencyHistogram[PROBES.length];
+	for (int i = 0; i < histograms.length; ++i) {
+	    histograms[i] = new LatencyHistogram();
+	}
+	this.enabled = true;
+    }
+
+    public boolean isEnabled() {
+	return enabled;
+    }
+
+    /**
+     * Switches recording on or off. Already recorded metrics are kept.
+     * @param enabled whether or not to record metrics.
+     */
+    public void setEnabled(boolean enabled) {
+	this.enabled = enabled;
+    }
+
+    public LatencyHistogram getHistogram(Probe probe) {
+	return histograms[probe.ordinal()];
+    }
+
+    /**
+     * Returns the number of times an operation was recorded.
+     * @param probe the operation.
+     * @return the number of recorded calls of that operation.
+     */
+    public long getCount(Probe probe) {
+	return histograms[probe.ordinal()].getCount();
+    }
+
+    /**
+     * Returns the number of calls changing a Bukkit team or the scoreboard of
+     * a player that were made while recording.
+     * @return the number of Bukkit scoreboard calls.
+     */
+    public long getBukkitCalls() {
+	return bukkitCalls;
+    }
+
+    /**
+     * Returns the histograms of every operation that was recorded at least
+     * once.
+     * @return a new {@code Map} of the non-empty histograms.
+     */
+    public Map<Probe, LatencyHistogram> getHistograms() {
+	Map<Probe, LatencyHistogram> map = new EnumMap<>(Probe.class);
+	for (Probe probe : PROBES) {
+	    LatencyHistogram histogram = histograms[probe.ordinal()];
+	    if (histogram.getCount() != 0) {
+		map.put(probe, histogram);
+	    }
+	}
+	return map;
+    }
+
+    public void reset() {
+	for (LatencyHistogram histogram : histograms) {
+	    histogram.reset();
+	}
+	bukkitCalls = 0;
+    }
+
+    // -----------------------=[ Internal ]=-----------------------
+    /**
+     * Starts timing an operation.
+     * @return the start time to pass to {@link #stop(Probe, long)}, or
+     *         {@code 0} if recording is off.
+     */
+    long start() {
+	return (enabled) ? System.nanoTime() : 0;
+    }
+
+    void stop(Probe probe, long start) {
+	if (start != 0) {
+	    histograms[probe.ordinal()].record(System.nanoTime() - start);
+	}
+    }
+
+    void countBukkitCalls(int calls) {
+	if (enabled) {
+	    bukkitCalls += calls;
+	}
+    }
+
+}
@@ -0,0 +1,22 @@
+package io.github.totom3.teamsystem;
+
+import java.util.List;
+import org.bukkit.entity.Player;
+
+/**
+ * Delivers the team packets of a {@code VirtualScoreboard} to the clients,
+ * typically by translating them to the team packets of the protocol.
+ * @author Totom3
+ * @see RecordingSink
+ */
+public interface PacketSink {
+
+    /**
+     * Sends a batch of packets to a player. The packets must be delivered in
+     * order. The same list may be sent to several players, and must not be
+     * modified.
+     * @param viewer  the player to send the packets to.
+     * @param packets the packets, never empty.
+     */
+    void send(Player viewer, List<TeamPacket> packets);
+}
@@ -0,0 +1,341 @@
+package io.github.totom3.teamsystem;
+
+import java.util.Arrays;
+import java.util.UUID;
+import org.bukkit.entity.Player;
+
+/**
+ * Keeps track of the players of a {@code GameContext}. Each player is
+ * identified by its {@code UUID}, which is mapped to a dense {@code int} slot.
+ * Per-player data (the {@code Player} object, the index of the player's team
+ * and the time it joined) is stored in arrays indexed by slot, so that looking
+ * up the team of a player never hashes nor compares {@code Player} objects.
+ * <p>
+ * A player obtains a slot when joining its first team, and releases it when it
+ * leaves its last team. Released slots are recycled.
+ * <p>
+ * Every slot is stamped with the epoch it was last joined in. Bumping the epoch
+ * with {@link #reset()} makes every slot stale in constant time: stale slots
+ * are reported as absent, are reused if their player joins again, and must
+ * otherwise be released with {@link #leave(int)}.
+ * @author Totom3
+ */
+final class PlayerRoster {
+
+    static final int NO_SLOT = -1;
+    static final int NO_TEAM = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // UUID -> slot open addressing table (linear probing). A key is stored as
+    // its two halves; values are stored as slot + 1, so that 0 means "empty".
+    private long[] keysMost;
+    private long[] keysLeast;
+    private int[] values;
+    private int mask;
+
+    // Per-slot data
+    private Player[] players;
+    private int[] teams;
+    private int[] epochs;
+    private long[] joinTimes;
+
+    // Stack of released slots
+    private int[] freeSlots;
+    private int freeCount;
+
+    private int nextSlot;
+    private int size;
+    private int staleCount;
+    private int epoch;
+
+    PlayerRoster() {
+	int tableSize = INITIAL_CAPACITY * 2;
+	this.keysMost = new long[tableSize];
+	this.keysLeast = new long[tableSize];
+	this.values = new int[tableSize];
+	this.mask = tableSize - 1;
+
+	this.players = new Player[INITIAL_CAPACITY];
+	this.teams = new int[INITIAL_CAPACITY];
+	this.epochs = new int[INITIAL_CAPACITY];
+	this.joinTimes = new long[INITIAL_CAPACITY];
+	this.freeSlots = new int[INITIAL_CAPACITY];
+	Arrays.fill(teams, NO_TEAM);
+    }
+
+    /**
+     * Returns the number of players currently in this roster.
+     * @return the number of live slots.
+     */
+    int size() {
+	return size;
+    }
+
+    /**
+     * Returns the number of stale slots that weren't released yet.
+     * @return the number of stale slots.
+     */
+    int staleCount() {
+	return staleCount;
+    }
+
+    int getEpoch() {
+	return epoch;
+    }
+
+    /**
+     * Returns an exclusive upper bound for every slot that was ever allocated
+     * by this roster. Useful to size per-slot arrays.
+     * @return the slot capacity in use.
+     */
+    int slotBound() {
+	return nextSlot;
+    }
+
+    /**
+     * Returns the slot of a player, or {@link #NO_SLOT} if the player is not
+     * in this roster.
+     * @param player the player to look up. Must not be {@code null}.
+     * @return the slot of the player, or {@code NO_SLOT}.
+     */
+    int slotOf(Player player) {
+	return slotOf(player.getUniqueId());
+    }
+
+    /**
+     * Returns the slot of the player with the specified {@code UUID}, or
+     * {@link #NO_SLOT} if no such player is in this roster.
+     * @param id the {@code UUID} of the player. Must not be {@code null}.
+     * @return the slot of the player, or {@code NO_SLOT}.
+     */
+    int slotOf(UUID id) {
+	long most = id.getMostSignificantBits();
+	long least = id.getLeastSignificantBits();
+
+	int i = hash(most, least) & mask;
+	for (;;) {
+	    int value = values[i];
+	    if (value == 0) {
+		return NO_SLOT;
+	    }
+	    if (keysMost[i] == most && keysLeast[i] == least) {
+		int slot = value - 1;
+		return (epochs[slot] == epoch) ? slot : NO_SLOT;
+	    }
+	    i = (i + 1) & mask;
+	}
+    }
+
+    /**
+     * Returns whether or not a slot holds a player of the current epoch.
+     * @param slot the slot to check.
+     * @return {@code true} if the slot is allocated and not stale.
+     */
+    boolean isLive(int slot) {
+	return players[slot] != null && epochs[slot] == epoch;
+    }
+
+    /**
+     * Registers a player in this roster, or refreshes its {@code Player}
+     * object if it is already registered (which happens when a player
+     * reconnects, as a new {@code Player} object is then created). A stale
+     * slot of the player is revived, without any team.
+     * @param player the player to register. Must not be {@code null}.
+     * @return the slot of the player.
+     */
+    int join(Player player) {
+	UUID id = player.getUniqueId();
+	long most = id.getMostSignificantBits();
+	long least = id.getLeastSignificantBits();
+
+	int i = hash(most, least) & mask;
+	for (;;) {
+	    int value = values[i];
+	    if (value == 0) {
+		break;
+	    }
+	    if (keysMost[i] == most && keysLeast[i] == least) {
+		int slot = value - 1;
+		players[slot] = player;
+		if (epochs[slot] != epoch) {
+		    epochs[slot] = epoch;
+		    teams[slot] = NO_TEAM;
+		    --staleCount;
+		    ++size;
+		}
+		return slot;
+	    }
+	    i = (i + 1) & mask;
+	}
+
+	int slot = allocateSlot();
+	keysMost[i] = most;
+	keysLeast[i] = least;
+	values[i] = slot + 1;
+	players[slot] = player;
+	teams[slot] = NO_TEAM;
+	epochs[slot] = epoch;
+	++size;
+
+	// stale slots aren't counted in size, but still occupy the table
+	if ((size + staleCount) * 2 > values.length) {
+	    rehash(values.length * 2);
+	}
+	return slot;
+    }
+
+    /**
+     * Unregisters the player occupying a slot, and releases that slot. The
+     * slot may be stale.
+     * @param slot the slot to release.
+     */
+    void leave(int slot) {
+	Player player = players[slot];
+	if (player == null) {
+	    return;
+	}
+
+	UUID id = player.getUniqueId();
+	long most = id.getMostSignificantBits();
+	long least = id.getLeastSignificantBits();
+
+	int i = hash(most, least) & mask;
+	while (values[i] != slot + 1) {
+	    i = (i + 1) & mask;
+	}
+	deleteAt(i);
+
+	if (epochs[slot] == epoch) {
+	    --size;
+	} else {
+	    --staleCount;
+	}
+	players[slot] = null;
+	teams[slot] = NO_TEAM;
+	freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Makes every slot stale, in constant time.
+     */
+    void reset() {
+	++epoch;
+	staleCount += size;
+	size = 0;
+    }
+
+    /**
+     * Unregisters every player.
+     */
+    void clear() {
+	Arrays.fill(values, 0);
+	Arrays.fill(players, null);
+	Arrays.fill(teams, NO_TEAM);
+	freeCount = 0;
+	nextSlot = 0;
+	size = 0;
+	staleCount = 0;
+    }
+
+    Player getPlayer(int slot) {
+	return players[slot];
+    }
+
+    int getTeam(int slot) {
+	return teams[slot];
+    }
+
+    void setTeam(int slot, int team) {
+	teams[slot] = team;
+    }
+
+    long getJoinTime(int slot) {
+	return joinTimes[slot];
+    }
+
+    void setJoinTime(int slot, long time) {
+	joinTimes[slot] = time;
+    }
+
+    // -----------------------=[ Internal ]=-----------------------
+    private int allocateSlot() {
+	if (freeCount > 0) {
+	    return freeSlots[--freeCount];
+	}
+
+	int slot = nextSlot++;
+	if (slot == players.length) {
+	    int newLength = players.length * 2;
+	    players = Arrays.copyOf(players, newLength);
+	    freeSlots = Arrays.copyOf(freeSlots, newLength);
+	    teams = Arrays.copyOf(teams, newLength);
+	    epochs = Arrays.copyOf(epochs, newLength);
+	    joinTimes = Arrays.copyOf(joinTimes, newLength);
+	    Arrays.fill(teams, slot, newLength, NO_TEAM);
+	}
+	return slot;
+    }
+
+    /**
+     * Removes the entry at index {@code i} of the table, shifting back the
+     * following entries of the same probe sequence so that no tombstone is
+     * needed.
+     */
+    private void deleteAt(int i) {
+	int hole = i;
+	int j = i;
+	for (;;) {
+	    j = (j + 1) & mask;
+	    if (values[j] == 0) {
+		break;
+	    }
+
+	    int home = hash(keysMost[j], keysLeast[j]) & mask;
+	    // move the entry at j into the hole if its home isn't cyclically in
+	    // (hole, j]
+	    if (((j - home) & mask) >= ((j - hole) & mask)) {
+		keysMost[hole] = keysMost[j];
+		keysLeast[hole] = keysLeast[j];
+		values[hole] = values[j];
+		hole = j;
+	    }
+	}
+	values[hole] = 0;
+    }
+
+    private void rehash(int newLength) {
+	long[] oldMost = keysMost;
+	long[] oldLeast = keysLeast;
+	int[] oldValues = values;
+
+	keysMost = new long[newLength];
+	keysLeast = new long[newLength];
+	values = new int[newLength];
+	mask = newLength - 1;
+
+	for (int k = 0; k < oldValues.length; ++k) {
+	    int value = oldValues[k];
+	    if (value == 0) {
+		continue;
+	    }
+
+	    int i = hash(oldMost[k], oldLeast[k]) & mask;
+	    while (values[i] != 0) {
+		i = (i + 1) & mask;
+	    }
+	    keysMost[i] = oldMost[k];
+	    keysLeast[i] = oldLeast[k];
+	    values[i] = value;
+	}
+    }
+
+    private static int hash(long most, long least) {
+	long h = most ^ least;
+	h ^= (h >>> 33);
+	h *= 0xff51afd7ed558ccdL;
+	h ^= (h >>> 33);
+	return (int) h;
+    }
+
+}
@@ -0,0 +1,216 @@
+package io.github.totom3.teamsystem;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bukkit.entity.Player;
+
+/**
+ * Keeps the membership of players who disconnect for a grace period, so that
+ * a player reconnecting in time is back in its team without leaving it. A
+ * parked player stays in its team, both in the context and in the Bukkit team:
+ * reconnecting only refreshes the {@code Player} object of the roster and sets
+ * the scoreboard of the new player, in constant time.
+ * <p>
+ * Parked players are evicted once their grace period expires, or when the
+ * cache is full (oldest first). Evicting a player calls
+ * {@link DefaultGameListener#onGraceExpired(Player)}, which removes the player
+ * from its team. That removal can't be vetoed by the hooks of the event bus.
+ * The grace period is {@code 0} by default, which disables the
+ * cache: players then leave their team as soon as they quit.
+ * @author Totom3
+ * @see GameContext#getReconnectCache()
+ */
+public final class ReconnectCache {
+
+    private final GameContext context;
+
+    private static final Logger LOGGER = Logger.getLogger(ReconnectCache.class.getName());
+
+    // Ordered by parking time. Every player gets the same grace period, so
+    // this is also the order of expiry, even after the grace period changes.
+    private final LinkedHashMap<UUID, Parked> parked = new LinkedHashMap<>();
+    private long graceNanos;
+    private int maxSize = 1024;
+
+    ReconnectCache(GameContext context) {
+	this.context = context;
+    }
+
+    /**
+     * Returns how long the membership of a disconnected player is kept.
+     * @return the grace period, in milliseconds. {@code 0} if disabled.
+     */
+    public long getGraceMillis() {
+	return TimeUnit.NANOSECONDS.toMillis(graceNanos);
+    }
+
+    /**
+     * Sets how long the membership of a disconnected player is kept. The new
+     * grace period also applies to the players already parked, counted from
+     * when they disconnected: with a shorter period, the players who
+     * disconnected long enough ago are evicted on the next tick.
+     * @param graceMillis the grace period, in milliseconds. {@code 0} disables
+     *                    the cache.
+     * @throws IllegalArgumentException if {@code graceMillis} is negative.
+     */
+    public void setGraceMillis(long graceMillis) {
+	checkArgument(graceMillis >= 0, "Grace period cannot be negative");
+	this.graceNanos = TimeUnit.MILLISECONDS.toNanos(graceMillis);
+    }
+
+    public int getMaxSize() {
+	return maxSize;
+    }
+
+    /**
+     * Sets the maximum number of parked players. The oldest parked players
+     * are evicted if the cache holds more players than that.
+     * @param maxSize the maximum number of parked players.
+     * @throws IllegalArgumentException if {@code maxSize} isn't positive.
+     */
+    public void setMaxSize(int maxSize) {
+	checkArgument(maxSize > 0, "Maximum size must be positive");
+	this.maxSize = maxSize;
+	while (parked.size() > maxSize) {
+	    evictEldest();
+	}
+    }
+
+    /**
+     * Returns the number of players waiting to reconnect.
+     * @return the number of parked players.
+     */
+    public int size() {
+	return parked.size();
+    }
+
+    /**
+     * Returns whether or not a player is disconnected, and kept in its team
+     * until it reconnects.
+     * @param id the UUID of the player.
+     * @return {@code true} if the player is parked.
+     */
+    public boolean isParked(UUID id) {
+	return parked.containsKey(id);
+    }
+
+    /**
+     * Evicts every parked player immediately.
+     */
+    public void evictAll() {
+	while (!parked.isEmpty()) {
+	    evictEldest();
+	}
+    }
+
+    // -----------------------=[ Internal ]=-----------------------
+    /**
+     * Only called by the listener of the context, when a player quits.
+     * @return {@code true} if the player was parked, {@code false} if it must
+     *         leave its team now.
+     */
+    boolean park(Player player) {
+	if (graceNanos == 0 || context.getTeamOf(player) == null) {
+	    return false;
+	}
+
+	UUID id = player.getUniqueId();
+	parked.remove(id);
+	parked.put(id, new Parked(player, System.nanoTime()));
+	context.park(player);
+	if (parked.size() > maxSize) {
+	    evictEldest();
+	}
+	return true;
+    }
+
+    /**
+     * Only called by the listener of the context, when a player connects.
+     * @return {@code true} if the player was parked, and is back in its team.
+     */
+    boolean unpark(Player player) {
+	if (parked.remove(player.getUniqueId()) == null) {
+	    return false;
+	}
+	return context.reconnect(player);
+    }
+
+    /**
+     * Only called by the context, once per tick. Evicts the players whose grace
+     * period expired. An eviction which fails is logged, and doesn't prevent
+     * the other players from being evicted.
+     */
+    void expire() {
+	if (parked.isEmpty()) {
+	    return;
+	}
+	// the eviction hook may park or unpark players: don't keep iterators
+	long now = System.nanoTime();
+	while (!parked.isEmpty()) {
+	    Parked entry = parked.values().iterator().next();
+	    if (now - entry.parkedAt < graceNanos) {
+		break;
+	    }
+	    parked.remove(entry.player.getUniqueId());
+	    try {
+		evict(entry.player);
+	    } catch (RuntimeException ex) {
+		LOGGER.log(Level.WARNING, "Evicting " + entry.player.getName() + " failed", ex);
+	    }
+	}
+    }
+
+    /**
+     * Only called by the context, when a player leaves its team. Forgets the
+     * player if it was parked. Not called when a player moves to another
+     * team: a parked player stays parked, and is evicted from its new team
+     * once its grace period runs out.
+     */
+    void onLeave(UUID id) {
+	if (!parked.isEmpty()) {
+	    parked.remove(id);
+	}
+    }
+
+    /**
+     * Only called by the context, when its players are removed all at once.
+     * Forgets every parked player, without evicting them.
+     */
+    void clear() {
+	parked.clear();
+    }
+
+    private void evictEldest() {
+	Parked entry = parked.values().iterator().next();
+	parked.remove(entry.player.getUniqueId());
+	evict(entry.player);
+    }
+
+    private void evict(Player player) {
+	if (context.getTeamOf(player) == null) {
+	    return;
+	}
+
+	DefaultGameListener listener = context.getListener();
+	if (listener != null) {
+	    listener.onGraceExpired(player);
+	} else {
+	    context.getTeamOf(player).removePlayerForced(player);
+	}
+    }
+
+    private static class Parked {
+
+	final Player player;
+	final long parkedAt;
+
+	Parked(Player player, long parkedAt) {
+	    this.player = player;
+	    this.parkedAt = parkedAt;
+	}
+    }
+}
@@ -0,0 +1,173 @@
+package io.github.totom3.teamsystem;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.bukkit.entity.Player;
+
+/**
+ * A {@code PacketSink} recording the packets it is given instead of sending
+ * them, so that a {@code VirtualScoreboard} can be used without a server. The
+ * sink also replays the packets the way a client would, keeping the teams
+ * each viewer sees, and records the packets a client would reject: creating
+ * an existing team, or removing an entry from a team it isn't in. A new
+ * {@code Player} object for a player is a new connection, which starts
+ * without any team.
+ * @author Totom3
+ */
+public final class RecordingSink implements PacketSink {
+
+    private final Map<UUID, List<TeamPacket>> packets = new HashMap<>();
+    private final Map<UUID, Map<String, Set<String>>> clients = new HashMap<>();
+    private final Map<UUID, Player> connections = new HashMap<>();
+    private final List<String> violations = new ArrayList<>();
+    private int batchCount;
+
+    @Override
+    public void send(Player viewer, List<TeamPacket> batch) {
+	UUID id = viewer.getUniqueId();
+	List<TeamPacket> list = packets.get(id);
+	if (list == null) {
+	    list = new ArrayList<>();
+	    packets.put(id, list);
+	}
+	// a new Player object is a new connection, which knows no team
+	Map<String, Set<String>> client = clients.get(id);
+	if (connections.put(id, viewer) != viewer) {
+	    client = new HashMap<>();
+	    clients.put(id, client);
+	}
+	list.addAll(batch);
+	++batchCount;
+
+	for (TeamPacket packet : batch) {
+	    apply(viewer, client, packet);
+	}
+    }
+
+    /**
+     * Returns the packets sent to a player, in order.
+     * @param viewer the UUID of the player.
+     * @return an immutable list of packets.
+     */
+    public List<TeamPacket> getPackets(UUID viewer) {
+	List<TeamPacket> list = packets.get(viewer);
+	return (list == null) ? ImmutableList.of() : ImmutableList.copyOf(list);
+    }
+
+    /**
+     * Returns the teams a player sees, according to the packets it was sent.
+     * @param viewer the UUID of the player.
+     * @return an immutable map of team names to their entries.
+     */
+    public Map<String, Set<String>> getTeams(UUID viewer) {
+	Map<String, Set<String>> client = clients.get(viewer);
+	if (client == null) {
+	    return ImmutableMap.of();
+	}
+	ImmutableMap.Builder<String, Set<String>> builder = ImmutableMap.builder();
+	for (Map.Entry<String, Set<String>> entry : client.entrySet()) {
+	    builder.put(entry.getKey(), ImmutableSet.copyOf(entry.getValue()));
+	}
+	return builder.build();
+    }
+
+    /**
+     * Returns the packets a client would have rejected, described as strings.
+     * @return an immutable list of violations.
+     */
+    public List<String> getViolations() {
+	return ImmutableList.copyOf(violations);
+    }
+
+    /**
+     * Returns the total number of packets sent, to all players.
+     * @return the number of packets.
+     */
+    public int getPacketCount() {
+	int count = 0;
+	for (List<TeamPacket> list : packets.values()) {
+	    count += list.size();
+	}
+	return count;
+    }
+
+    /**
+     * Returns the number of batches sent, to all players.
+     * @return the number of batches.
+     */
+    public int getBatchCount() {
+	return batchCount;
+    }
+
+    /**
+     * Forgets the recorded packets and violations. The teams each player sees
+     * are kept.
+     */
+    public void clear() {
+	for (List<TeamPacket> list : packets.values()) {
+	    list.clear();
+	}
+	violations.clear();
+	batchCount = 0;
+    }
+
+    private void apply(Player viewer, Map<String, Set<String>> client, TeamPacket packet) {
+	String name = packet.getTeam();
+	Set<String> team = client.get(name);
+	if (team == null && packet.getMode() != TeamPacket.Mode.CREATE) {
+	    violation(viewer, packet, "unknown team");
+	    return;
+	}
+
+	switch (packet.getMode()) {
+	    case CREATE:
+		if (team != null) {
+		    violation(viewer, packet, "team already exists");
+		    return;
+		}
+		team = new LinkedHashSet<>();
+		client.put(name, team);
+		addEntries(client, team, packet.getEntries());
+		break;
+	    case REMOVE:
+		client.remove(name);
+		break;
+	    case UPDATE:
+		break;
+	    case ADD_ENTRIES:
+		addEntries(client, team, packet.getEntries());
+		break;
+	    case REMOVE_ENTRIES:
+		for (String entry : packet.getEntries()) {
+		    if (!team.remove(entry)) {
+			violation(viewer, packet, "entry " + entry + " isn't in the team");
+		    }
+		}
+		break;
+	    default:
+		throw new AssertionError(packet.getMode());
+	}
+    }
+
+    private static void addEntries(Map<String, Set<String>> client, Set<String> team, List<String> entries) {
+	for (String entry : entries) {
+	    // entries implicitly leave their previous team
+	    for (Set<String> other : client.values()) {
+		other.remove(entry);
+	    }
+	    team.add(entry);
+	}
+    }
+
+    private void violation(Player viewer, TeamPacket packet, String reason) {
+	violations.add(viewer.getName() + ": " + packet + ": " + reason);
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.totom3.teamsystem;
+
+import org.bukkit.ChatColor;
+
+/**
+ * Renders the names of the players of a team, and caches the last few
+ * renderings. A cached rendering is reused as long as the membership of the
+ * team doesn't change, so that displaying the same roster several times a
+ * second costs nothing. Renderings are paginated: the output of a page only
+ * depends on the page size, never on the size of the team.
+ * @author Totom3
+ */
+final class RosterRenderer {
+
+    private static final int CACHE_SIZE = 4;
+
+    private final GameTeam team;
+    private final Entry[] cache;
+    private int nextEntry;
+
+    RosterRenderer(GameTeam team) {
+	this.team = team;
+	this.cache = new Entry[CACHE_SIZE];
+    }
+
+    /**
+     * Renders some of the members of the team, from the member at index
+     * {@code offset} (inclusive) to the member at {@code offset + limit}
+     * (exclusive). If there are members after these, the rendering ends with
+     * {@code "…and N more"}.
+     * @param color1 the color of the separators, or {@code null} for a plain
+     *               rendering between brackets.
+     * @param color2 the color of the names. Ignored if {@code color1} is
+     *               {@code null}.
+     * @param offset the index of the first member to render.
+     * @param limit  the maximum number of names to render.
+     * @return the rendered names, or an empty string (or {@code "[]"} for a
+     *         plain rendering) if there is no member at {@code offset}.
+     */
+    String render(ChatColor color1, ChatColor color2, int offset, int limit) {
+	SlotSet members = team.getMembers();
+	int modCount = members.modCount();
+	for (Entry entry : cache) {
+	    if (entry != null && entry.matches(members, modCount, color1, color2, offset, limit)) {
+		return entry.rendered;
+	    }
+	}
+
+	Entry entry = new Entry(members, modCount, color1, color2, offset, limit, render(members, color1, color2, offset, limit));
+	cache[nextEntry] = entry;
+	nextEntry = (nextEntry + 1) % CACHE_SIZE;
+	return entry.rendered;
+    }
+
+    private String render(SlotSet members, ChatColor color1, ChatColor color2, int offset, int limit) {
+	boolean plain = (color1 == null);
+	int size = members.size();
+	int end = (int) Math.min(size, (long) offset + limit);
+	if (offset >= end) {
+	    return (plain) ? "[]" : "";
+	}
+
+	String separator = (plain) ? ", " : color1 + ", ";
+	String nameColor = (plain) ? "" : color2.toString();
+	PlayerRoster roster = team.getContext().getRoster();
+
+	StringBuilder builder = new StringBuilder();
+	if (plain) {
+	    builder.append('[');
+	}
+	for (int i = offset; i < end; ++i) {
+	    if (i != offset) {
+		builder.append(separator);
+	    }
+	    builder.append(nameColor).append(roster.getPlayer(members.get(i)).getName());
+	}
+	if (end < size) {
+	    GameUtils.appendMore(builder, size - end, color1, color2);
+	}
+	if (plain) {
+	    builder.append(']');
+	}
+	return builder.toString();
+    }
+
+    private static final class Entry {
+
+	final SlotSet members;
+	final int modCount;
+	final ChatColor color1;
+	final ChatColor color2;
+	final int offset;
+	final int limit;
+	final String rendered;
+
+	Entry(SlotSet members, int modCount, ChatColor color1, ChatColor color2, int offset, int limit, String rendered) {
+	    this.members = members;
+	    this.modCount = modCount;
+	    this.color1 = color1;
+	    this.color2 = color2;
+	    this.offset = offset;
+	    this.limit = limit;
+	    this.rendered = rendered;
+	}
+
+	boolean matches(SlotSet members, int modCount, ChatColor color1, ChatColor color2, int offset, int limit) {
+	    // the members are compared by identity, as a reset of the team
+	    // replaces them with a new set whose modCount starts over
+	    return this.members == members && this.modCount == modCount && this.color1 == color1
+		    && this.color2 == color2 && this.offset == offset && this.limit == limit;
+	}
+    }
+
+}
@@ -0,0 +1,351 @@
+package io.github.totom3.teamsystem;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.NameTagVisibility;
+import org.bukkit.scoreboard.Scoreboard;
+import org.bukkit.scoreboard.Team;
+
+/**
+ * Hands out one scoreboard per distinct view of a context, shared by every
+ * player needing that view. Each scoreboard holds a copy of every team of the
+ * context, styled by the {@code TeamView} of the context: a change of
+ * membership updates one Bukkit team per view in use, whatever the number of
+ * players.
+ * <p>
+ * Scoreboards are reference-counted by their viewers. A scoreboard nobody
+ * views anymore is kept aside, and reused for the next new view. Players who
+ * leave their team are given back the scoreboard of the context at the end of
+ * the tick.
+ * @author Totom3
+ * @see GameContext#setTeamView(TeamView)
+ */
+public final class ScoreboardPool {
+
+    // Maximum number of unused scoreboards kept for reuse
+    private static final int MAX_SPARE = 8;
+
+    private final GameContext context;
+    private final TeamView view;
+    private final Supplier<Scoreboard> factory;
+
+    private final Map<Object, View> views = new HashMap<>();
+    private final ArrayDeque<View> spare = new ArrayDeque<>();
+    private View[] slotViews = new View[16];
+    private int createdCount;
+
+    // Former members to give the scoreboard of the context back to
+    private final List<Player> leavers = new ArrayList<>();
+
+    ScoreboardPool(GameContext context, TeamView view, Supplier<Scoreboard> factory) {
+	this.context = context;
+	this.view = view;
+	this.factory = factory;
+    }
+
+    public TeamView getView() {
+	return view;
+    }
+
+    /**
+     * Returns the number of views in use, which is the number of scoreboards
+     * displayed to the players of the context.
+     * @return the number of views in use.
+     */
+    public int getViewCount() {
+	return views.size();
+    }
+
+    /**
+     * Returns the number of scoreboards created by this pool, including those
+     * kept for reuse.
+     * @return the number of scoreboards created.
+     */
+    public int getCreatedCount() {
+	return createdCount;
+    }
+
+    /**
+     * Returns the number of players sharing a view.
+     * @param key the key of the view.
+     * @return the number of viewers of the view, or {@code 0} if it isn't in
+     *         use.
+     */
+    public int getViewerCount(Object key) {
+	View v = views.get(key);
+	return (v == null) ? 0 : v.viewers;
+    }
+
+    /**
+     * Returns the scoreboard of the view of a player.
+     * @param player the player. Must not be {@code null}.
+     * @return the scoreboard of the player, or {@code null} if it isn't in a
+     *         team of the context.
+     */
+    public Scoreboard getScoreboard(Player player) {
+	int slot = context.getRoster().slotOf(GameUtils.checkPlayer(player));
+	return (slot == PlayerRoster.NO_SLOT || slot >= slotViews.length || slotViews[slot] == null) ? null : slotViews[slot].board;
+    }
+
+    // -----------------------=[ Internal ]=-----------------------
+    // Called by the GameContext on every change of membership or of teams.
+    Scoreboard scoreboardOf(int slot) {
+	return slotViews[slot].board;
+    }
+
+    void attach() {
+	PlayerRoster roster = context.getRoster();
+	int calls = 0;
+	for (int slot = 0, bound = roster.slotBound(); slot < bound; ++slot) {
+	    if (roster.isLive(slot)) {
+		Player player = roster.getPlayer(slot);
+		acquire(slot, view.getKey(player, context.getTeam(roster.getTeam(slot))));
+		if (player.isOnline()) {
+		    player.setScoreboard(slotViews[slot].board);
+		    ++calls;
+		}
+	    }
+	}
+	context.getMetrics().countBukkitCalls(calls);
+    }
+
+    void detach() {
+	PlayerRoster roster = context.getRoster();
+	int calls = 0;
+	for (int slot = 0, bound = roster.slotBound(); slot < bound; ++slot) {
+	    if (roster.isLive(slot) && roster.getPlayer(slot).isOnline()) {
+		roster.getPlayer(slot).setScoreboard(context.getScoreboard());
+		++calls;
+	    }
+	}
+	context.getMetrics().countBukkitCalls(calls);
+    }
+
+    void onTeamAdded(GameTeam team) {
+	for (View v : views.values()) {
+	    register(v, team);
+	}
+	for (View v : spare) {
+	    register(v, team);
+	}
+    }
+
+    void onTeamRemoved(int id) {
+	for (View v : views.values()) {
+	    unregister(v, id);
+	}
+	for (View v : spare) {
+	    unregister(v, id);
+	}
+    }
+
+    void onJoin(int slot, Player player, GameTeam team) {
+	for (View v : views.values()) {
+	    v.teams[team.getId()].addPlayer(player);
+	}
+	context.getMetrics().countBukkitCalls(views.size());
+	acquire(slot, view.getKey(player, team));
+    }
+
+    void onMove(int slot, Player player, GameTeam to) {
+	// joining a team implicitly leaves any team of the same scoreboard
+	for (View v : views.values()) {
+	    v.teams[to.getId()].addPlayer(player);
+	}
+	context.getMetrics().countBukkitCalls(views.size());
+
+	Object key = view.getKey(player, to);
+	if (!key.equals(slotViews[slot].key)) {
+	    release(slot);
+	    acquire(slot, key);
+	}
+    }
+
+    void onLeave(int slot, Player player, int team) {
+	for (View v : views.values()) {
+	    v.teams[team].removePlayer(player);
+	}
+	context.getMetrics().countBukkitCalls(views.size());
+	release(slot);
+	leavers.add(player);
+    }
+
+    /**
+     * Drops every view: their scoreboards still hold the former members. The
+     * former members get the scoreboard of the context back at the end of the
+     * tick, unless they join a team again before.
+     */
+    void onReset() {
+	PlayerRoster roster = context.getRoster();
+	for (int slot = 0; slot < slotViews.length; ++slot) {
+	    if (slotViews[slot] != null) {
+		leavers.add(roster.getPlayer(slot));
+		slotViews[slot] = null;
+	    }
+	}
+	views.clear();
+	spare.clear();
+    }
+
+    /**
+     * Gives the scoreboard of the context back to the players who left their
+     * team, and re-applies the style of every team on every scoreboard if
+     * requested.
+     */
+    void flush(boolean restyle) {
+	if (restyle) {
+	    for (View v : views.values()) {
+		restyle(v);
+	    }
+	}
+
+	if (leavers.isEmpty()) {
+	    return;
+	}
+	PlayerRoster roster = context.getRoster();
+	Scoreboard board = context.getScoreboard();
+	int calls = 0;
+	for (Player player : leavers) {
+	    if (roster.slotOf(player) == PlayerRoster.NO_SLOT && player.isOnline() && player.getScoreboard() != board) {
+		player.setScoreboard(board);
+		++calls;
+	    }
+	}
+	leavers.clear();
+	context.getMetrics().countBukkitCalls(calls);
+    }
+
+    private void acquire(int slot, Object key) {
+	View v = views.get(key);
+	if (v == null) {
+	    v = spare.poll();
+	    if (v == null) {
+		v = new View(factory.get());
+		v.key = key;
+		++createdCount;
+		for (int id = 0, bound = context.teamBound(); id < bound; ++id) {
+		    GameTeam team = context.getTeam(id);
+		    if (team != null) {
+			register(v, team);
+		    }
+		}
+	    } else {
+		v.key = key;
+		restyle(v);
+	    }
+	    fill(v);
+	    views.put(key, v);
+	}
+
+	if (slot >= slotViews.length) {
+	    slotViews = Arrays.copyOf(slotViews, Math.max(slotViews.length * 2, slot + 1));
+	}
+	slotViews[slot] = v;
+	++v.viewers;
+    }
+
+    private void release(int slot) {
+	View v = slotViews[slot];
+	slotViews[slot] = null;
+	if (--v.viewers > 0) {
+	    return;
+	}
+
+	views.remove(v.key);
+	if (spare.size() < MAX_SPARE) {
+	    spare.add(v);
+	}
+    }
+
+    private void register(View v, GameTeam team) {
+	int id = team.getId();
+	if (id >= v.teams.length) {
+	    v.teams = Arrays.copyOf(v.teams, Math.max(v.teams.length * 2, id + 1));
+	}
+	String name = context.getBukkitTeamName(team);
+	Team bTeam = v.board.getTeam(name);
+	if (bTeam == null) {
+	    bTeam = v.board.registerNewTeam(name);
+	}
+	v.teams[id] = bTeam;
+	style(v, team, bTeam);
+    }
+
+    private void unregister(View v, int id) {
+	if (id < v.teams.length && v.teams[id] != null) {
+	    v.teams[id].unregister();
+	    v.teams[id] = null;
+	}
+    }
+
+    /**
+     * Makes the teams of a new or reused view hold the current members.
+     */
+    private void fill(View v) {
+	for (Team bTeam : v.teams) {
+	    if (bTeam != null && bTeam.getSize() > 0) {
+		for (String entry : bTeam.getEntries().toArray(new String[0])) {
+		    bTeam.removeEntry(entry);
+		}
+	    }
+	}
+
+	PlayerRoster roster = context.getRoster();
+	int calls = 0;
+	for (int slot = 0, bound = roster.slotBound(); slot < bound; ++slot) {
+	    if (roster.isLive(slot)) {
+		v.teams[roster.getTeam(slot)].addPlayer(roster.getPlayer(slot));
+		++calls;
+	    }
+	}
+	context.getMetrics().countBukkitCalls(calls);
+    }
+
+    private void restyle(View v) {
+	for (int id = 0, bound = context.teamBound(); id < bound; ++id) {
+	    GameTeam team = context.getTeam(id);
+	    if (team != null) {
+		style(v, team, v.teams[id]);
+	    }
+	}
+    }
+
+    private void style(View v, GameTeam team, Team bTeam) {
+	// the settings of the context, then those of the view
+	boolean friendlyFire = context.hasFriendlyFire();
+	if (bTeam.allowFriendlyFire() != friendlyFire) {
+	    bTeam.setAllowFriendlyFire(friendlyFire);
+	}
+	boolean seeInvisibles = context.canSeeFriendlyInvisibles();
+	if (bTeam.canSeeFriendlyInvisibles() != seeInvisibles) {
+	    bTeam.setCanSeeFriendlyInvisibles(seeInvisibles);
+	}
+	NameTagVisibility nametag = context.getNameTagVisibility();
+	if (bTeam.getNameTagVisibility() != nametag) {
+	    bTeam.setNameTagVisibility(nametag);
+	}
+	String displayName = team.getDisplayName();
+	if (!displayName.equals(bTeam.getDisplayName())) {
+	    bTeam.setDisplayName(displayName);
+	}
+	view.style(v.key, team, bTeam);
+    }
+
+    private static class View {
+
+	final Scoreboard board;
+	Object key;
+	Team[] teams = new Team[16];
+	int viewers;
+
+	View(Scoreboard board) {
+	    this.board = board;
+	}
+    }
+}
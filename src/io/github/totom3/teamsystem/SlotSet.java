@@ -0,0 +1,105 @@
+package io.github.totom3.teamsystem;
+
+import java.util.Arrays;
+
+/**
+ * A set of roster slots backed by primitive arrays. Members are stored densely
+ * so that iteration is linear in the number of members, while a reverse index
+ * gives constant time {@code add}, {@code remove} and {@code contains}.
+ * @author Totom3
+ */
+final class SlotSet {
+
+    private int[] members;
+    private int[] positions;
+    private int size;
+    private int modCount;
+
+    SlotSet() {
+	this.members = new int[8];
+	this.positions = new int[16];
+	Arrays.fill(positions, -1);
+    }
+
+    int size() {
+	return size;
+    }
+
+    boolean isEmpty() {
+	return size == 0;
+    }
+
+    /**
+     * Returns a counter incremented on every change of this set, so that
+     * values derived from the members can be cached.
+     * @return the modification count of this set.
+     */
+    int modCount() {
+	return modCount;
+    }
+
+    /**
+     * Returns the member at the specified index. Indexes are dense (from 0
+     * inclusive to {@link #size()} exclusive), but are not stable across
+     * removals.
+     * @param index the index of the member.
+     * @return the slot stored at that index.
+     */
+    int get(int index) {
+	return members[index];
+    }
+
+    boolean contains(int slot) {
+	return slot >= 0 && slot < positions.length && positions[slot] >= 0;
+    }
+
+    boolean add(int slot) {
+	if (slot >= positions.length) {
+	    int oldLength = positions.length;
+	    positions = Arrays.copyOf(positions, Math.max(oldLength * 2, slot + 1));
+	    Arrays.fill(positions, oldLength, positions.length, -1);
+	} else if (positions[slot] >= 0) {
+	    return false;
+	}
+
+	if (size == members.length) {
+	    members = Arrays.copyOf(members, size * 2);
+	}
+	members[size] = slot;
+	positions[slot] = size;
+	++size;
+	++modCount;
+	return true;
+    }
+
+    boolean remove(int slot) {
+	if (!contains(slot)) {
+	    return false;
+	}
+
+	int index = positions[slot];
+	int last = members[--size];
+	members[index] = last;
+	positions[last] = index;
+	positions[slot] = -1;
+	++modCount;
+	return true;
+    }
+
+    void clear() {
+	for (int i = 0; i < size; ++i) {
+	    positions[members[i]] = -1;
+	}
+	size = 0;
+	++modCount;
+    }
+
+    /**
+     * Returns a copy of the members of this set.
+     * @return a newly allocated array containing every member.
+     */
+    int[] toArray() {
+	return Arrays.copyOf(members, size);
+    }
+
+}
@@ -0,0 +1,42 @@
+package io.github.totom3.teamsystem;
+
+import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.Team;
+
+/**
+ * Renders the teams of a context to its players. The default backend uses the
+ * Bukkit teams of the scoreboard of the context; {@link VirtualScoreboard}
+ * keeps the teams in memory, and sends them to the players as packets.
+ * @author Totom3
+ * @see GameContext#setTeamBackend(TeamBackend)
+ */
+public interface TeamBackend {
+
+    /**
+     * Returns the team of a name, creating it if it doesn't exist.
+     * @param name the name of the team, at most 16 characters long.
+     * @return the team of that name.
+     */
+    Team getTeam(String name);
+
+    /**
+     * Makes a player see the teams of this backend. Called when the player
+     * joins a team of the context, or reconnects.
+     * @param player the player.
+     * @return {@code true} if a Bukkit call was made.
+     */
+    boolean show(Player player);
+
+    /**
+     * Stops showing the teams of this backend to a player. Called when the
+     * player leaves its last team of the context.
+     * @param player the player.
+     */
+    void hide(Player player);
+
+    /**
+     * Sends the pending changes to the players. Called at the end of every
+     * tick, after the settings of the teams were flushed.
+     */
+    void flush();
+}
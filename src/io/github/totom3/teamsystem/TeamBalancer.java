@@ -0,0 +1,546 @@
+package io.github.totom3.teamsystem;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+
+/**
+ * Distributes the players of a {@code GameContext} over its teams. Every team
+ * has a load: the sum of the weights of its players. By default every player
+ * weighs {@code 1}, so that the load of a team is its size, but any weight
+ * (such as the skill of the players) can be used instead.
+ * <p>
+ * The balanced teams are kept in a heap ordered by load, which is updated on
+ * every change of membership, so that the lightest team is always known and
+ * {@link #assign(Player)} runs in {@code O(log k)} for {@code k} teams.
+ * {@link #rebalance()} and {@link #shuffle(Collection, Random)} compute all
+ * their moves first, and apply them in a single batch moving as few players
+ * as possible.
+ * <p>
+ * Main thread only.
+ * @author Totom3
+ * @see GameContext#getBalancer()
+ */
+public class TeamBalancer {
+
+    private final GameContext context;
+    private ToDoubleFunction<? super Player> weigher;
+
+    // Per-slot weight, as of the time the player joined its team
+    private double[] slotWeights;
+
+    // Per-team data, indexed by team id, grown with the team table of the
+    // context
+    private double[] loads;
+    private boolean[] excluded;
+    private int[] heapPositions;
+
+    // Min-heap of the ids of the balanced teams, ordered by load
+    private int[] heap;
+    private int heapSize;
+
+    TeamBalancer(GameContext context, int teamCount) {
+	this.context = context;
+	this.slotWeights = new double[16];
+	this.loads = new double[teamCount];
+	this.excluded = new boolean[teamCount];
+	this.heapPositions = new int[teamCount];
+	this.heap = new int[teamCount];
+	Arrays.fill(heapPositions, -1);
+    }
+
+    /**
+     * Returns the function weighing players, or {@code null} if every player
+     * weighs {@code 1}.
+     * @return the weigher of this balancer.
+     */
+    public ToDoubleFunction<? super Player> getWeigher() {
+	return weigher;
+    }
+
+    /**
+     * Sets the function weighing players, and recomputes the load of every
+     * team. The weight of a player is computed when it joins a team, and is
+     * kept until it leaves it. Negative, infinite and {@code NaN} weights
+     * count as {@code 0}.
+     * @param weigher the function weighing players, or {@code null} to weigh
+     *                every player {@code 1}.
+     */
+    public void setWeigher(ToDoubleFunction<? super Player> weigher) {
+	this.weigher = weigher;
+
+	Arrays.fill(loads, 0);
+	PlayerRoster roster = context.getRoster();
+	for (int slot = 0, bound = roster.slotBound(); slot < bound; ++slot) {
+	    if (roster.isLive(slot)) {
+		double weight = weigh(roster.getPlayer(slot));
+		ensureSlotCapacity(slot);
+		slotWeights[slot] = weight;
+		loads[roster.getTeam(slot)] += weight;
+	    }
+	}
+	heapify();
+    }
+
+    /**
+     * Sets whether or not a team takes part in the balancing. Teams take part
+     * in it by default.
+     * @param color    the color of the team.
+     * @param balanced {@code false} to exclude the team from the balancing.
+     */
+    public void setBalanced(ChatColor color, boolean balanced) {
+	setBalanced(GameUtils.checkColor(color).ordinal(), balanced);
+    }
+
+    /**
+     * Sets whether or not a team takes part in the balancing, by id.
+     * @param id       the id of the team.
+     * @param balanced {@code false} to exclude the team from the balancing.
+     * @throws IllegalArgumentException if {@code id} is out of range.
+     * @see #setBalanced(ChatColor, boolean)
+     */
+    public void setBalanced(int id, boolean balanced) {
+	GameContext.checkTeamId(id);
+	if (id >= excluded.length) {
+	    if (balanced) {
+		return;
+	    }
+	    ensureTeamCapacity(id + 1);
+	}
+	excluded[id] = !balanced;
+	if (!balanced) {
+	    heapRemove(id);
+	} else if (context.getTeam(id) != null) {
+	    heapAdd(id);
+	}
+    }
+
+    public boolean isBalanced(ChatColor color) {
+	return isBalanced(GameUtils.checkColor(color).ordinal());
+    }
+
+    public boolean isBalanced(int id) {
+	GameContext.checkTeamId(id);
+	return id >= excluded.length || !excluded[id];
+    }
+
+    /**
+     * Returns the load of a team: the sum of the weights of its players.
+     * @param color the color of the team.
+     * @return the load of that team, or {@code 0} if there is no such team.
+     */
+    public double getLoad(ChatColor color) {
+	return getLoad(GameUtils.checkColor(color).ordinal());
+    }
+
+    /**
+     * Returns the load of a team, by id.
+     * @param id the id of the team.
+     * @return the load of that team, or {@code 0} if there is no such team.
+     */
+    public double getLoad(int id) {
+	return (id >= 0 && id < loads.length) ? loads[id] : 0;
+    }
+
+    /**
+     * Returns the balanced team with the lowest load. Ties are broken by id,
+     * so that the result is deterministic.
+     * @return the lightest balanced team, or {@code null} if there is none.
+     */
+    public GameTeam getLightestTeam() {
+	return (heapSize == 0) ? null : context.getTeam(heap[0]);
+    }
+
+    /**
+     * Puts a player in the lightest balanced team, in {@code O(log k)}. A
+     * player who already is in a balanced team is left in it.
+     * @param player the player to assign. Must not be {@code null}.
+     * @return the team of the player.
+     * @throws NullPointerException  if {@code player} is {@code null}.
+     * @throws IllegalStateException if there is no balanced team, or if the
+     *                               lightest team is draining.
+     */
+    public GameTeam assign(Player player) {
+	GameTeam current = context.getTeamOf(GameUtils.checkPlayer(player));
+	if (current != null && heapPositions[current.getId()] >= 0) {
+	    return current;
+	}
+
+	GameTeam team = getLightestTeam();
+	if (team == null) {
+	    throw new IllegalStateException("No balanced team");
+	}
+	team.addPlayer(player);
+	return team;
+    }
+
+    /**
+     * Moves players between the balanced teams until moving any other player
+     * from the heaviest team to the lightest one would not make them closer.
+     * With the default weights, this stops as soon as the sizes of the teams
+     * differ by at most one, and moves the minimal number of players. The
+     * moves are applied in one batch, as if by
+     * {@link GameContext#assignTeams(Map)}.
+     * @return the number of players moved.
+     * @throws IllegalStateException if a team that must receive players is
+     *                               draining. No player is moved in that case.
+     */
+    public int rebalance() {
+	int k = heapSize;
+	if (k < 2) {
+	    return 0;
+	}
+
+	// Work on a copy of the loads and of the members of the teams
+	int[] teams = Arrays.copyOf(heap, k);
+	double[] teamLoads = new double[k];
+	List<List<Integer>> members = new ArrayList<>(k);
+	for (int i = 0; i < k; ++i) {
+	    teamLoads[i] = loads[teams[i]];
+	    SlotSet set = context.getTeam(teams[i]).getMembers();
+	    List<Integer> slots = new ArrayList<>(set.size());
+	    for (int j = 0, size = set.size(); j < size; ++j) {
+		slots.add(set.get(j));
+	    }
+	    members.add(slots);
+	}
+
+	PlayerRoster roster = context.getRoster();
+	Map<Player, GameTeam> moves = new LinkedHashMap<>();
+	for (;;) {
+	    int heaviest = 0;
+	    int lightest = 0;
+	    for (int i = 1; i < k; ++i) {
+		if (teamLoads[i] > teamLoads[heaviest]) {
+		    heaviest = i;
+		}
+		if (teamLoads[i] < teamLoads[lightest]) {
+		    lightest = i;
+		}
+	    }
+
+	    // Move the player whose weight is the closest to half the
+	    // difference; only weights below the difference bring the two
+	    // teams closer.
+	    double difference = teamLoads[heaviest] - teamLoads[lightest];
+	    List<Integer> candidates = members.get(heaviest);
+	    int best = -1;
+	    double bestGap = Double.MAX_VALUE;
+	    for (int i = candidates.size() - 1; i >= 0; --i) {
+		double weight = slotWeights[candidates.get(i)];
+		if (weight > 0 && weight < difference) {
+		    double gap = Math.abs(difference - 2 * weight);
+		    if (gap < bestGap) {
+			best = i;
+			bestGap = gap;
+		    }
+		}
+	    }
+	    if (best < 0) {
+		break;
+	    }
+
+	    int slot = candidates.get(best);
+	    candidates.set(best, candidates.get(candidates.size() - 1));
+	    candidates.remove(candidates.size() - 1);
+	    members.get(lightest).add(slot);
+	    teamLoads[heaviest] -= slotWeights[slot];
+	    teamLoads[lightest] += slotWeights[slot];
+	    moves.put(roster.getPlayer(slot), context.getTeam(teams[lightest]));
+	}
+
+	// a player moved twice may be back in its team; assignTeams skips it
+	return context.assignTeams(moves);
+    }
+
+    /**
+     * Shuffles every player of the balanced teams.
+     * @param random the source of randomness. Must not be {@code null}.
+     * @return the number of players moved.
+     * @see #shuffle(Collection, Random)
+     */
+    public int shuffle(Random random) {
+	List<Player> players = new ArrayList<>();
+	for (int i = 0; i < heapSize; ++i) {
+	    players.addAll(context.getTeam(heap[i]).getPlayers());
+	}
+	return shuffle(players, random);
+    }
+
+    /**
+     * Distributes players over the balanced teams at random, so that the
+     * loads they bring to the teams are as even as possible. The players
+     * don't need to be in a team; players of the balanced teams which are not
+     * in {@code players} stay in their team, and are not accounted for.
+     * <p>
+     * The random groups of players are then matched to the teams so that as
+     * many players as possible are already in the team of their group, and
+     * only the other players are moved, in one batch, as if by
+     * {@link GameContext#assignTeams(Map)}.
+     * @param players the players to distribute. Must not be {@code null} and
+     *                must not contain {@code null} elements or duplicates.
+     * @param random  the source of randomness. Must not be {@code null}.
+     * @return the number of players moved.
+     * @throws NullPointerException  if an argument is {@code null}, or if
+     *                               {@code players} contains {@code null}
+     *                               elements.
+     * @throws IllegalStateException if there is no balanced team, or if a
+     *                               team that must receive players is
+     *                               draining. No player is moved in that
+     *                               case.
+     */
+    public int shuffle(Collection<? extends Player> players, Random random) {
+	checkNotNull(players, "Players cannot be null");
+	checkNotNull(random, "Random cannot be null");
+	int k = heapSize;
+	if (k == 0) {
+	    throw new IllegalStateException("No balanced team");
+	}
+
+	// 1. Deal the players into k random groups, heaviest players first,
+	// each to the lightest group (ties between equal weights are random)
+	final List<Player> shuffled = new ArrayList<>(players);
+	Collections.shuffle(shuffled, random);
+	final double[] weights = new double[shuffled.size()];
+	Integer[] order = new Integer[shuffled.size()];
+	for (int i = 0; i < order.length; ++i) {
+	    weights[i] = weigh(GameUtils.checkPlayer(shuffled.get(i)));
+	    order[i] = i;
+	}
+	Arrays.sort(order, new Comparator<Integer>() {
+	    @Override
+	    public int compare(Integer a, Integer b) {
+		return Double.compare(weights[b], weights[a]);
+	    }
+	});
+
+	int[] groups = new int[order.length];
+	double[] groupLoads = new double[k];
+	for (int i : order) {
+	    int lightest = 0;
+	    for (int g = 1; g < k; ++g) {
+		if (groupLoads[g] < groupLoads[lightest]) {
+		    lightest = g;
+		}
+	    }
+	    groups[i] = lightest;
+	    groupLoads[lightest] += weights[i];
+	}
+
+	// 2. Match groups to teams, greedily by number of players already in
+	// the team. Only the (group, team) pairs sharing players are counted,
+	// so that this stays linear in the number of players for many teams.
+	int[] teams = Arrays.copyOf(heap, k);
+	Map<Long, int[]> overlaps = new HashMap<>();
+	for (int i = 0; i < groups.length; ++i) {
+	    GameTeam current = context.getTeamOf(shuffled.get(i));
+	    if (current != null && heapPositions[current.getId()] >= 0) {
+		// teams[] is a copy of the heap: positions are indexes in it
+		long pair = (long) groups[i] * k + heapPositions[current.getId()];
+		int[] count = overlaps.get(pair);
+		if (count == null) {
+		    overlaps.put(pair, new int[]{1});
+		} else {
+		    ++count[0];
+		}
+	    }
+	}
+
+	final List<Map.Entry<Long, int[]>> pairs = new ArrayList<>(overlaps.entrySet());
+	Collections.sort(pairs, new Comparator<Map.Entry<Long, int[]>>() {
+	    @Override
+	    public int compare(Map.Entry<Long, int[]> a, Map.Entry<Long, int[]> b) {
+		int c = Integer.compare(b.getValue()[0], a.getValue()[0]);
+		return (c != 0) ? c : Long.compare(a.getKey(), b.getKey());
+	    }
+	});
+
+	int[] teamOfGroup = new int[k];
+	boolean[] groupDone = new boolean[k];
+	boolean[] teamDone = new boolean[k];
+	for (Map.Entry<Long, int[]> entry : pairs) {
+	    int g = (int) (entry.getKey() / k);
+	    int t = (int) (entry.getKey() % k);
+	    if (!groupDone[g] && !teamDone[t]) {
+		groupDone[g] = true;
+		teamDone[t] = true;
+		teamOfGroup[g] = teams[t];
+	    }
+	}
+	// groups sharing no player with a free team take the remaining teams
+	for (int g = 0, t = 0; g < k; ++g) {
+	    if (!groupDone[g]) {
+		while (teamDone[t]) {
+		    ++t;
+		}
+		teamDone[t] = true;
+		teamOfGroup[g] = teams[t];
+	    }
+	}
+
+	// 3. Move the players that aren't in the team of their group
+	Map<Player, GameTeam> moves = new LinkedHashMap<>();
+	for (int i = 0; i < groups.length; ++i) {
+	    moves.put(shuffled.get(i), context.getTeam(teamOfGroup[groups[i]]));
+	}
+	return context.assignTeams(moves);
+    }
+
+    // -----------------------=[ Internal ]=-----------------------
+    // Called by the GameContext on every change of membership or of teams.
+    void onJoin(int slot, Player player, int team) {
+	double weight = weigh(player);
+	ensureSlotCapacity(slot);
+	slotWeights[slot] = weight;
+	addLoad(team, weight);
+    }
+
+    void onLeave(int slot, int team) {
+	addLoad(team, -slotWeights[slot]);
+    }
+
+    void onMove(int slot, int from, int to) {
+	double weight = slotWeights[slot];
+	addLoad(from, -weight);
+	addLoad(to, weight);
+    }
+
+    void onReset() {
+	Arrays.fill(loads, 0);
+	heapify();
+    }
+
+    void onTeamAdded(int team) {
+	if (!excluded[team]) {
+	    heapAdd(team);
+	}
+    }
+
+    void onTeamRemoved(int team) {
+	heapRemove(team);
+	loads[team] = 0;
+    }
+
+    private double weigh(Player player) {
+	if (weigher == null) {
+	    return 1;
+	}
+	double weight = weigher.applyAsDouble(player);
+	return (weight >= 0 && weight != Double.POSITIVE_INFINITY) ? weight : 0;
+    }
+
+    void ensureTeamCapacity(int capacity) {
+	int oldLength = loads.length;
+	if (capacity <= oldLength) {
+	    return;
+	}
+	loads = Arrays.copyOf(loads, capacity);
+	excluded = Arrays.copyOf(excluded, capacity);
+	heap = Arrays.copyOf(heap, capacity);
+	heapPositions = Arrays.copyOf(heapPositions, capacity);
+	Arrays.fill(heapPositions, oldLength, capacity, -1);
+    }
+
+    private void ensureSlotCapacity(int slot) {
+	if (slot >= slotWeights.length) {
+	    slotWeights = Arrays.copyOf(slotWeights, Math.max(slotWeights.length * 2, slot + 1));
+	}
+    }
+
+    private void addLoad(int team, double delta) {
+	loads[team] += delta;
+	int position = heapPositions[team];
+	if (position >= 0) {
+	    if (delta < 0) {
+		siftUp(position);
+	    } else {
+		siftDown(position);
+	    }
+	}
+    }
+
+    // -----------------------=[ Heap ]=-----------------------
+    private boolean lighter(int teamA, int teamB) {
+	return loads[teamA] < loads[teamB] || (loads[teamA] == loads[teamB] && teamA < teamB);
+    }
+
+    private void heapAdd(int team) {
+	if (heapPositions[team] >= 0) {
+	    return;
+	}
+	heap[heapSize] = team;
+	heapPositions[team] = heapSize;
+	siftUp(heapSize++);
+    }
+
+    private void heapRemove(int team) {
+	int position = heapPositions[team];
+	if (position < 0) {
+	    return;
+	}
+	heapPositions[team] = -1;
+	int last = heap[--heapSize];
+	if (position == heapSize) {
+	    return;
+	}
+	heap[position] = last;
+	heapPositions[last] = position;
+	siftUp(position);
+	siftDown(heapPositions[last]);
+    }
+
+    private void heapify() {
+	for (int i = heapSize / 2 - 1; i >= 0; --i) {
+	    siftDown(i);
+	}
+    }
+
+    private void siftUp(int position) {
+	int team = heap[position];
+	while (position > 0) {
+	    int parent = (position - 1) / 2;
+	    if (!lighter(team, heap[parent])) {
+		break;
+	    }
+	    place(heap[parent], position);
+	    position = parent;
+	}
+	place(team, position);
+    }
+
+    private void siftDown(int position) {
+	int team = heap[position];
+	for (;;) {
+	    int child = 2 * position + 1;
+	    if (child >= heapSize) {
+		break;
+	    }
+	    if (child + 1 < heapSize && lighter(heap[child + 1], heap[child])) {
+		++child;
+	    }
+	    if (!lighter(heap[child], team)) {
+		break;
+	    }
+	    place(heap[child], position);
+	    position = child;
+	}
+	place(team, position);
+    }
+
+    private void place(int team, int position) {
+	heap[position] = team;
+	heapPositions[team] = position;
+    }
+
+}
@@ -0,0 +1,146 @@
+package io.github.totom3.teamsystem;
+
+import java.util.UUID;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+
+/**
+ * A change of the membership of a {@code GameContext}, as published by its
+ * {@code TeamEventBus}. Events are immutable, and only hold the ids, names
+ * and colors involved, so that they can be handled on any thread.
+ * @author Totom3
+ * @see TeamEventBus
+ */
+public final class TeamChangeEvent {
+
+    public enum Type {
+
+	/**
+	 * A player joined a team. Sets the player and the team joined.
+	 */
+	JOIN,
+	/**
+	 * A player left its team. Sets the player and the team left.
+	 */
+	LEAVE,
+	/**
+	 * A player moved from a team to another. Sets the player and both
+	 * teams.
+	 */
+	MOVE,
+	/**
+	 * The context was reset: every player left its team. Sets no player
+	 * nor team.
+	 */
+	RESET
+    }
+
+    private final long time;
+    private final Type type;
+    private final UUID playerId;
+    private final String playerName;
+    private final int fromTeam;
+    private final int toTeam;
+    private final ChatColor fromColor;
+    private final ChatColor toColor;
+
+    private TeamChangeEvent(long time, Type type, UUID playerId, String playerName, int fromTeam, int toTeam, ChatColor fromColor, ChatColor toColor) {
+	this.time = time;
+	this.type = type;
+	this.playerId = playerId;
+	this.playerName = playerName;
+	this.fromTeam = fromTeam;
+	this.toTeam = toTeam;
+	this.fromColor = fromColor;
+	this.toColor = toColor;
+    }
+
+    static TeamChangeEvent of(Player player, GameTeam from, GameTeam to) {
+	Type type = (from == null) ? Type.JOIN : (to == null) ? Type.LEAVE : Type.MOVE;
+	return new TeamChangeEvent(System.currentTimeMillis(), type, player.getUniqueId(), player.getName(),
+		(from == null) ? -1 : from.getId(), (to == null) ? -1 : to.getId(),
+		(from == null) ? null : from.getColor(), (to == null) ? null : to.getColor());
+    }
+
+    static TeamChangeEvent reset() {
+	return new TeamChangeEvent(System.currentTimeMillis(), Type.RESET, null, null, -1, -1, null, null);
+    }
+
+    /**
+     * Returns the net change of a player made of this event followed by
+     * another event of the same player.
+     * @return the combined event, or {@code null} if the player ends up in the
+     *         team it started in.
+     */
+    TeamChangeEvent then(TeamChangeEvent next) {
+	if (fromTeam == next.toTeam) {
+	    return null;
+	}
+	Type netType = (fromTeam < 0) ? Type.JOIN : (next.toTeam < 0) ? Type.LEAVE : Type.MOVE;
+	return new TeamChangeEvent(next.time, netType, playerId, next.playerName, fromTeam, next.toTeam, fromColor, next.toColor);
+    }
+
+    /**
+     * Returns the time of the event.
+     * @return the time of the event, in milliseconds since the epoch.
+     */
+    public long getTime() {
+	return time;
+    }
+
+    public Type getType() {
+	return type;
+    }
+
+    /**
+     * Returns the UUID of the player whose team changed.
+     * @return the UUID of the player, or {@code null} for {@code RESET}
+     *         events.
+     */
+    public UUID getPlayerId() {
+	return playerId;
+    }
+
+    public String getPlayerName() {
+	return playerName;
+    }
+
+    /**
+     * Returns the id of the team the player left.
+     * @return the id of the team, or {@code -1}.
+     */
+    public int getFromTeam() {
+	return fromTeam;
+    }
+
+    /**
+     * Returns the id of the team the player joined.
+     * @return the id of the team, or {@code -1}.
+     */
+    public int getToTeam() {
+	return toTeam;
+    }
+
+    public ChatColor getFromColor() {
+	return fromColor;
+    }
+
+    public ChatColor getToColor() {
+	return toColor;
+    }
+
+    @Override
+    public String toString() {
+	StringBuilder builder = new StringBuilder("TeamChangeEvent{time=").append(time).append(", type=").append(type);
+	if (playerId != null) {
+	    builder.append(", player=").append(playerName);
+	}
+	if (fromTeam >= 0) {
+	    builder.append(", from=").append(fromTeam);
+	}
+	if (toTeam >= 0) {
+	    builder.append(", to=").append(toTeam);
+	}
+	return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.totom3.teamsystem;
+
+/**
+ * A synchronous hook of a {@code TeamEventBus}, called on the main thread
+ * before each change of membership is applied. Hooks run inside the team
+ * operations, and must be cheap: slow work belongs in a
+ * {@code TeamChangeSubscriber}.
+ * @author Totom3
+ * @see TeamEventBus#addHook(TeamChangeHook)
+ */
+public interface TeamChangeHook {
+
+    /**
+     * Called before a change is applied, while the context still holds the
+     * previous membership. Throwing an exception vetoes the change: it isn't
+     * applied, nor is the rest of its batch, and the exception is thrown to
+     * the caller of the operation. Removals caused by removing or replacing a
+     * team at once, or by closing the context, can't be vetoed; exceptions
+     * thrown for them are logged and ignored.
+     * <p>
+     * A hook may see a change that is never applied. The hooks added after it
+     * may veto the change. In a batch, any hook may veto a later change, since
+     * the hooks are called for every change of the batch before any is
+     * applied. Hooks should therefore only check changes. Work that must only
+     * happen for applied changes belongs in a {@code TeamChangeSubscriber}.
+     * @param event the change about to be applied.
+     */
+    void beforeChange(TeamChangeEvent event);
+}
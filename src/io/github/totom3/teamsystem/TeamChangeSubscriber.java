@@ -0,0 +1,22 @@
+package io.github.totom3.teamsystem;
+
+import java.util.List;
+
+/**
+ * An asynchronous subscriber of a {@code TeamEventBus}. Each subscriber has
+ * its own thread, and receives the changes of membership in batches, in the
+ * order they were applied.
+ * @author Totom3
+ * @see TeamEventBus#subscribe(TeamChangeSubscriber, TeamEventBus.Backpressure)
+ */
+public interface TeamChangeSubscriber {
+
+    /**
+     * Handles a batch of changes. Called on the thread of the subscription,
+     * never concurrently. Exceptions are logged, and don't cancel the
+     * subscription.
+     * @param events the changes, in order. Never empty; the list is
+     *               unmodifiable, but may be kept.
+     */
+    void onEvents(List<TeamChangeEvent> events);
+}
@@ -0,0 +1,550 @@
+package io.github.totom3.teamsystem;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bukkit.entity.Player;
+
+/**
+ * Publishes the changes of membership of a {@code GameContext}, as
+ * {@code TeamChangeEvent}s. Changes made by single operations are published
+ * as {@code JOIN}, {@code LEAVE} or {@code MOVE} events, and a reset as a
+ * single {@code RESET} event.
+ * <p>
+ * Hooks are called synchronously before each change is applied, and may veto
+ * it. Subscribers are called asynchronously once changes are applied: every
+ * subscription has a bounded ring buffer, filled by the main thread without
+ * locking, and a thread delivering the buffered events in batches. What
+ * happens when the buffer of a subscription is full depends on its
+ * {@link Backpressure} policy. Buffered events are handed over at the end of
+ * every tick, which is when idle delivery threads are woken: they don't poll.
+ * <p>
+ * Nothing is allocated for changes while the bus has neither hook nor
+ * subscription. Main thread only, except for the statistics of
+ * subscriptions.
+ * @author Totom3
+ * @see GameContext#getEventBus()
+ */
+public final class TeamEventBus {
+
+    /**
+     * What a subscription does with events published while its buffer is
+     * full.
+     */
+    public enum Backpressure {
+
+	/**
+	 * Events are dropped, and counted as such.
+	 */
+	DROP,
+	/**
+	 * Events are merged per player until the subscriber catches up: the
+	 * subscriber then receives the net change of each player, rather than
+	 * every intermediate change. Changes that cancel out are not delivered
+	 * at all.
+	 */
+	COALESCE,
+	/**
+	 * The main thread waits for the subscriber, which stalls the tick. Only
+	 * meant for subscribers that must see every event and are fast on
+	 * average.
+	 */
+	BLOCK
+    }
+
+    static final int DEFAULT_CAPACITY = 1024;
+    static final int DEFAULT_BATCH = 256;
+
+    private static final Logger LOGGER = Logger.getLogger(TeamEventBus.class.getName());
+    private static final long STALL_NANOS = 100_000;
+
+    private static final TeamChangeHook[] NO_HOOKS = new TeamChangeHook[0];
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+    private TeamChangeHook[] hooks = NO_HOOKS;
+    private Subscription[] subscriptions = NO_SUBSCRIPTIONS;
+    private boolean closed;
+
+    /**
+     * Adds a hook, called before each change from now on. Hooks are called in
+     * the order they were added, so a hook may see a change that a later hook
+     * vetoes.
+     * @param hook the hook to add. Must not be {@code null}.
+     * @throws NullPointerException if {@code hook} is {@code null}.
+     */
+    public void addHook(TeamChangeHook hook) {
+	checkNotNull(hook, "TeamChangeHook cannot be null");
+	hooks = Arrays.copyOf(hooks, hooks.length + 1);
+	hooks[hooks.length - 1] = hook;
+    }
+
+    /**
+     * Removes a hook.
+     * @param hook the hook to remove.
+     * @return {@code true} if the hook was removed.
+     */
+    public boolean removeHook(TeamChangeHook hook) {
+	List<TeamChangeHook> list = new ArrayList<>(Arrays.asList(hooks));
+	if (!list.remove(hook)) {
+	    return false;
+	}
+	hooks = list.isEmpty() ? NO_HOOKS : list.toArray(new TeamChangeHook[list.size()]);
+	return true;
+    }
+
+    /**
+     * Subscribes to the changes applied from now on, with a buffer of 1024
+     * events and batches of at most 256 events.
+     * @param subscriber the subscriber. Must not be {@code null}.
+     * @param policy     what to do when the buffer is full. Must not be
+     *                   {@code null}.
+     * @return the new subscription, to close once the subscriber is done.
+     * @throws IllegalStateException if the context of this bus is closed.
+     */
+    public Subscription subscribe(TeamChangeSubscriber subscriber, Backpressure policy) {
+	return subscribe(subscriber, policy, DEFAULT_CAPACITY, DEFAULT_BATCH);
+    }
+
+    /**
+     * Subscribes to the changes applied from now on. The subscriber gets its
+     * own thread, started immediately.
+     * @param subscriber the subscriber. Must not be {@code null}.
+     * @param policy     what to do when the buffer is full. Must not be
+     *                   {@code null}.
+     * @param capacity   the number of events the buffer holds. Rounded up to
+     *                   a power of two.
+     * @param maxBatch   the maximum number of events per batch. Must be
+     *                   positive.
+     * @return the new subscription, to close once the subscriber is done.
+     * @throws IllegalArgumentException if {@code capacity} or
+     *                                  {@code maxBatch} isn't positive.
+     * @throws IllegalStateException    if the context of this bus is closed.
+     */
+    public Subscription subscribe(TeamChangeSubscriber subscriber, Backpressure policy, int capacity, int maxBatch) {
+	checkNotNull(subscriber, "TeamChangeSubscriber cannot be null");
+	checkNotNull(policy, "Backpressure cannot be null");
+	checkArgument(capacity > 0, "Capacity must be positive");
+	checkArgument(maxBatch > 0, "Batch size must be positive");
+	if (closed) {
+	    throw new IllegalStateException("GameContext is closed");
+	}
+
+	Subscription subscription = new Subscription(this, subscriber, policy, capacity, maxBatch);
+	subscriptions = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+	subscriptions[subscriptions.length - 1] = subscription;
+	subscription.thread.start();
+	return subscription;
+    }
+
+    public int getSubscriptionCount() {
+	return subscriptions.length;
+    }
+
+    // -----------------------=[ Internal ]=-----------------------
+    /**
+     * Returns the event of a change about to be applied, after calling the
+     * hooks, which may veto the change by throwing an exception.
+     * @param player the player whose team changes.
+     * @param from   the current team of the player, or {@code null}.
+     * @param to     the new team of the player, or {@code null}.
+     * @return the event to publish once the change is applied, or
+     *         {@code null} if this bus has neither hook nor subscription.
+     */
+    TeamChangeEvent before(Player player, GameTeam from, GameTeam to) {
+	if (hooks.length == 0 && subscriptions.length == 0) {
+	    return null;
+	}
+	TeamChangeEvent event = TeamChangeEvent.of(player, from, to);
+	for (TeamChangeHook hook : hooks) {
+	    hook.beforeChange(event);
+	}
+	return event;
+    }
+
+    /**
+     * Same as {@link #before(Player, GameTeam, GameTeam)}, for changes which
+     * can't be vetoed: exceptions thrown by the hooks are logged.
+     */
+    TeamChangeEvent beforeForced(Player player, GameTeam from, GameTeam to) {
+	if (hooks.length == 0 && subscriptions.length == 0) {
+	    return null;
+	}
+	TeamChangeEvent event = TeamChangeEvent.of(player, from, to);
+	for (TeamChangeHook hook : hooks) {
+	    try {
+		hook.beforeChange(event);
+	    } catch (RuntimeException ex) {
+		LOGGER.log(Level.WARNING, "TeamChangeHook failed on a forced change", ex);
+	    }
+	}
+	return event;
+    }
+
+    /**
+     * Returns the events of a batch of changes about to be applied, after
+     * calling the hooks for each of them. Nothing is applied until every change
+     * passed the hooks, but a veto stops the batch after the hooks already saw
+     * the changes before the vetoed one.
+     * @return the events, or {@code null} if this bus has neither hook nor
+     *         subscription.
+     */
+    TeamChangeEvent[] before(Player[] players, GameTeam[] from, GameTeam[] to, int count) {
+	if (hooks.length == 0 && subscriptions.length == 0) {
+	    return null;
+	}
+	TeamChangeEvent[] events = new TeamChangeEvent[count];
+	for (int i = 0; i < count; ++i) {
+	    events[i] = before(players[i], from[i], to[i]);
+	}
+	return events;
+    }
+
+    TeamChangeEvent beforeReset() {
+	if (hooks.length == 0 && subscriptions.length == 0) {
+	    return null;
+	}
+	TeamChangeEvent event = TeamChangeEvent.reset();
+	for (TeamChangeHook hook : hooks) {
+	    hook.beforeChange(event);
+	}
+	return event;
+    }
+
+    /**
+     * Hands an applied change over to the subscriptions.
+     * @param event the event returned by {@code before}, or {@code null}.
+     */
+    void publish(TeamChangeEvent event) {
+	if (event == null) {
+	    return;
+	}
+	for (Subscription subscription : subscriptions) {
+	    subscription.offer(event);
+	}
+    }
+
+    void publish(TeamChangeEvent[] events) {
+	if (events == null) {
+	    return;
+	}
+	for (Subscription subscription : subscriptions) {
+	    for (TeamChangeEvent event : events) {
+		subscription.offer(event);
+	    }
+	}
+    }
+
+    /**
+     * Only called by {@link GameContext#tick()}. Moves the coalesced events
+     * to the buffers, and wakes the subscriptions that have events to
+     * deliver.
+     */
+    void flush() {
+	for (Subscription subscription : subscriptions) {
+	    subscription.flush();
+	}
+    }
+
+    /**
+     * Only called by {@link GameContext#close()}. Closes every subscription,
+     * once it delivered its buffered events.
+     */
+    void close() {
+	closed = true;
+	for (Subscription subscription : subscriptions) {
+	    subscription.close();
+	}
+    }
+
+    private void remove(Subscription subscription) {
+	List<Subscription> list = new ArrayList<>(Arrays.asList(subscriptions));
+	if (list.remove(subscription)) {
+	    subscriptions = list.isEmpty() ? NO_SUBSCRIPTIONS : list.toArray(new Subscription[list.size()]);
+	}
+    }
+
+    /**
+     * A subscription of a {@code TeamChangeSubscriber} to a
+     * {@code TeamEventBus}. The statistics of a subscription may be read from
+     * any thread.
+     */
+    public static final class Subscription implements AutoCloseable {
+
+	private final TeamEventBus bus;
+	private final TeamChangeSubscriber subscriber;
+	private final Backpressure policy;
+	private final int maxBatch;
+
+	// Single producer (main thread), single consumer (delivery thread) ring
+	private final TeamChangeEvent[] ring;
+	private final int mask;
+	private volatile long head;
+	private volatile long tail;
+
+	private final Thread thread;
+	private volatile boolean closed;
+
+	// Main thread state: events merged per player while the ring is full,
+	// preceded by a reset if one was merged
+	private final Map<UUID, TeamChangeEvent> coalescing = new LinkedHashMap<>();
+	private TeamChangeEvent coalescedReset;
+	private volatile long dropped;
+	private volatile long coalesced;
+	private volatile long stalls;
+
+	// Delivery thread state
+	private volatile long delivered;
+	private volatile long failures;
+
+	Subscription(TeamEventBus bus, TeamChangeSubscriber subscriber, Backpressure policy, int capacity, int maxBatch) {
+	    this.bus = bus;
+	    this.subscriber = subscriber;
+	    this.policy = policy;
+	    this.maxBatch = maxBatch;
+
+	    int size = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+	    this.ring = new TeamChangeEvent[size];
+	    this.mask = size - 1;
+
+	    this.thread = new Thread(this::deliverLoop, "TeamEventBus subscriber (" + subscriber.getClass().getName() + ")");
+	    thread.setDaemon(true);
+	}
+
+	public Backpressure getPolicy() {
+	    return policy;
+	}
+
+	public int getCapacity() {
+	    return ring.length;
+	}
+
+	/**
+	 * Returns the number of events buffered and not delivered yet, not
+	 * counting coalesced events.
+	 * @return the number of pending events.
+	 */
+	public int getPendingCount() {
+	    return (int) (tail - head);
+	}
+
+	public long getDeliveredCount() {
+	    return delivered;
+	}
+
+	/**
+	 * Returns the number of events dropped because the buffer was full,
+	 * with the {@code DROP} policy, or because the subscription was closed
+	 * while the main thread waited, with the {@code BLOCK} policy.
+	 * @return the number of dropped events.
+	 */
+	public long getDroppedCount() {
+	    return dropped;
+	}
+
+	/**
+	 * Returns the number of events merged into another event, with the
+	 * {@code COALESCE} policy.
+	 * @return the number of coalesced events.
+	 */
+	public long getCoalescedCount() {
+	    return coalesced;
+	}
+
+	/**
+	 * Returns the number of times the main thread waited for the
+	 * subscriber, with the {@code BLOCK} policy.
+	 * @return the number of stalls.
+	 */
+	public long getStallCount() {
+	    return stalls;
+	}
+
+	/**
+	 * Returns the number of batches whose delivery threw an exception.
+	 * @return the number of failed batches.
+	 */
+	public long getFailureCount() {
+	    return failures;
+	}
+
+	public boolean isClosed() {
+	    return closed;
+	}
+
+	/**
+	 * Cancels this subscription. Events already buffered are still
+	 * delivered; coalesced events that weren't buffered yet are discarded.
+	 * Main thread only.
+	 */
+	@Override
+	public void close() {
+	    if (closed) {
+		return;
+	    }
+	    closed = true;
+	    coalescing.clear();
+	    coalescedReset = null;
+	    bus.remove(this);
+	    LockSupport.unpark(thread);
+	}
+
+	/**
+	 * Waits for the delivery thread of a closed subscription to deliver its
+	 * last events.
+	 * @param millis the maximum time to wait, in milliseconds.
+	 * @return {@code true} if the delivery thread has terminated.
+	 * @throws InterruptedException if the current thread is interrupted.
+	 */
+	public boolean awaitTermination(long millis) throws InterruptedException {
+	    thread.join(millis);
+	    return !thread.isAlive();
+	}
+
+	// -------------------------=[ Producer ]=-------------------------
+	void offer(TeamChangeEvent event) {
+	    if (closed) {
+		return;
+	    }
+	    if (!coalescing.isEmpty() || coalescedReset != null) {
+		// keep the order: coalesced events go out first
+		if (!drainCoalesced()) {
+		    coalesce(event);
+		    return;
+		}
+	    }
+	    if (tail - head < ring.length) {
+		put(event);
+		return;
+	    }
+
+	    switch (policy) {
+		case DROP:
+		    ++dropped;
+		    break;
+		case COALESCE:
+		    coalesce(event);
+		    break;
+		case BLOCK:
+		    ++stalls;
+		    LockSupport.unpark(thread);
+		    while (tail - head >= ring.length) {
+			if (closed || !thread.isAlive()) {
+			    ++dropped;
+			    return;
+			}
+			LockSupport.parkNanos(this, STALL_NANOS);
+		    }
+		    put(event);
+		    break;
+		default:
+		    throw new AssertionError(policy);
+	    }
+	}
+
+	void flush() {
+	    if (!coalescing.isEmpty() || coalescedReset != null) {
+		drainCoalesced();
+	    }
+	    if (head != tail) {
+		LockSupport.unpark(thread);
+	    }
+	}
+
+	private void put(TeamChangeEvent event) {
+	    long position = tail;
+	    ring[(int) (position & mask)] = event;
+	    tail = position + 1;
+	}
+
+	private void coalesce(TeamChangeEvent event) {
+	    if (event.getType() == TeamChangeEvent.Type.RESET) {
+		// a reset supersedes the changes before it
+		coalesced += coalescing.size();
+		coalescing.clear();
+		coalescedReset = event;
+		return;
+	    }
+
+	    UUID id = event.getPlayerId();
+	    TeamChangeEvent previous = coalescing.get(id);
+	    if (previous == null) {
+		coalescing.put(id, event);
+		return;
+	    }
+	    ++coalesced;
+	    TeamChangeEvent net = previous.then(event);
+	    if (net == null) {
+		coalescing.remove(id);
+	    } else {
+		coalescing.put(id, net);
+	    }
+	}
+
+	/**
+	 * Moves as many coalesced events as possible to the ring.
+	 * @return {@code true} if no coalesced event is left.
+	 */
+	private boolean drainCoalesced() {
+	    if (coalescedReset != null) {
+		if (tail - head >= ring.length) {
+		    return false;
+		}
+		put(coalescedReset);
+		coalescedReset = null;
+	    }
+	    Iterator<TeamChangeEvent> it = coalescing.values().iterator();
+	    while (it.hasNext()) {
+		if (tail - head >= ring.length) {
+		    return false;
+		}
+		put(it.next());
+		it.remove();
+	    }
+	    return true;
+	}
+
+	// -------------------------=[ Consumer ]=-------------------------
+	private void deliverLoop() {
+	    for (;;) {
+		long start = head;
+		long end = tail;
+		if (start == end) {
+		    if (closed) {
+			return;
+		    }
+		    // woken by flush() or close(); a wake-up arriving before the
+		    // park makes it return at once, and the loop re-checks
+		    LockSupport.park(this);
+		    continue;
+		}
+
+		long stop = Math.min(end, start + maxBatch);
+		List<TeamChangeEvent> batch = new ArrayList<>((int) (stop - start));
+		for (long position = start; position < stop; ++position) {
+		    int index = (int) (position & mask);
+		    batch.add(ring[index]);
+		    ring[index] = null;
+		}
+		head = stop;
+
+		try {
+		    subscriber.onEvents(Collections.unmodifiableList(batch));
+		} catch (RuntimeException ex) {
+		    ++failures;
+		    LOGGER.log(Level.WARNING, "TeamChangeSubscriber " + subscriber + " failed", ex);
+		}
+		delivered += batch.size();
+	    }
+	}
+    }
+}
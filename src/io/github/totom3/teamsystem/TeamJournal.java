@@ -0,0 +1,344 @@
+package io.github.totom3.teamsystem;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+import org.bukkit.ChatColor;
+import org.bukkit.scoreboard.NameTagVisibility;
+
+/**
+ * An append-only journal of the transitions and settings changes of a
+ * {@code GameContext}. Every change is recorded by the main thread into a ring
+ * buffer, without allocating nor touching the disk; a background thread
+ * appends the buffered records to the journal files at the end of every
+ * tick. When the ring buffer is full, the main thread waits for the writer
+ * (which is counted as a stall).
+ * <p>
+ * Journal files are named {@code <name>-<sequence>.journal}, and a new file
+ * is started once the current file exceeds the maximum file size. Each file
+ * starts with the magic {@code "TSJ1"}, followed by length-prefixed records
+ * (big-endian):
+ * <pre>
+ * int    length of the rest of the record
+ * byte   type (ordinal of {@link JournalEvent.Type})
+ * long   time, in milliseconds since the epoch
+ * ...    payload, depending on the type (UUIDs as two longs, team ids as
+ *        ints, colors, relations and name tag visibilities as ordinals)
+ * </pre>
+ * Attaching a journal to a context records a checkpoint of the whole state of
+ * the context, so that each session of a journal can be replayed on its own.
+ * @author Totom3
+ * @see GameContext#setJournal(TeamJournal)
+ * @see JournalReader
+ */
+public final class TeamJournal {
+
+    static final int MAGIC = 0x54534A31;
+    static final String EXTENSION = ".journal";
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_\\-]+");
+
+    // Larger than any record
+    private static final int MAX_RECORD = 64;
+    private static final long STALL_NANOS = 100_000;
+
+    private final File directory;
+    private final String name;
+    private final long maxFileBytes;
+
+    // Single producer (main thread), single consumer (writer thread) ring
+    private final byte[] ring;
+    private final int mask;
+    private final byte[] record;
+    private volatile long head;
+    private volatile long tail;
+
+    private final Thread writer;
+    private volatile boolean closing;
+    private volatile IOException failure;
+    private long stalls;
+    private long dropped;
+
+    // Writer thread state
+    private FileOutputStream out;
+    private long fileBytes;
+    private int sequence;
+
+    /**
+     * Creates a journal with a ring buffer of 1 MiB, rotating its files every
+     * 64 MiB.
+     * @param directory the directory of the journal files. Must not be
+     *                  {@code null}.
+     * @param name      the name of the journal: letters, digits, {@code _} and
+     *                  {@code -} only. Must not be {@code null}.
+     * @throws IllegalArgumentException if {@code name} isn't a valid name.
+     */
+    public TeamJournal(File directory, String name) {
+	this(directory, name, 1 << 20, 64L << 20);
+    }
+
+    /**
+     * Creates a journal. Numbering continues after the files already in the
+     * directory; no file is created before the first record is written.
+     * @param directory    the directory of the journal files. Must not be
+     *                     {@code null}.
+     * @param name         the name of the journal: letters, digits, {@code _}
+     *                     and {@code -} only. Must not be {@code null}.
+     * @param bufferBytes  the size of the ring buffer. Rounded up to a power of
+     *                     two, and to at least 4 KiB.
+     * @param maxFileBytes the size after which a new file is started. Must be
+     *                     positive.
+     * @throws IllegalArgumentException if {@code name} isn't a valid name, or
+     *                                  if a size isn't positive.
+     */
+    public TeamJournal(File directory, String name, int bufferBytes, long maxFileBytes) {
+	this.directory = checkNotNull(directory, "Directory cannot be null");
+	this.name = checkNotNull(name, "Name cannot be null");
+	checkArgument(NAME.matcher(name).matches(), "Invalid name '%s'", name);
+	checkArgument(bufferBytes > 0, "Buffer size must be positive");
+	checkArgument(maxFileBytes > 0, "Maximum file size must be positive");
+
+	int capacity = Math.max(Integer.highestOneBit(bufferBytes - 1) << 1, 4096);
+	this.ring = new byte[capacity];
+	this.mask = capacity - 1;
+	this.record = new byte[MAX_RECORD];
+	this.maxFileBytes = maxFileBytes;
+	this.sequence = JournalReader.lastSequence(directory, name);
+
+	this.writer = new Thread(this::writeLoop, "TeamJournal writer (" + name + ")");
+	writer.setDaemon(true);
+	writer.start();
+    }
+
+    public File getDirectory() {
+	return directory;
+    }
+
+    public String getName() {
+	return name;
+    }
+
+    /**
+     * Returns the number of times the main thread waited for the writer
+     * because the ring buffer was full.
+     * @return the number of stalls.
+     */
+    public long getStallCount() {
+	return stalls;
+    }
+
+    /**
+     * Returns the number of records dropped because the writer failed.
+     * @return the number of dropped records.
+     */
+    public long getDroppedCount() {
+	return dropped;
+    }
+
+    /**
+     * Returns the error which stopped the writer, if any. Records are dropped
+     * once the writer has failed.
+     * @return the failure of the writer, or {@code null}.
+     */
+    public IOException getFailure() {
+	return failure;
+    }
+
+    /**
+     * Writes the buffered records, and stops the writer. The journal must be
+     * detached from its context first; closing the context closes its journal.
+     * @throws IOException          if the writer failed.
+     * @throws InterruptedException if interrupted while waiting for the
+     *                              writer.
+     */
+    public void close() throws IOException, InterruptedException {
+	closing = true;
+	LockSupport.unpark(writer);
+	writer.join();
+	if (failure != null) {
+	    throw failure;
+	}
+    }
+
+    /**
+     * Only called by the {@code GameContext}, once per tick and when the
+     * journal is detached. Wakes the writer if records are waiting to be
+     * written: the writer sleeps until then.
+     */
+    void flush() {
+	if (head != tail) {
+	    LockSupport.unpark(writer);
+	}
+    }
+
+    // -----------------------=[ Records ]=-----------------------
+    // Only called by the GameContext, on the main thread.
+    void checkpoint() {
+	begin(JournalEvent.Type.CHECKPOINT);
+	end(13);
+    }
+
+    void settings(boolean friendlyFire, boolean seeFriendlyInvisibles, NameTagVisibility nameTagVisibility) {
+	begin(JournalEvent.Type.SETTINGS);
+	record[13] = (byte) ((friendlyFire ? 1 : 0) | (seeFriendlyInvisibles ? 2 : 0));
+	record[14] = (byte) nameTagVisibility.ordinal();
+	end(15);
+    }
+
+    void teamCreated(int team, ChatColor color) {
+	begin(JournalEvent.Type.TEAM_CREATED);
+	putInt(13, team);
+	record[17] = (byte) color.ordinal();
+	end(18);
+    }
+
+    void teamRemoved(int team) {
+	begin(JournalEvent.Type.TEAM_REMOVED);
+	putInt(13, team);
+	end(17);
+    }
+
+    void relation(int from, int to, TeamRelation relation) {
+	begin(JournalEvent.Type.RELATION);
+	putInt(13, from);
+	putInt(17, to);
+	record[21] = (byte) relation.ordinal();
+	end(22);
+    }
+
+    void join(UUID player, int team) {
+	begin(JournalEvent.Type.JOIN);
+	putUUID(13, player);
+	putInt(29, team);
+	end(33);
+    }
+
+    void leave(UUID player, int team) {
+	begin(JournalEvent.Type.LEAVE);
+	putUUID(13, player);
+	putInt(29, team);
+	end(33);
+    }
+
+    void move(UUID player, int from, int to) {
+	begin(JournalEvent.Type.MOVE);
+	putUUID(13, player);
+	putInt(29, from);
+	putInt(33, to);
+	end(37);
+    }
+
+    void reset() {
+	begin(JournalEvent.Type.RESET);
+	end(13);
+    }
+
+    private void begin(JournalEvent.Type type) {
+	record[4] = (byte) type.ordinal();
+	putLong(5, System.currentTimeMillis());
+    }
+
+    private void end(int length) {
+	putInt(0, length - 4);
+	if (failure != null || !reserve(length)) {
+	    ++dropped;
+	    return;
+	}
+
+	long position = tail;
+	int offset = (int) (position & mask);
+	int first = Math.min(length, ring.length - offset);
+	System.arraycopy(record, 0, ring, offset, first);
+	System.arraycopy(record, first, ring, 0, length - first);
+	tail = position + length;
+    }
+
+    private boolean reserve(int length) {
+	if (ring.length - (tail - head) >= length) {
+	    return true;
+	}
+	++stalls;
+	LockSupport.unpark(writer);
+	while (ring.length - (tail - head) < length) {
+	    if (failure != null || !writer.isAlive()) {
+		return false;
+	    }
+	    LockSupport.parkNanos(this, STALL_NANOS);
+	}
+	return true;
+    }
+
+    private void putInt(int offset, int value) {
+	record[offset] = (byte) (value >>> 24);
+	record[offset + 1] = (byte) (value >>> 16);
+	record[offset + 2] = (byte) (value >>> 8);
+	record[offset + 3] = (byte) value;
+    }
+
+    private void putLong(int offset, long value) {
+	putInt(offset, (int) (value >>> 32));
+	putInt(offset + 4, (int) value);
+    }
+
+    private void putUUID(int offset, UUID id) {
+	putLong(offset, id.getMostSignificantBits());
+	putLong(offset + 8, id.getLeastSignificantBits());
+    }
+
+    // -----------------------=[ Writer ]=-----------------------
+    private void writeLoop() {
+	try {
+	    for (;;) {
+		long end = tail;
+		long start = head;
+		if (start == end) {
+		    if (closing) {
+			break;
+		    }
+		    // woken by flush(), close() or a stalled producer; a wake-up
+		    // arriving before the park makes it return at once
+		    LockSupport.park(this);
+		    continue;
+		}
+
+		// [start, end) only holds whole records
+		if (out == null) {
+		    openNext();
+		}
+		int offset = (int) (start & mask);
+		int length = (int) (end - start);
+		int first = Math.min(length, ring.length - offset);
+		out.write(ring, offset, first);
+		out.write(ring, 0, length - first);
+		fileBytes += length;
+		head = end;
+
+		if (fileBytes >= maxFileBytes) {
+		    out.close();
+		    out = null;
+		}
+	    }
+	    if (out != null) {
+		out.close();
+	    }
+	} catch (IOException ex) {
+	    failure = ex;
+	}
+    }
+
+    private void openNext() throws IOException {
+	if (!directory.isDirectory() && !directory.mkdirs()) {
+	    throw new IOException("Couldn't create directory " + directory);
+	}
+
+	++sequence;
+	out = new FileOutputStream(new File(directory, name + "-" + sequence + EXTENSION));
+	out.write(new byte[]{(byte) (MAGIC >>> 24), (byte) (MAGIC >>> 16), (byte) (MAGIC >>> 8), (byte) MAGIC});
+	fileBytes = 4;
+    }
+
+}
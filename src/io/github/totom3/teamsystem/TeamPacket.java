@@ -0,0 +1,121 @@
+package io.github.totom3.teamsystem;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import org.bukkit.scoreboard.NameTagVisibility;
+
+/**
+ * A team packet sent by a {@code VirtualScoreboard}, mirroring the modes of
+ * the team packet of the protocol. Packets are immutable.
+ * @author Totom3
+ */
+public final class TeamPacket {
+
+    public enum Mode {
+
+	/**
+	 * Creates a team, with its properties and entries.
+	 */
+	CREATE,
+	/**
+	 * Removes a team.
+	 */
+	REMOVE,
+	/**
+	 * Updates the properties of a team.
+	 */
+	UPDATE,
+	/**
+	 * Adds entries to a team. Entries implicitly leave their previous team.
+	 */
+	ADD_ENTRIES,
+	/**
+	 * Removes entries from a team.
+	 */
+	REMOVE_ENTRIES
+    }
+
+    private final Mode mode;
+    private final String team;
+    private final String displayName;
+    private final String prefix;
+    private final String suffix;
+    private final boolean friendlyFire;
+    private final boolean seeFriendlyInvisibles;
+    private final NameTagVisibility nameTagVisibility;
+    private final ImmutableList<String> entries;
+
+    TeamPacket(Mode mode, String team, String displayName, String prefix, String suffix, boolean friendlyFire, boolean seeFriendlyInvisibles, NameTagVisibility nameTagVisibility, ImmutableList<String> entries) {
+	this.mode = mode;
+	this.team = team;
+	this.displayName = displayName;
+	this.prefix = prefix;
+	this.suffix = suffix;
+	this.friendlyFire = friendlyFire;
+	this.seeFriendlyInvisibles = seeFriendlyInvisibles;
+	this.nameTagVisibility = nameTagVisibility;
+	this.entries = entries;
+    }
+
+    public Mode getMode() {
+	return mode;
+    }
+
+    public String getTeam() {
+	return team;
+    }
+
+    /**
+     * Returns the display name of the team. Only set by {@code CREATE} and
+     * {@code UPDATE} packets, as are the other properties.
+     * @return the display name of the team, or {@code null}.
+     */
+    public String getDisplayName() {
+	return displayName;
+    }
+
+    public String getPrefix() {
+	return prefix;
+    }
+
+    public String getSuffix() {
+	return suffix;
+    }
+
+    public boolean hasFriendlyFire() {
+	return friendlyFire;
+    }
+
+    public boolean canSeeFriendlyInvisibles() {
+	return seeFriendlyInvisibles;
+    }
+
+    public NameTagVisibility getNameTagVisibility() {
+	return nameTagVisibility;
+    }
+
+    /**
+     * Returns the entries of the packet: every entry of the team for
+     * {@code CREATE} packets, the added or removed entries for
+     * {@code ADD_ENTRIES} and {@code REMOVE_ENTRIES} packets.
+     * @return an immutable list of entries. Empty for other packets.
+     */
+    public List<String> getEntries() {
+	return entries;
+    }
+
+    @Override
+    public String toString() {
+	StringBuilder builder = new StringBuilder("TeamPacket{").append(mode).append(' ').append(team);
+	if (mode == Mode.CREATE || mode == Mode.UPDATE) {
+	    builder.append(", displayName=").append(displayName).append(", prefix=").append(prefix).append(", suffix=").append(suffix)
+		    .append(", friendlyFire=").append(friendlyFire).append(", seeFriendlyInvisibles=").append(seeFriendlyInvisibles)
+		    .append(", nameTagVisibility=").append(nameTagVisibility);
+	}
+	if (!entries.isEmpty()) {
+	    builder.append(", entries=").append(entries);
+	}
+	return builder.append('}').toString();
+    }
+
+}
@@ -0,0 +1,46 @@
+package io.github.totom3.teamsystem;
+
+/**
+ * The relation of a team towards another team of the same
+ * {@code GameContext}.
+ * @author Totom3
+ * @see GameContext#relation(org.bukkit.entity.Player, org.bukkit.entity.Player)
+ */
+public enum TeamRelation {
+
+    /**
+     * Both players are teammates. Default relation of a team towards itself.
+     */
+    ALLY(false),
+    /**
+     * The players are opponents. Default relation between two different teams.
+     */
+    ENEMY(true),
+    /**
+     * The players are unrelated. Always the relation of a player who isn't in
+     * any team.
+     */
+    NEUTRAL(false),
+    /**
+     * The players of the first team convert the players of the second team to
+     * their own team when hurting them.
+     */
+    INFECTS(true);
+
+    private final boolean hostile;
+
+    private TeamRelation(boolean hostile) {
+	this.hostile = hostile;
+    }
+
+    /**
+     * Returns whether or not the players of the first team are opponents of
+     * the players of the second team, i.e. whether this relation is
+     * {@link #ENEMY} or {@link #INFECTS}.
+     * @return {@code true} if this relation is hostile, {@code false}
+     *         otherwise.
+     */
+    public boolean isHostile() {
+	return hostile;
+    }
+}
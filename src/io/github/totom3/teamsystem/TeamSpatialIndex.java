@@ -0,0 +1,496 @@
+package io.github.totom3.teamsystem;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+/**
+ * Indexes the positions of the players of a {@code GameContext}, so that
+ * spatial queries on a team don't scan all of its players. Each team has a
+ * grid of 16x16 block columns (like chunks); a query only visits the cells
+ * around the queried location, and falls back to scanning the occupied cells
+ * of the team when they are fewer than the cells around the location.
+ * <p>
+ * Positions are updated by the listener of the context on every movement,
+ * teleport, respawn and change of world, and by the context on every change of
+ * membership. Queries return players as of their latest recorded position.
+ * Distances are euclidean (3D); players in other worlds are never returned.
+ * <p>
+ * Main thread only.
+ * @author Totom3
+ * @see GameContext#getSpatialIndex()
+ */
+public class TeamSpatialIndex {
+
+    private static final int CELL_SHIFT = 4;
+    private static final int CELL_SIZE = 1 << CELL_SHIFT;
+
+    // Packed cells: world id on the 20 upper bits, then both cell coordinates
+    // on 22 bits each (enough for the 30 million blocks world border)
+    private static final int COORD_BITS = 22;
+    private static final long COORD_MASK = (1L << COORD_BITS) - 1;
+    private static final int WORLD_SHIFT = 2 * COORD_BITS;
+
+    private final GameContext context;
+    private final Map<UUID, Integer> worldIds;
+
+    // Per-slot position, as of the latest event
+    private boolean[] tracked;
+    private double[] xs;
+    private double[] ys;
+    private double[] zs;
+    private long[] cells;
+    private int trackedCount;
+
+    // Per-team grid, indexed by team id
+    private CellMap[] teamCells;
+
+    // Scratch state of the current query
+    private CellMap[] queryCells;
+    private int bestSlot;
+    private double bestDistance;
+
+    TeamSpatialIndex(GameContext context) {
+	this.context = context;
+	this.worldIds = new HashMap<>();
+	this.tracked = new boolean[16];
+	this.xs = new double[16];
+	this.ys = new double[16];
+	this.zs = new double[16];
+	this.cells = new long[16];
+	this.teamCells = new CellMap[16];
+	this.queryCells = new CellMap[16];
+    }
+
+    /**
+     * Returns the number of players whose position is known.
+     * @return the number of indexed players.
+     */
+    public int getTrackedCount() {
+	return trackedCount;
+    }
+
+    // -------------------=[ Queries ]=-------------------
+    /**
+     * Returns the player of a team closest to a location.
+     * @param team the team to search. Must be a team of this index' context.
+     * @param from the location to measure distances from. Must not be
+     *             {@code null}.
+     * @return the closest player of {@code team} in the world of
+     *         {@code from}, or {@code null} if there is none.
+     * @throws NullPointerException     if an argument is {@code null}.
+     * @throws IllegalArgumentException if {@code team} isn't a team of the
+     *                                  context.
+     */
+    public Player getNearest(GameTeam team, Location from) {
+	checkTeam(team);
+	checkNotNull(from, "Location cannot be null");
+	int world = findWorld(from.getWorld());
+	CellMap teamGrid = cellsOf(team.getId());
+	if (world < 0 || teamGrid == null) {
+	    return null;
+	}
+
+	queryCells[0] = teamGrid;
+	int slot = nearestSlot(1, world, from.getX(), from.getY(), from.getZ(), PlayerRoster.NO_SLOT);
+	queryCells[0] = null;
+	return (slot < 0) ? null : context.getRoster().getPlayer(slot);
+    }
+
+    /**
+     * Returns the player closest to a player among the teams its team is
+     * {@linkplain TeamRelation#isHostile() hostile} to, such as the nearest
+     * survivor of a zombie.
+     * @param player the player to search the enemies of. Must not be
+     *               {@code null}.
+     * @return the closest enemy of {@code player}, or {@code null} if there is
+     *         none, or if {@code player} isn't indexed.
+     * @throws NullPointerException if {@code player} is {@code null}.
+     */
+    public Player getNearestEnemy(Player player) {
+	int slot = trackedSlot(player);
+	if (slot < 0) {
+	    return null;
+	}
+
+	int count = collectEnemyCells(context.getRoster().getTeam(slot));
+	int nearest = nearestSlot(count, world(cells[slot]), xs[slot], ys[slot], zs[slot], slot);
+	Arrays.fill(queryCells, 0, count, null);
+	return (nearest < 0) ? null : context.getRoster().getPlayer(nearest);
+    }
+
+    /**
+     * Returns the players of a team within a distance of a location.
+     * @param team   the team to search. Must be a team of this index' context.
+     * @param center the center of the area. Must not be {@code null}.
+     * @param radius the radius of the area. Must be positive or zero.
+     * @return a newly allocated {@code List} of the players of {@code team}
+     *         whose distance to {@code center} is at most {@code radius}.
+     * @throws NullPointerException     if an argument is {@code null}.
+     * @throws IllegalArgumentException if {@code team} isn't a team of the
+     *                                  context, or if {@code radius} is
+     *                                  negative.
+     */
+    public List<Player> getWithin(GameTeam team, Location center, double radius) {
+	List<Player> players = new ArrayList<>();
+	within(team, center, radius, players);
+	return players;
+    }
+
+    /**
+     * Counts the players of a team within a distance of a location, without
+     * allocating.
+     * @param team   the team to search. Must be a team of this index' context.
+     * @param center the center of the area. Must not be {@code null}.
+     * @param radius the radius of the area. Must be positive or zero.
+     * @return the number of players of {@code team} whose distance to
+     *         {@code center} is at most {@code radius}.
+     * @throws NullPointerException     if an argument is {@code null}.
+     * @throws IllegalArgumentException if {@code team} isn't a team of the
+     *                                  context, or if {@code radius} is
+     *                                  negative.
+     */
+    public int countWithin(GameTeam team, Location center, double radius) {
+	return within(team, center, radius, null);
+    }
+
+    /**
+     * Counts the players within a distance of a player, among the teams its
+     * team is {@linkplain TeamRelation#isHostile() hostile} to.
+     * @param player the player at the center of the area. Must not be
+     *               {@code null}.
+     * @param radius the radius of the area. Must be positive or zero.
+     * @return the number of enemies of {@code player} in the area, or
+     *         {@code 0} if {@code player} isn't indexed.
+     * @throws NullPointerException     if {@code player} is {@code null}.
+     * @throws IllegalArgumentException if {@code radius} is negative.
+     */
+    public int countEnemiesWithin(Player player, double radius) {
+	checkRadius(radius);
+	int slot = trackedSlot(player);
+	if (slot < 0) {
+	    return 0;
+	}
+
+	int count = collectEnemyCells(context.getRoster().getTeam(slot));
+	int found = withinSlots(count, world(cells[slot]), xs[slot], ys[slot], zs[slot], radius, null);
+	Arrays.fill(queryCells, 0, count, null);
+	return found;
+    }
+
+    private int within(GameTeam team, Location center, double radius, List<Player> out) {
+	checkTeam(team);
+	checkNotNull(center, "Location cannot be null");
+	checkRadius(radius);
+	int world = findWorld(center.getWorld());
+	CellMap teamGrid = cellsOf(team.getId());
+	if (world < 0 || teamGrid == null) {
+	    return 0;
+	}
+
+	queryCells[0] = teamGrid;
+	int found = withinSlots(1, world, center.getX(), center.getY(), center.getZ(), radius, out);
+	queryCells[0] = null;
+	return found;
+    }
+
+    // -------------------=[ Search ]=-------------------
+    // Both searches read the grids of queryCells[0..count).
+    private int nearestSlot(int count, int world, double x, double y, double z, int excluded) {
+	int occupied = 0;
+	for (int i = 0; i < count; ++i) {
+	    occupied += queryCells[i].size();
+	}
+
+	bestSlot = -1;
+	bestDistance = Double.POSITIVE_INFINITY;
+	int cx = cellCoord(x);
+	int cz = cellCoord(z);
+	for (int r = 0;; ++r) {
+	    // every cell of ring r is at least (r - 1) cells away
+	    double reach = (double) (r - 1) * CELL_SIZE;
+	    if (r > 0 && bestSlot >= 0 && reach * reach > bestDistance) {
+		break;
+	    }
+	    long side = 2L * r + 1;
+	    if (side * side > occupied) {
+		for (int i = 0; i < count; ++i) {
+		    CellMap grid = queryCells[i];
+		    for (int j = 0, capacity = grid.capacity(); j < capacity; ++j) {
+			SlotSet slots = grid.valueAt(j);
+			if (slots != null && world(grid.keyAt(j)) == world) {
+			    visitNearest(slots, x, y, z, excluded);
+			}
+		    }
+		}
+		break;
+	    }
+
+	    for (int dx = -r; dx <= r; ++dx) {
+		visitNearest(count, cellKey(world, cx + dx, cz - r), x, y, z, excluded);
+		if (r > 0) {
+		    visitNearest(count, cellKey(world, cx + dx, cz + r), x, y, z, excluded);
+		}
+	    }
+	    for (int dz = -r + 1; dz < r; ++dz) {
+		visitNearest(count, cellKey(world, cx - r, cz + dz), x, y, z, excluded);
+		visitNearest(count, cellKey(world, cx + r, cz + dz), x, y, z, excluded);
+	    }
+	}
+	return bestSlot;
+    }
+
+    private void visitNearest(int count, long cell, double x, double y, double z, int excluded) {
+	for (int i = 0; i < count; ++i) {
+	    SlotSet slots = queryCells[i].get(cell);
+	    if (slots != null) {
+		visitNearest(slots, x, y, z, excluded);
+	    }
+	}
+    }
+
+    private void visitNearest(SlotSet slots, double x, double y, double z, int excluded) {
+	for (int i = 0, size = slots.size(); i < size; ++i) {
+	    int slot = slots.get(i);
+	    double distance = distanceSquared(slot, x, y, z);
+	    if (slot != excluded && distance < bestDistance) {
+		bestSlot = slot;
+		bestDistance = distance;
+	    }
+	}
+    }
+
+    private int withinSlots(int count, int world, double x, double y, double z, double radius, List<Player> out) {
+	int occupied = 0;
+	for (int i = 0; i < count; ++i) {
+	    occupied += queryCells[i].size();
+	}
+
+	double radiusSquared = radius * radius;
+	int minX = cellCoord(x - radius);
+	int maxX = cellCoord(x + radius);
+	int minZ = cellCoord(z - radius);
+	int maxZ = cellCoord(z + radius);
+	int found = 0;
+	if ((long) (maxX - minX + 1) * (maxZ - minZ + 1) > occupied) {
+	    for (int i = 0; i < count; ++i) {
+		CellMap grid = queryCells[i];
+		for (int j = 0, capacity = grid.capacity(); j < capacity; ++j) {
+		    SlotSet slots = grid.valueAt(j);
+		    if (slots != null && world(grid.keyAt(j)) == world) {
+			found += visitWithin(slots, x, y, z, radiusSquared, out);
+		    }
+		}
+	    }
+	    return found;
+	}
+
+	for (int cx = minX; cx <= maxX; ++cx) {
+	    for (int cz = minZ; cz <= maxZ; ++cz) {
+		long cell = cellKey(world, cx, cz);
+		for (int i = 0; i < count; ++i) {
+		    SlotSet slots = queryCells[i].get(cell);
+		    if (slots != null) {
+			found += visitWithin(slots, x, y, z, radiusSquared, out);
+		    }
+		}
+	    }
+	}
+	return found;
+    }
+
+    private int visitWithin(SlotSet slots, double x, double y, double z, double radiusSquared, List<Player> out) {
+	int found = 0;
+	for (int i = 0, size = slots.size(); i < size; ++i) {
+	    int slot = slots.get(i);
+	    if (distanceSquared(slot, x, y, z) <= radiusSquared) {
+		++found;
+		if (out != null) {
+		    out.add(context.getRoster().getPlayer(slot));
+		}
+	    }
+	}
+	return found;
+    }
+
+    /**
+     * Puts the grids of the teams a team is hostile to in queryCells.
+     * @return the number of grids.
+     */
+    private int collectEnemyCells(int team) {
+	int count = 0;
+	for (int other = 0; other < teamCells.length; ++other) {
+	    CellMap grid = teamCells[other];
+	    if (grid != null && grid.size() > 0 && context.relation0(team, other).isHostile()) {
+		if (count == queryCells.length) {
+		    queryCells = Arrays.copyOf(queryCells, count * 2);
+		}
+		queryCells[count++] = grid;
+	    }
+	}
+	return count;
+    }
+
+    private double distanceSquared(int slot, double x, double y, double z) {
+	double dx = xs[slot] - x;
+	double dy = ys[slot] - y;
+	double dz = zs[slot] - z;
+	return dx * dx + dy * dy + dz * dz;
+    }
+
+    // -----------------------=[ Internal ]=-----------------------
+    // Called by the listener of the context when a player moves.
+    void update(Player player, Location location) {
+	PlayerRoster roster = context.getRoster();
+	int slot = roster.slotOf(player);
+	if (slot != PlayerRoster.NO_SLOT) {
+	    track(slot, roster.getTeam(slot), location);
+	}
+    }
+
+    // Called by the GameContext on every change of membership or of teams.
+    void onJoin(int slot, Player player, int team) {
+	track(slot, team, player.getLocation());
+    }
+
+    void onLeave(int slot, int team) {
+	if (slot < tracked.length && tracked[slot]) {
+	    teamCells[team].remove(cells[slot], slot);
+	    tracked[slot] = false;
+	    --trackedCount;
+	}
+    }
+
+    void onMove(int slot, int from, int to) {
+	if (slot < tracked.length && tracked[slot]) {
+	    teamCells[from].remove(cells[slot], slot);
+	    gridOf(to).add(cells[slot], slot);
+	}
+    }
+
+    void onReset() {
+	for (CellMap grid : teamCells) {
+	    if (grid != null) {
+		grid.clear();
+	    }
+	}
+	Arrays.fill(tracked, false);
+	trackedCount = 0;
+    }
+
+    void onTeamRemoved(int team) {
+	// the players of the team have left it already
+	if (team < teamCells.length) {
+	    teamCells[team] = null;
+	}
+    }
+
+    private void track(int slot, int team, Location location) {
+	World world = (location == null) ? null : location.getWorld();
+	if (world == null) {
+	    // position unknown until the next event
+	    onLeave(slot, team);
+	    return;
+	}
+
+	ensureSlotCapacity(slot);
+	double x = location.getX();
+	double z = location.getZ();
+	long cell = cellKey(worldId(world), cellCoord(x), cellCoord(z));
+	xs[slot] = x;
+	ys[slot] = location.getY();
+	zs[slot] = z;
+
+	if (tracked[slot]) {
+	    if (cells[slot] == cell) {
+		return;
+	    }
+	    teamCells[team].remove(cells[slot], slot);
+	} else {
+	    tracked[slot] = true;
+	    ++trackedCount;
+	}
+	cells[slot] = cell;
+	gridOf(team).add(cell, slot);
+    }
+
+    private int trackedSlot(Player player) {
+	int slot = context.getRoster().slotOf(GameUtils.checkPlayer(player));
+	return (slot != PlayerRoster.NO_SLOT && slot < tracked.length && tracked[slot]) ? slot : -1;
+    }
+
+    private CellMap cellsOf(int team) {
+	CellMap grid = (team < teamCells.length) ? teamCells[team] : null;
+	return (grid == null || grid.size() == 0) ? null : grid;
+    }
+
+    private CellMap gridOf(int team) {
+	if (team >= teamCells.length) {
+	    teamCells = Arrays.copyOf(teamCells, Math.max(teamCells.length * 2, team + 1));
+	}
+	CellMap grid = teamCells[team];
+	if (grid == null) {
+	    grid = teamCells[team] = new CellMap();
+	}
+	return grid;
+    }
+
+    private int worldId(World world) {
+	UUID uid = world.getUID();
+	Integer id = worldIds.get(uid);
+	if (id == null) {
+	    id = worldIds.size();
+	    worldIds.put(uid, id);
+	}
+	return id;
+    }
+
+    private int findWorld(World world) {
+	Integer id = (world == null) ? null : worldIds.get(world.getUID());
+	return (id == null) ? -1 : id;
+    }
+
+    private void ensureSlotCapacity(int slot) {
+	if (slot >= tracked.length) {
+	    int newLength = Math.max(tracked.length * 2, slot + 1);
+	    tracked = Arrays.copyOf(tracked, newLength);
+	    xs = Arrays.copyOf(xs, newLength);
+	    ys = Arrays.copyOf(ys, newLength);
+	    zs = Arrays.copyOf(zs, newLength);
+	    cells = Arrays.copyOf(cells, newLength);
+	}
+    }
+
+    private void checkTeam(GameTeam team) {
+	checkNotNull(team, "Team cannot be null");
+	if (team.getContext() != context) {
+	    throw new IllegalArgumentException("Not a team of this context: " + team);
+	}
+    }
+
+    private static void checkRadius(double radius) {
+	if (!(radius >= 0)) {
+	    throw new IllegalArgumentException("Radius must be positive or zero: " + radius);
+	}
+    }
+
+    private static int cellCoord(double coordinate) {
+	return (int) Math.floor(coordinate) >> CELL_SHIFT;
+    }
+
+    private static long cellKey(int world, int cx, int cz) {
+	return ((long) world << WORLD_SHIFT) | ((cx & COORD_MASK) << COORD_BITS) | (cz & COORD_MASK);
+    }
+
+    private static int world(long cell) {
+	return (int) (cell >>> WORLD_SHIFT);
+    }
+
+}
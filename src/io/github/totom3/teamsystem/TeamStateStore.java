@@ -0,0 +1,386 @@
+package io.github.totom3.teamsystem;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.NameTagVisibility;
+
+/**
+ * Saves the state of contexts to disk, and restores it after a restart. Each
+ * context is saved to its own file of the store's directory, in a compact
+ * binary format (big-endian):
+ * <pre>
+ * int    magic ("TSS1")
+ * long   save time, in milliseconds since the epoch
+ * byte   settings: friendly fire (bit 0), see friendly invisibles (bit 1)
+ * byte   ordinal of the NameTagVisibility
+ * int    team count, then per team:      int id, byte color ordinal
+ * int    relation count, then per entry: int from id, int to id, byte ordinal
+ * int    member count, then per member:  long UUID most significant bits,
+ *                                        long UUID least significant bits,
+ *                                        int team id, long join time
+ * </pre>
+ * A member takes 28 bytes. The members are the players in a team, followed
+ * by the restored members who haven't reconnected since the last restore, so
+ * that saving again doesn't lose them. The state is encoded on the main
+ * thread in a single pass over the roster of the context (a few microseconds
+ * for a thousand players), and the file is written by a background thread:
+ * saving never waits for the disk. Files are replaced atomically, so that a
+ * crash during a save leaves the previous file intact.
+ * <p>
+ * Restoring applies the settings and relations, re-creates the missing teams,
+ * and puts back the players who are online. The other memberships are kept
+ * by the context, and applied as their players reconnect. Restored players
+ * don't count as joining their team again: no join hook nor notification is
+ * fired for them.
+ * @author Totom3
+ */
+public final class TeamStateStore {
+
+    private static final int MAGIC = 0x54535331;
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_\\-]+");
+    private static final String EXTENSION = ".teams";
+
+    private final File directory;
+    private ExecutorService writer;
+    private boolean closed;
+
+    /**
+     * Creates a store keeping its files in a directory. The directory is
+     * created on the first save.
+     * @param directory the directory of the store. Must not be {@code null}.
+     */
+    public TeamStateStore(File directory) {
+	this.directory = checkNotNull(directory, "Directory cannot be null");
+    }
+
+    public File getDirectory() {
+	return directory;
+    }
+
+    /**
+     * Saves the state of a context. The state is captured immediately; the
+     * file is written in the background. Saves of the same store are written
+     * in the order they were made. Main thread only.
+     * @param name    the name of the saved state: letters, digits, {@code _}
+     *                and {@code -} only. Must not be {@code null}.
+     * @param context the context to save. Must not be {@code null}.
+     * @return a future completed once the file is written, or completed
+     *         exceptionally with an {@code IOException} if the write failed.
+     * @throws NullPointerException     if an argument is {@code null}.
+     * @throws IllegalArgumentException if {@code name} isn't a valid name.
+     * @throws IllegalStateException    if this store is closed.
+     */
+    public CompletableFuture<Void> save(String name, GameContext context) {
+	final File file = fileOf(name);
+	final byte[] data = encode(checkNotNull(context, "GameContext cannot be null"));
+
+	final CompletableFuture<Void> future = new CompletableFuture<>();
+	writer().execute(() -> {
+	    try {
+		write(file, data);
+		future.complete(null);
+	    } catch (IOException | RuntimeException ex) {
+		future.completeExceptionally(ex);
+	    }
+	});
+	return future;
+    }
+
+    /**
+     * Saves the state of a context, and waits for the file to be written. Meant
+     * for shutdown. Main thread only.
+     * @param name    the name of the saved state. Must not be {@code null}.
+     * @param context the context to save. Must not be {@code null}.
+     * @throws IOException if the file couldn't be written.
+     * @see #save(String, GameContext)
+     */
+    public void saveNow(String name, GameContext context) throws IOException {
+	try {
+	    save(name, context).join();
+	} catch (CompletionException ex) {
+	    if (ex.getCause() instanceof IOException) {
+		throw (IOException) ex.getCause();
+	    }
+	    throw ex;
+	}
+    }
+
+    /**
+     * Restores the state of a context. The settings and the relations of the
+     * context are replaced by the saved ones, and the saved teams which don't
+     * exist anymore are created. Online players are put back in their team
+     * immediately; the memberships of the other players are applied when they
+     * connect, unless the context is reset before. Players already in a team
+     * are left in it. Main thread only.
+     * @param name    the name of the saved state. Must not be {@code null}.
+     * @param context the context to restore. Must not be {@code null}.
+     * @return the number of memberships read, or {@code -1} if there is no
+     *         saved state with that name.
+     * @throws IOException              if the file couldn't be read, or is
+     *                                  corrupted. The context is left untouched
+     *                                  in that case.
+     * @throws IllegalArgumentException if {@code name} isn't a valid name.
+     */
+    public int restore(String name, GameContext context) throws IOException {
+	File file = fileOf(name);
+	checkNotNull(context, "GameContext cannot be null");
+	if (!file.isFile()) {
+	    return -1;
+	}
+	return decode(Files.readAllBytes(file.toPath()), context);
+    }
+
+    /**
+     * Deletes a saved state.
+     * @param name the name of the saved state. Must not be {@code null}.
+     * @return {@code true} if the state existed and was deleted.
+     * @throws IllegalArgumentException if {@code name} isn't a valid name.
+     */
+    public boolean delete(String name) {
+	return fileOf(name).delete();
+    }
+
+    /**
+     * Waits for the pending saves to be written, and stops the background
+     * thread of this store. The store can't save anymore afterwards.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public synchronized void close() throws InterruptedException {
+	if (writer != null) {
+	    writer.shutdown();
+	    writer.awaitTermination(1, TimeUnit.MINUTES);
+	}
+	writer = null;
+	closed = true;
+    }
+
+    // -----------------------=[ Format ]=-----------------------
+    static byte[] encode(GameContext context) {
+	List<GameTeam> teams = context.allTeams();
+	PlayerRoster roster = context.getRoster();
+
+	int relations = 0;
+	for (int from = 0, bound = context.relationBound(); from < bound; ++from) {
+	    TeamRelation[] row = context.relationRow(from);
+	    for (int to = 0; row != null && to < row.length; ++to) {
+		if (row[to] != null) {
+		    ++relations;
+		}
+	    }
+	}
+
+	// restored members who haven't reconnected yet are saved again, unless
+	// they joined a team since then or their team was removed
+	Map<UUID, GameContext.PendingMember> pending = context.getPendingMembers();
+	int pendingCount = 0;
+	for (Map.Entry<UUID, GameContext.PendingMember> entry : pending.entrySet()) {
+	    if (isSaved(entry.getKey(), entry.getValue(), context)) {
+		++pendingCount;
+	    }
+	}
+
+	int members = roster.size() + pendingCount;
+	int size = 4 + 8 + 1 + 1 + 4 + teams.size() * 5 + 4 + relations * 9 + 4 + members * 28;
+	ByteBuffer buffer = ByteBuffer.allocate(size);
+	buffer.putInt(MAGIC);
+	buffer.putLong(System.currentTimeMillis());
+	buffer.put((byte) ((context.hasFriendlyFire() ? 1 : 0) | (context.canSeeFriendlyInvisibles() ? 2 : 0)));
+	buffer.put((byte) context.getNameTagVisibility().ordinal());
+
+	buffer.putInt(teams.size());
+	for (GameTeam team : teams) {
+	    buffer.putInt(team.getId());
+	    buffer.put((byte) team.getColor().ordinal());
+	}
+
+	buffer.putInt(relations);
+	for (int from = 0, bound = context.relationBound(); from < bound; ++from) {
+	    TeamRelation[] row = context.relationRow(from);
+	    for (int to = 0; row != null && to < row.length; ++to) {
+		if (row[to] != null) {
+		    buffer.putInt(from);
+		    buffer.putInt(to);
+		    buffer.put((byte) row[to].ordinal());
+		}
+	    }
+	}
+
+	buffer.putInt(members);
+	for (int slot = 0, bound = roster.slotBound(); slot < bound; ++slot) {
+	    if (roster.isLive(slot)) {
+		putMember(buffer, roster.getPlayer(slot).getUniqueId(), roster.getTeam(slot), roster.getJoinTime(slot));
+	    }
+	}
+	for (Map.Entry<UUID, GameContext.PendingMember> entry : pending.entrySet()) {
+	    GameContext.PendingMember member = entry.getValue();
+	    if (isSaved(entry.getKey(), member, context)) {
+		putMember(buffer, entry.getKey(), member.teamId, member.joinTime);
+	    }
+	}
+	return buffer.array();
+    }
+
+    private static boolean isSaved(UUID id, GameContext.PendingMember member, GameContext context) {
+	return context.getRoster().slotOf(id) == PlayerRoster.NO_SLOT && context.getTeam(member.teamId) != null;
+    }
+
+    private static void putMember(ByteBuffer buffer, UUID id, int teamId, long joinTime) {
+	buffer.putLong(id.getMostSignificantBits());
+	buffer.putLong(id.getLeastSignificantBits());
+	buffer.putInt(teamId);
+	buffer.putLong(joinTime);
+    }
+
+    static int decode(byte[] data, GameContext context) throws IOException {
+	DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+	try {
+	    if (in.readInt() != MAGIC) {
+		throw new IOException("Not a team state file");
+	    }
+	    in.readLong();
+	    int settings = in.readUnsignedByte();
+	    NameTagVisibility nameTagVisibility = valueOf(NameTagVisibility.values(), in.readUnsignedByte());
+
+	    // Read everything first, so that a corrupted file changes nothing
+	    int teamCount = readCount(in, 5);
+	    int[] teamIds = new int[teamCount];
+	    ChatColor[] colors = new ChatColor[teamCount];
+	    for (int i = 0; i < teamCount; ++i) {
+		teamIds[i] = readTeamId(in);
+		colors[i] = valueOf(ChatColor.values(), in.readUnsignedByte());
+		if (colors[i].isFormat() || colors[i] == ChatColor.RESET) {
+		    throw new IOException("Invalid team color " + colors[i]);
+		}
+	    }
+
+	    int relationCount = readCount(in, 9);
+	    int[] relationIds = new int[relationCount * 2];
+	    TeamRelation[] relations = new TeamRelation[relationCount];
+	    for (int i = 0; i < relationCount; ++i) {
+		relationIds[2 * i] = readTeamId(in);
+		relationIds[2 * i + 1] = readTeamId(in);
+		relations[i] = valueOf(TeamRelation.values(), in.readUnsignedByte());
+	    }
+
+	    int memberCount = readCount(in, 28);
+	    long[] members = new long[memberCount * 4];
+	    for (int i = 0; i < memberCount; ++i) {
+		members[4 * i] = in.readLong();
+		members[4 * i + 1] = in.readLong();
+		members[4 * i + 2] = readTeamId(in);
+		members[4 * i + 3] = in.readLong();
+	    }
+
+	    // Apply
+	    context.setFriendlyFire((settings & 1) != 0);
+	    context.setCanSeeFriendlyInvisibles((settings & 2) != 0);
+	    context.setNameTagVisibility(nameTagVisibility);
+	    for (int i = 0; i < teamCount; ++i) {
+		if (context.getTeam(teamIds[i]) == null) {
+		    context.createTeam(teamIds[i], colors[i]);
+		}
+	    }
+	    context.clearRelations();
+	    for (int i = 0; i < relationCount; ++i) {
+		context.setRelation(relationIds[2 * i], relationIds[2 * i + 1], relations[i]);
+	    }
+	    for (int i = 0; i < memberCount; ++i) {
+		UUID id = new UUID(members[4 * i], members[4 * i + 1]);
+		context.expectMember(id, (int) members[4 * i + 2], members[4 * i + 3]);
+		Player player = Bukkit.getPlayer(id);
+		if (player != null) {
+		    context.restoreMember(player);
+		}
+	    }
+	    return memberCount;
+	} catch (EOFException ex) {
+	    throw new IOException("Truncated team state file", ex);
+	}
+    }
+
+    private static int readCount(DataInputStream in, int entrySize) throws IOException {
+	int count = in.readInt();
+	if (count < 0 || (long) count * entrySize > in.available()) {
+	    throw new IOException("Invalid entry count " + count);
+	}
+	return count;
+    }
+
+    private static int readTeamId(DataInputStream in) throws IOException {
+	int id = in.readInt();
+	if (id < 0 || id >= GameContext.MAX_TEAMS) {
+	    throw new IOException("Invalid team id " + id);
+	}
+	return id;
+    }
+
+    private static <E> E valueOf(E[] values, int ordinal) throws IOException {
+	if (ordinal >= values.length) {
+	    throw new IOException("Invalid ordinal " + ordinal);
+	}
+	return values[ordinal];
+    }
+
+    // -----------------------=[ Internal ]=-----------------------
+    private File fileOf(String name) {
+	checkNotNull(name, "Name cannot be null");
+	if (!NAME.matcher(name).matches()) {
+	    throw new IllegalArgumentException("Invalid name '" + name + "'");
+	}
+	return new File(directory, name + EXTENSION);
+    }
+
+    private synchronized ExecutorService writer() {
+	if (closed) {
+	    throw new IllegalStateException("TeamStateStore is closed");
+	}
+	if (writer == null) {
+	    writer = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "TeamStateStore writer");
+		thread.setDaemon(true);
+		return thread;
+	    });
+	}
+	return writer;
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+	File parent = file.getParentFile();
+	if (!parent.isDirectory() && !parent.mkdirs()) {
+	    throw new IOException("Couldn't create directory " + parent);
+	}
+
+	File temp = new File(parent, file.getName() + ".tmp");
+	try (FileOutputStream out = new FileOutputStream(temp)) {
+	    out.write(data);
+	    out.getFD().sync();
+	}
+	try {
+	    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	} catch (AtomicMoveNotSupportedException ex) {
+	    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+    }
+
+}
@@ -0,0 +1,65 @@
+package io.github.totom3.teamsystem;
+
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.Team;
+
+/**
+ * Decides how the teams of a context look to each of its players. Players
+ * whose views have equal keys share a single scoreboard, on which every team
+ * of the context is styled for that view.
+ * @author Totom3
+ * @see GameContext#setTeamView(TeamView)
+ * @see ScoreboardPool
+ */
+public interface TeamView {
+
+    /**
+     * Returns the key of the view a player needs. The key must only depend on
+     * the player and its team: it is computed when the player joins or
+     * changes team.
+     * @param viewer the player.
+     * @param team   the team of the player.
+     * @return the key of the view of the player, implementing
+     *         {@code equals()} and {@code hashCode()}. Must not be
+     *         {@code null}.
+     */
+    Object getKey(Player viewer, GameTeam team);
+
+    /**
+     * Styles a team on the scoreboard of a view: prefix, suffix, name tag
+     * visibility... The settings of the context are applied to the Bukkit team
+     * before this method is called. Called when the team is added to the
+     * scoreboard, and when the settings or relations of the context change.
+     * @param key        the key of the view.
+     * @param team       the team to style.
+     * @param bukkitTeam the Bukkit team of {@code team} on the scoreboard of
+     *                   the view.
+     */
+    void style(Object key, GameTeam team, Team bukkitTeam);
+
+    /**
+     * Returns a view in which the names of the players are colored after the
+     * relation of the viewer's team towards their team: green for allies, red
+     * for enemies. Players of a team share a view.
+     * @return a view coloring players by relation.
+     */
+    static TeamView byRelation() {
+	return new TeamView() {
+	    @Override
+	    public Object getKey(Player viewer, GameTeam team) {
+		return team.getId();
+	    }
+
+	    @Override
+	    public void style(Object key, GameTeam team, Team bukkitTeam) {
+		TeamRelation relation = team.getContext().getRelation((Integer) key, team.getId());
+		String prefix = relation.isHostile() ? ChatColor.RED.toString()
+			: (relation == TeamRelation.ALLY) ? ChatColor.GREEN.toString() : "";
+		if (!prefix.equals(bukkitTeam.getPrefix())) {
+		    bukkitTeam.setPrefix(prefix);
+		}
+	    }
+	};
+    }
+}
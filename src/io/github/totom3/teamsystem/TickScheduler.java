@@ -0,0 +1,113 @@
+package io.github.totom3.teamsystem;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs large operations of a {@code GameContext} incrementally, spending at
+ * most a fixed amount of time on them per tick. Jobs are run one after the
+ * other, in submission order. A failing job is logged and discarded, and
+ * doesn't prevent the other jobs, nor the rest of the tick, from running.
+ * Main thread only.
+ * @author Totom3
+ */
+final class TickScheduler {
+
+    /**
+     * A piece of work that can be interrupted and resumed on the next tick.
+     */
+    interface Job {
+
+	/**
+	 * Does as much work as possible until the specified deadline. At least
+	 * one unit of work must be done on each call, so that every job
+	 * eventually completes whatever the budget.
+	 * @param deadline the value of {@link System#nanoTime()} after which
+	 *                 the job must return.
+	 * @return {@code true} if the job is complete, {@code false} if it must
+	 *         be resumed on the next tick.
+	 */
+	boolean run(long deadline);
+
+	/**
+	 * Called instead of resuming the job when {@link #run(long)} threw an
+	 * exception, or when the context is closed. The job is then discarded.
+	 * @param cause the exception thrown by {@code run(long)}, or an
+	 *              {@code IllegalStateException} if the context was closed.
+	 */
+	void abort(RuntimeException cause);
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(TickScheduler.class.getName());
+
+    static final long DEFAULT_BUDGET_MILLIS = 2;
+
+    private final ArrayDeque<Job> jobs;
+    private long budgetNanos;
+
+    TickScheduler() {
+	this.jobs = new ArrayDeque<>();
+	this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_BUDGET_MILLIS);
+    }
+
+    long getBudgetMillis() {
+	return TimeUnit.NANOSECONDS.toMillis(budgetNanos);
+    }
+
+    void setBudgetMillis(long millis) {
+	if (millis <= 0) {
+	    throw new IllegalArgumentException("Budget must be positive, got " + millis);
+	}
+	this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    void submit(Job job) {
+	jobs.add(job);
+    }
+
+    boolean isIdle() {
+	return jobs.isEmpty();
+    }
+
+    /**
+     * Aborts every pending job, as if it threw the specified exception.
+     * @param cause the exception to abort the jobs with.
+     */
+    void abortAll(RuntimeException cause) {
+	Job job;
+	while ((job = jobs.poll()) != null) {
+	    job.abort(cause);
+	}
+    }
+
+    /**
+     * Runs the pending jobs until the budget of this tick is spent.
+     */
+    void run() {
+	if (jobs.isEmpty()) {
+	    return;
+	}
+
+	long deadline = System.nanoTime() + budgetNanos;
+	do {
+	    Job job = jobs.peek();
+	    boolean complete;
+	    try {
+		complete = job.run(deadline);
+	    } catch (RuntimeException ex) {
+		jobs.poll();
+		LOGGER.log(Level.WARNING, "Incremental job " + job + " failed", ex);
+		job.abort(ex);
+		continue;
+	    }
+
+	    if (!complete) {
+		return;
+	    }
+	    jobs.poll();
+	} while (!jobs.isEmpty() && System.nanoTime() < deadline);
+    }
+
+}
@@ -0,0 +1,502 @@
+package io.github.totom3.teamsystem;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.NameTagVisibility;
+import org.bukkit.scoreboard.Scoreboard;
+import org.bukkit.scoreboard.Team;
+
+/**
+ * A {@code TeamBackend} keeping its teams in memory rather than in a Bukkit
+ * scoreboard. Changes are not sent as they are made: they are coalesced until
+ * the end of the tick, and then sent as a single batch of team packets through
+ * a {@code PacketSink}. A player added then removed from a team in the same
+ * tick costs no packet; a player moving between teams costs a single
+ * {@code ADD_ENTRIES} packet.
+ * <p>
+ * Players joining the viewers receive the whole state of the teams, players
+ * leaving them receive the removal of every team, and the other viewers
+ * receive the delta since the previous tick. Players are not given any Bukkit
+ * scoreboard: the Bukkit teams returned by this backend don't belong to any,
+ * and their {@code getScoreboard()} method returns {@code null}.
+ * @author Totom3
+ * @see GameContext#setTeamBackend(TeamBackend)
+ */
+public final class VirtualScoreboard implements TeamBackend {
+
+    private final PacketSink sink;
+
+    private final Map<String, VirtualTeam> teams = new LinkedHashMap<>();
+    private final Map<String, VirtualTeam> entryTeams = new HashMap<>();
+    private final List<VirtualTeam> dirtyTeams = new ArrayList<>();
+
+    // Players who received the state of the teams, and those who will at the
+    // end of the tick
+    private final Map<UUID, Player> viewers = new HashMap<>();
+    private final Map<UUID, Player> joining = new LinkedHashMap<>();
+    private final Map<UUID, Player> leaving = new LinkedHashMap<>();
+
+    private long packetCount;
+
+    /**
+     * Creates an empty virtual scoreboard.
+     * @param sink the sink to send the packets to. Must not be {@code null}.
+     */
+    public VirtualScoreboard(PacketSink sink) {
+	this.sink = checkNotNull(sink, "PacketSink cannot be null");
+    }
+
+    /**
+     * Returns the number of players the teams are shown to, including those
+     * who will receive them at the end of the tick.
+     * @return the number of viewers.
+     */
+    public int getViewerCount() {
+	return viewers.size() + joining.size() - leaving.size();
+    }
+
+    /**
+     * Returns the number of packets sent so far, counting one packet per
+     * viewer it was sent to.
+     * @return the number of packets sent.
+     */
+    public long getPacketCount() {
+	return packetCount;
+    }
+
+    /**
+     * Returns the team of an entry.
+     * @param entry the entry. Must not be {@code null}.
+     * @return the team of the entry, or {@code null}.
+     */
+    public Team getEntryTeam(String entry) {
+	return entryTeams.get(checkNotNull(entry, "Entry cannot be null"));
+    }
+
+    // -----------------------=[ Backend ]=-----------------------
+    @Override
+    public Team getTeam(String name) {
+	if (name.length() > 16) {
+	    throw new IllegalArgumentException("Team name '" + name + "' is longer than 16 characters");
+	}
+	VirtualTeam team = teams.get(name);
+	if (team == null) {
+	    team = new VirtualTeam(name);
+	    teams.put(name, team);
+	    markDirty(team);
+	}
+	return team;
+    }
+
+    @Override
+    public boolean show(Player player) {
+	UUID id = player.getUniqueId();
+	leaving.remove(id);
+	// a new Player object for a viewer is a new client, after a reconnection
+	if (viewers.get(id) != player) {
+	    joining.put(id, player);
+	}
+	return false;
+    }
+
+    @Override
+    public void hide(Player player) {
+	UUID id = player.getUniqueId();
+	if (joining.remove(id) == null && viewers.containsKey(id)) {
+	    leaving.put(id, viewers.get(id));
+	}
+    }
+
+    @Override
+    public void flush() {
+	if (!leaving.isEmpty()) {
+	    // leavers know the teams as of the previous flush
+	    List<TeamPacket> removal = new ArrayList<>();
+	    for (VirtualTeam team : teams.values()) {
+		if (team.sent) {
+		    removal.add(team.packet(TeamPacket.Mode.REMOVE, ImmutableList.of()));
+		}
+	    }
+	    for (VirtualTeam team : dirtyTeams) {
+		if (!team.registered && team.sent) {
+		    removal.add(team.packet(TeamPacket.Mode.REMOVE, ImmutableList.of()));
+		}
+	    }
+	    for (Player player : leaving.values()) {
+		viewers.remove(player.getUniqueId());
+		if (player.isOnline()) {
+		    send(player, removal);
+		}
+	    }
+	    leaving.clear();
+	}
+
+	if (!dirtyTeams.isEmpty()) {
+	    List<TeamPacket> delta = delta();
+	    for (Player player : viewers.values()) {
+		send(player, delta);
+	    }
+	}
+
+	if (!joining.isEmpty()) {
+	    List<TeamPacket> state = new ArrayList<>(teams.size());
+	    for (VirtualTeam team : teams.values()) {
+		state.add(team.packet(TeamPacket.Mode.CREATE, ImmutableList.copyOf(team.entries)));
+	    }
+	    for (Player player : joining.values()) {
+		viewers.put(player.getUniqueId(), player);
+		send(player, state);
+	    }
+	    joining.clear();
+	}
+    }
+
+    // -----------------------=[ Internal ]=-----------------------
+    /**
+     * Computes the packets turning the state of the previous flush into the
+     * current state, and clears the pending changes. Teams are removed first,
+     * and entries are removed before being added, so that a client never
+     * removes an entry from a team it isn't in.
+     */
+    private List<TeamPacket> delta() {
+	List<TeamPacket> removes = new ArrayList<>();
+	List<TeamPacket> updates = new ArrayList<>();
+	List<TeamPacket> creates = new ArrayList<>();
+	List<TeamPacket> adds = new ArrayList<>();
+	for (VirtualTeam team : dirtyTeams) {
+	    team.dirty = false;
+	    if (!team.registered) {
+		if (team.sent) {
+		    removes.add(team.packet(TeamPacket.Mode.REMOVE, ImmutableList.of()));
+		}
+		continue;
+	    }
+
+	    if (!team.sent) {
+		creates.add(team.packet(TeamPacket.Mode.CREATE, ImmutableList.copyOf(team.entries)));
+		team.sent = true;
+	    } else {
+		if (team.infoChanged) {
+		    updates.add(team.packet(TeamPacket.Mode.UPDATE, ImmutableList.of()));
+		}
+		// entries moved to another team leave this one implicitly
+		ImmutableList.Builder<String> removed = ImmutableList.builder();
+		int removedCount = 0;
+		for (String entry : team.removedEntries) {
+		    if (!entryTeams.containsKey(entry)) {
+			removed.add(entry);
+			++removedCount;
+		    }
+		}
+		if (removedCount > 0) {
+		    removes.add(team.packet(TeamPacket.Mode.REMOVE_ENTRIES, removed.build()));
+		}
+		if (!team.addedEntries.isEmpty()) {
+		    adds.add(team.packet(TeamPacket.Mode.ADD_ENTRIES, ImmutableList.copyOf(team.addedEntries)));
+		}
+	    }
+	    team.infoChanged = false;
+	    team.addedEntries.clear();
+	    team.removedEntries.clear();
+	}
+	dirtyTeams.clear();
+
+	List<TeamPacket> delta = new ArrayList<>(removes.size() + updates.size() + creates.size() + adds.size());
+	delta.addAll(removes);
+	delta.addAll(updates);
+	delta.addAll(creates);
+	delta.addAll(adds);
+	return delta;
+    }
+
+    private void send(Player player, List<TeamPacket> packets) {
+	if (!packets.isEmpty()) {
+	    sink.send(player, packets);
+	    packetCount += packets.size();
+	}
+    }
+
+    private void markDirty(VirtualTeam team) {
+	if (!team.dirty) {
+	    team.dirty = true;
+	    dirtyTeams.add(team);
+	}
+    }
+
+    private class VirtualTeam implements Team {
+
+	final String name;
+	String displayName;
+	String prefix = "";
+	String suffix = "";
+	boolean friendlyFire = true;
+	boolean seeFriendlyInvisibles = true;
+	NameTagVisibility nameTagVisibility = NameTagVisibility.ALWAYS;
+	final Set<String> entries = new LinkedHashSet<>();
+
+	boolean registered = true;
+	// whether or not the viewers know this team
+	boolean sent;
+	// pending changes, since the previous flush
+	boolean dirty;
+	boolean infoChanged;
+	final Set<String> addedEntries = new LinkedHashSet<>();
+	final Set<String> removedEntries = new LinkedHashSet<>();
+
+	VirtualTeam(String name) {
+	    this.name = name;
+	    this.displayName = name;
+	}
+
+	TeamPacket packet(TeamPacket.Mode mode, ImmutableList<String> packetEntries) {
+	    if (mode == TeamPacket.Mode.CREATE || mode == TeamPacket.Mode.UPDATE) {
+		return new TeamPacket(mode, name, displayName, prefix, suffix, friendlyFire, seeFriendlyInvisibles, nameTagVisibility, packetEntries);
+	    }
+	    return new TeamPacket(mode, name, null, null, null, false, false, null, packetEntries);
+	}
+
+	void checkRegistered() {
+	    if (!registered) {
+		throw new IllegalStateException("Unregistered scoreboard component");
+	    }
+	}
+
+	void changeInfo() {
+	    infoChanged = true;
+	    markDirty(this);
+	}
+
+	void leave(String entry) {
+	    entries.remove(entry);
+	    entryTeams.remove(entry);
+	    if (!addedEntries.remove(entry)) {
+		removedEntries.add(entry);
+	    }
+	    markDirty(this);
+	}
+
+	@Override
+	public String getName() {
+	    checkRegistered();
+	    return name;
+	}
+
+	@Override
+	public String getDisplayName() {
+	    checkRegistered();
+	    return displayName;
+	}
+
+	@Override
+	public void setDisplayName(String displayName) {
+	    checkRegistered();
+	    checkNotNull(displayName, "Display name cannot be null");
+	    if (displayName.length() > 32) {
+		throw new IllegalArgumentException("Display name '" + displayName + "' is longer than 32 characters");
+	    }
+	    if (!displayName.equals(this.displayName)) {
+		this.displayName = displayName;
+		changeInfo();
+	    }
+	}
+
+	@Override
+	public String getPrefix() {
+	    checkRegistered();
+	    return prefix;
+	}
+
+	@Override
+	public void setPrefix(String prefix) {
+	    checkRegistered();
+	    checkNotNull(prefix, "Prefix cannot be null");
+	    if (prefix.length() > 16) {
+		throw new IllegalArgumentException("Prefix '" + prefix + "' is longer than 16 characters");
+	    }
+	    if (!prefix.equals(this.prefix)) {
+		this.prefix = prefix;
+		changeInfo();
+	    }
+	}
+
+	@Override
+	public String getSuffix() {
+	    checkRegistered();
+	    return suffix;
+	}
+
+	@Override
+	public void setSuffix(String suffix) {
+	    checkRegistered();
+	    checkNotNull(suffix, "Suffix cannot be null");
+	    if (suffix.length() > 16) {
+		throw new IllegalArgumentException("Suffix '" + suffix + "' is longer than 16 characters");
+	    }
+	    if (!suffix.equals(this.suffix)) {
+		this.suffix = suffix;
+		changeInfo();
+	    }
+	}
+
+	@Override
+	public boolean allowFriendlyFire() {
+	    checkRegistered();
+	    return friendlyFire;
+	}
+
+	@Override
+	public void setAllowFriendlyFire(boolean enabled) {
+	    checkRegistered();
+	    if (friendlyFire != enabled) {
+		friendlyFire = enabled;
+		changeInfo();
+	    }
+	}
+
+	@Override
+	public boolean canSeeFriendlyInvisibles() {
+	    checkRegistered();
+	    return seeFriendlyInvisibles;
+	}
+
+	@Override
+	public void setCanSeeFriendlyInvisibles(boolean enabled) {
+	    checkRegistered();
+	    if (seeFriendlyInvisibles != enabled) {
+		seeFriendlyInvisibles = enabled;
+		changeInfo();
+	    }
+	}
+
+	@Override
+	public NameTagVisibility getNameTagVisibility() {
+	    checkRegistered();
+	    return nameTagVisibility;
+	}
+
+	@Override
+	public void setNameTagVisibility(NameTagVisibility visibility) {
+	    checkRegistered();
+	    checkNotNull(visibility, "NameTagVisibility cannot be null");
+	    if (nameTagVisibility != visibility) {
+		nameTagVisibility = visibility;
+		changeInfo();
+	    }
+	}
+
+	@Override
+	@SuppressWarnings("deprecation")
+	public Set<OfflinePlayer> getPlayers() {
+	    checkRegistered();
+	    ImmutableSet.Builder<OfflinePlayer> players = ImmutableSet.builder();
+	    for (String entry : entries) {
+		players.add(Bukkit.getOfflinePlayer(entry));
+	    }
+	    return players.build();
+	}
+
+	@Override
+	public Set<String> getEntries() {
+	    checkRegistered();
+	    return ImmutableSet.copyOf(entries);
+	}
+
+	@Override
+	public int getSize() {
+	    checkRegistered();
+	    return entries.size();
+	}
+
+	@Override
+	public Scoreboard getScoreboard() {
+	    return null;
+	}
+
+	@Override
+	public void addPlayer(OfflinePlayer player) {
+	    checkNotNull(player, "OfflinePlayer cannot be null");
+	    addEntry(player.getName());
+	}
+
+	@Override
+	public void addEntry(String entry) {
+	    checkRegistered();
+	    checkNotNull(entry, "Entry cannot be null");
+	    VirtualTeam previous = entryTeams.get(entry);
+	    if (previous == this) {
+		return;
+	    }
+	    if (previous != null) {
+		previous.leave(entry);
+	    }
+
+	    entries.add(entry);
+	    entryTeams.put(entry, this);
+	    if (!removedEntries.remove(entry)) {
+		addedEntries.add(entry);
+	    }
+	    markDirty(this);
+	}
+
+	@Override
+	public boolean removePlayer(OfflinePlayer player) {
+	    checkNotNull(player, "OfflinePlayer cannot be null");
+	    return removeEntry(player.getName());
+	}
+
+	@Override
+	public boolean removeEntry(String entry) {
+	    checkRegistered();
+	    checkNotNull(entry, "Entry cannot be null");
+	    if (!entries.contains(entry)) {
+		return false;
+	    }
+	    leave(entry);
+	    return true;
+	}
+
+	@Override
+	public void unregister() {
+	    checkRegistered();
+	    registered = false;
+	    for (String entry : entries) {
+		entryTeams.remove(entry);
+	    }
+	    entries.clear();
+	    addedEntries.clear();
+	    removedEntries.clear();
+	    teams.remove(name);
+	    markDirty(this);
+	}
+
+	@Override
+	public boolean hasPlayer(OfflinePlayer player) {
+	    checkNotNull(player, "OfflinePlayer cannot be null");
+	    return hasEntry(player.getName());
+	}
+
+	@Override
+	public boolean hasEntry(String entry) {
+	    checkRegistered();
+	    checkNotNull(entry, "Entry cannot be null");
+	    return entries.contains(entry);
+	}
+
+	@Override
+	public String toString() {
+	    return "VirtualTeam{" + name + ", entries=" + entries.size() + '}';
+	}
+    }
+}
@@ -1,5 +1,8 @@
 package io.github.totom3.teamsystem.demo;
 
+import io.github.totom3.teamsystem.LatencyHistogram;
+import io.github.totom3.teamsystem.Metrics;
+import java.util.Map;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
@@ -39,6 +42,8 @@ public class InfectedGameCommandExecutor implements CommandExecutor {
 	    case "info->c":
 		info(sender, true);
 		break;
+	    case "stats":
+		return stats(sender, args);
 	    default:
 		return false;
 	}
@@ -79,6 +84,43 @@ public class InfectedGameCommandExecutor implements CommandExecutor {
 	context.printInfo(target);
     }
 
+    private boolean stats(CommandSender sender, String[] args) {
+	Metrics metrics = context.getMetrics();
+	if (args.length == 2) {
+	    switch (args[1].toLowerCase()) {
+		case "on":
+		    metrics.setEnabled(true);
+		    break;
+		case "off":
+		    metrics.setEnabled(false);
+		    break;
+		case "reset":
+		    metrics.reset();
+		    break;
+		default:
+		    return false;
+	    }
+	} else if (args.length != 1) {
+	    return false;
+	}
+
+	sender.sendMessage(ChatColor.DARK_RED + "-----=[ " + ChatColor.RED + "Infected Stats" + ChatColor.DARK_RED + " ]=-----");
+	sender.sendMessage(ChatColor.GRAY + "Recording: " + ((metrics.isEnabled()) ? ChatColor.GREEN + "on" : ChatColor.RED + "off")
+		+ ChatColor.GRAY + ", Bukkit calls: " + ChatColor.DARK_GRAY + metrics.getBukkitCalls());
+	for (Map.Entry<Metrics.Probe, LatencyHistogram> entry : metrics.getHistograms().entrySet()) {
+	    LatencyHistogram histogram = entry.getValue();
+	    sender.sendMessage(ChatColor.GRAY + entry.getKey().name().toLowerCase() + ": " + ChatColor.DARK_GRAY + histogram.getCount()
+		    + ChatColor.GRAY + " calls, p50 " + ChatColor.DARK_GRAY + micros(histogram.getValueAtPercentile(50))
+		    + ChatColor.GRAY + ", p99 " + ChatColor.DARK_GRAY + micros(histogram.getValueAtPercentile(99))
+		    + ChatColor.GRAY + ", max " + ChatColor.DARK_GRAY + micros(histogram.getMaxNanos()));
+	}
+	return true;
+    }
+
+    private static String micros(long nanos) {
+	return String.format("%.1fus", nanos / 1e3);
+    }
+
     private boolean leave(CommandSender sender, String[] args) {
 	Player target;
 	switch (args.length) {
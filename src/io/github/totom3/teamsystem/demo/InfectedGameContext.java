@@ -1,13 +1,14 @@
 package io.github.totom3.teamsystem.demo;
 
+import io.github.totom3.teamsystem.ArenaRegistry;
+import io.github.totom3.teamsystem.DefaultGameListener;
 import io.github.totom3.teamsystem.GameContext;
 import io.github.totom3.teamsystem.GameTeam;
-import io.github.totom3.teamsystem.GameUtils;
-import java.util.Set;
+import io.github.totom3.teamsystem.TeamRelation;
+import io.github.totom3.teamsystem.TeamSpatialIndex;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
-import org.bukkit.event.Listener;
 import org.bukkit.scoreboard.NameTagVisibility;
 
 /**
@@ -16,13 +17,36 @@ import org.bukkit.scoreboard.NameTagVisibility;
  */
 public class InfectedGameContext extends GameContext {
 
+    // Maximum number of names per team printed by printInfo()
+    private static final int INFO_NAMES = 30;
+
+    // Ticks between two updates of the zombies' compasses
+    private static final int COMPASS_PERIOD = 20;
+
+    private int ticks;
+
     public InfectedGameContext() {
+	setup();
+    }
+
+    public InfectedGameContext(ArenaRegistry registry, String arenaName) {
+	super(registry, arenaName);
+	setup();
+    }
+
+    private void setup() {
 	setFriendlyFire(false);
 	setCanSeeFriendlyInvisibles(true);
 	setNameTagVisibility(NameTagVisibility.HIDE_FOR_OTHER_TEAMS);
 
 	createTeam(ChatColor.RED);
 	createTeam(ChatColor.BLUE);
+
+	// zombies turn the survivors they hurt into zombies
+	setRelation(getZombiesColor(), getSurvivorsColor(), TeamRelation.INFECTS);
+
+	// a lost connection shouldn't cost a survivor the round
+	getReconnectCache().setGraceMillis(30_000);
     }
 
     public ChatColor getZombiesColor() {
@@ -52,7 +76,28 @@ public class InfectedGameContext extends GameContext {
     }
 
     @Override
-    protected Listener makeListener() {
+    public void tick() {
+	super.tick();
+	if (++ticks % COMPASS_PERIOD == 0) {
+	    updateCompasses();
+	}
+    }
+
+    /**
+     * Points the compass of every zombie at the nearest survivor.
+     */
+    private void updateCompasses() {
+	TeamSpatialIndex index = getSpatialIndex();
+	for (Player zombie : getZombiesTeam().getPlayers()) {
+	    Player survivor = index.getNearestEnemy(zombie);
+	    if (survivor != null) {
+		zombie.setCompassTarget(survivor.getLocation());
+	    }
+	}
+    }
+
+    @Override
+    protected DefaultGameListener makeListener() {
 	return new InfectedGameListener(this);
     }
 
@@ -66,11 +111,11 @@ public class InfectedGameContext extends GameContext {
 	InfectedGameTeam survivors = getSurvivorsTeam();
 
 	sender.sendMessage(ChatColor.DARK_RED + "-----=[ " + ChatColor.RED + "Infected Game" + ChatColor.DARK_RED + " ]=-----");
-	sender.sendMessage(ChatColor.GRAY + "Zombies Team (" + ChatColor.DARK_GRAY + zombies.getPlayerCount() + ChatColor.GRAY + "): " + ChatColor.DARK_RED + formatPlayers(zombies.getPlayers()));
-	sender.sendMessage(ChatColor.GRAY + "Survivors Team (" + ChatColor.DARK_GRAY + survivors.getPlayerCount() + ChatColor.GRAY + "): " + ChatColor.DARK_BLUE + formatPlayers(survivors.getPlayers()));
+	sender.sendMessage(ChatColor.GRAY + "Zombies Team (" + ChatColor.DARK_GRAY + zombies.getPlayerCount() + ChatColor.GRAY + "): " + ChatColor.DARK_RED + formatPlayers(zombies));
+	sender.sendMessage(ChatColor.GRAY + "Survivors Team (" + ChatColor.DARK_GRAY + survivors.getPlayerCount() + ChatColor.GRAY + "): " + ChatColor.DARK_BLUE + formatPlayers(survivors));
     }
 
-    private String formatPlayers(Set<Player> players) {
-	return GameUtils.formatPlayers(players, ChatColor.GRAY, ChatColor.DARK_GRAY);
+    private String formatPlayers(InfectedGameTeam team) {
+	return team.formatPlayers(ChatColor.GRAY, ChatColor.DARK_GRAY, 0, INFO_NAMES);
     }
 }
@@ -1,43 +1,25 @@
 package io.github.totom3.teamsystem.demo;
 
-import io.github.totom3.teamsystem.GameTeam;
+import io.github.totom3.teamsystem.DefaultGameListener;
+import io.github.totom3.teamsystem.TeamRelation;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
-import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityDamageByEntityEvent;
 import org.bukkit.event.entity.PlayerDeathEvent;
-import org.bukkit.event.player.PlayerKickEvent;
-import org.bukkit.event.player.PlayerQuitEvent;
 
 /**
  *
  * @author Totom3
  */
-public class InfectedGameListener implements Listener {
+public class InfectedGameListener extends DefaultGameListener {
 
     private final InfectedGameContext context;
 
     public InfectedGameListener(InfectedGameContext context) {
+	super(context);
 	this.context = context;
     }
 
-    @EventHandler
-    void on(PlayerQuitEvent event) {
-	onQuit(event.getPlayer());
-    }
-
-    @EventHandler
-    void on(PlayerKickEvent event) {
-	onQuit(event.getPlayer());
-    }
-
-    void onQuit(Player player) {
-	GameTeam team = context.getTeamOf(player);
-	if (team != null) {
-	    team.removePlayer(player);
-	}
-    }
-
     @EventHandler
     void on(EntityDamageByEntityEvent event) {
 	if (!(event.getEntity() instanceof Player)) {
@@ -48,30 +30,32 @@ public class InfectedGameListener implements Listener {
 	    return;
 	}
 
-	Player damaged = (Player) event.getEntity();
-	Player damager = (Player) event.getDamager();
+	dispatchDamage(event);
+    }
 
-	InfectedGameTeam damagedTeam = context.getTeamOf(damaged);
-	InfectedGameTeam damagerTeam = context.getTeamOf(damager);
+    @EventHandler
+    void on(PlayerDeathEvent event) {
+	dispatchDeath(event);
+    }
 
-	// if the damaged player is not a survivor
-	if (damagedTeam == null || damagedTeam.isZombieTeam()) {
-	    return;
-	}
+    @Override
+    protected void onDamage(EntityDamageByEntityEvent event) {
+	Player damaged = (Player) event.getEntity();
+	Player damager = (Player) event.getDamager();
 
-	// if the damager is not a zombie
-	if (damagerTeam == null || damagerTeam.isSurvivorTeam()) {
+	// if the damager is not a zombie hurting a survivor
+	if (context.relation(damager, damaged) != TeamRelation.INFECTS) {
 	    return;
 	}
 
 	event.setDamage(10000);
 	
 	// add damaged player to zombies team
-	damagerTeam.addPlayer(damaged);
+	context.getTeamOf(damager).addPlayer(damaged);
     }
 
-    @EventHandler
-    void on(PlayerDeathEvent event) {
+    @Override
+    protected void onDeath(PlayerDeathEvent event) {
 	Player player = event.getEntity();
 	InfectedGameTeam team = context.getTeamOf(player);
 	
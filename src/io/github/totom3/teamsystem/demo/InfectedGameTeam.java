@@ -1,5 +1,6 @@
 package io.github.totom3.teamsystem.demo;
 
+import io.github.totom3.teamsystem.Announcement;
 import io.github.totom3.teamsystem.GameTeam;
 import org.bukkit.ChatColor;
 import org.bukkit.entity.Player;
@@ -10,6 +11,8 @@ import org.bukkit.entity.Player;
  */
 public class InfectedGameTeam extends GameTeam {
 
+    private static final Announcement INFECTION = new Announcement(ChatColor.DARK_RED, ChatColor.RED, " is now infected!", " are now infected!");
+
     private final boolean isZombieTeam;
 
     public InfectedGameTeam(InfectedGameContext context, ChatColor color) {
@@ -43,10 +46,7 @@ public class InfectedGameTeam extends GameTeam {
     @Override
     protected void onJoin(Player player) {
 	if (isZombieTeam) {
-	    String msg = ChatColor.DARK_RED + player.getName() + ChatColor.RED + " is now infected!";
-	    for (Player p : getContext().players().keySet()) {
-		p.sendMessage(msg);
-	    }
+	    getContext().getBroadcaster().announce(INFECTION, player.getName());
 	}
     }
 
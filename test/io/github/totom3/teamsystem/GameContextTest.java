@@ -0,0 +1,179 @@
+package io.github.totom3.teamsystem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Regression tests for the membership changes of a {@code GameContext}: batch
+ * edits naming a player several times, single moves, parked players, aborted
+ * resets, and queued moves.
+ * @author Totom3
+ */
+public class GameContextTest {
+
+    private RecordingSink sink;
+    private GameContext context;
+    private GameTeam red;
+    private GameTeam blue;
+    private List<TeamChangeEvent> events;
+
+    @Before
+    public void setUp() {
+	sink = new RecordingSink();
+	context = new GameContext(ArenaRegistry.detached(TestPlayers.unusedScoreboard()), "test") {
+	    {
+		setTeamBackend(new VirtualScoreboard(sink));
+		createTeam(ChatColor.RED);
+		createTeam(ChatColor.BLUE);
+	    }
+	};
+	red = context.getTeam(ChatColor.RED);
+	blue = context.getTeam(ChatColor.BLUE);
+	events = new ArrayList<>();
+	context.getEventBus().addHook(events::add);
+    }
+
+    @Test
+    public void removeAllRemovesDuplicatesOnce() {
+	UUID id = UUID.randomUUID();
+	Player player = TestPlayers.player("P", id);
+	Player sameUuid = TestPlayers.player("P", id);
+	red.addPlayer(player);
+	red.addPlayer(TestPlayers.player("Q"));
+
+	assertEquals(1, context.removeAll(Arrays.asList(player, sameUuid, player)));
+	assertNull(context.getTeamOf(player));
+	assertEquals(1, red.getPlayerCount());
+	assertEquals(1, context.getRoster().size());
+    }
+
+    @Test
+    public void assignAllKeepsTheLastEntryOfAPlayer() {
+	UUID id = UUID.randomUUID();
+	Player player = TestPlayers.player("P", id);
+	Player sameUuid = TestPlayers.player("P", id);
+	Map<Player, ChatColor> assignments = new LinkedHashMap<>();
+	assignments.put(player, ChatColor.RED);
+	assignments.put(sameUuid, ChatColor.BLUE);
+
+	assertEquals(1, context.assignAll(assignments));
+	assertSame(blue, context.getTeamOf(player));
+	assertEquals(0, red.getPlayerCount());
+	assertEquals(1, blue.getPlayerCount());
+
+	// the last entry is a no-op: the player must not move at all
+	assignments.clear();
+	assignments.put(sameUuid, ChatColor.RED);
+	assignments.put(player, ChatColor.BLUE);
+	assertEquals(0, context.assignAll(assignments));
+	assertSame(blue, context.getTeamOf(player));
+    }
+
+    @Test
+    public void assignTeamsKeepsTheLastEntryOfAPlayer() {
+	UUID id = UUID.randomUUID();
+	Player player = TestPlayers.player("P", id);
+	blue.addPlayer(player);
+	Map<Player, GameTeam> assignments = new LinkedHashMap<>();
+	assignments.put(player, red);
+	assignments.put(TestPlayers.player("P", id), null);
+
+	assertEquals(1, context.assignTeams(assignments));
+	assertNull(context.getTeamOf(player));
+	assertEquals(0, context.getRoster().size());
+    }
+
+    @Test
+    public void vetoedQueuedMovesOnlyFailTheirOwnFuture() {
+	Player vetoed = TestPlayers.player("Vetoed");
+	Player other = TestPlayers.player("Other");
+	context.getEventBus().addHook(event -> {
+	    if ("Vetoed".equals(event.getPlayerName())) {
+		throw new IllegalStateException("vetoed");
+	    }
+	});
+
+	CompletableFuture<GameTeam> vetoedMove = context.submitSetTeamOf(vetoed, ChatColor.RED);
+	CompletableFuture<GameTeam> otherMove = context.submitSetTeamOf(other, ChatColor.RED);
+	context.tick();
+
+	assertTrue(vetoedMove.isCompletedExceptionally());
+	assertNull(context.getTeamOf(vetoed));
+	assertNull(otherMove.join());
+	assertSame(red, context.getTeamOf(other));
+    }
+
+    @Test
+    public void abortedReconciliationReleasesStaleSlots() {
+	for (int i = 0; i < 50; ++i) {
+	    red.addPlayer(TestPlayers.player("P" + i));
+	}
+	Player back = TestPlayers.player("Back");
+	blue.addPlayer(back);
+	context.reset();
+	blue.addPlayer(back);
+	assertEquals(50, context.getRoster().staleCount());
+
+	context.getTickScheduler().abortAll(new IllegalStateException("aborted"));
+	assertEquals(0, context.getRoster().staleCount());
+	assertEquals(1, context.getRoster().size());
+	assertSame(blue, context.getTeamOf(back));
+    }
+
+    @Test
+    public void singleMovesKeepTheSlotAndTheJoinTime() throws InterruptedException {
+	Player player = TestPlayers.player("P");
+	red.addPlayer(player);
+	int slot = context.getRoster().slotOf(player);
+	long joinTime = context.getJoinTime(player);
+	events.clear();
+
+	Thread.sleep(5);
+	blue.addPlayer(player);
+
+	assertEquals(slot, context.getRoster().slotOf(player));
+	assertEquals(joinTime, context.getJoinTime(player));
+	assertEquals(1, events.size());
+	assertEquals(TeamChangeEvent.Type.MOVE, events.get(0).getType());
+	assertEquals(0, red.getPlayerCount());
+	assertEquals(1, blue.getPlayerCount());
+    }
+
+    @Test
+    public void movedPlayersStayParked() {
+	Player player = TestPlayers.player("P");
+	red.addPlayer(player);
+	ReconnectCache cache = context.getReconnectCache();
+	cache.setGraceMillis(10_000);
+	assertTrue(cache.park(player));
+
+	blue.addPlayer(player);
+	assertTrue(cache.isParked(player.getUniqueId()));
+
+	cache.evictAll();
+	assertNull(context.getTeamOf(player));
+    }
+
+    @Test
+    public void toStringListsTheFirstPlayers() {
+	for (int i = 0; i < 25; ++i) {
+	    red.addPlayer(TestPlayers.player("P" + i));
+	}
+	String string = context.toString();
+
+	assertTrue(string, string.endsWith("players=[P0, P1, P2, P3, P4, P5, P6, P7, P8, P9, P10, P11, P12, P13, P14, P15, P16, P17, P18, P19 \u2026and 5 more]}"));
+    }
+}
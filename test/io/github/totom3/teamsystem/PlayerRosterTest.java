@@ -0,0 +1,103 @@
+package io.github.totom3.teamsystem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.bukkit.entity.Player;
+import org.junit.Test;
+
+/**
+ *
+ * @author Totom3
+ */
+public class PlayerRosterTest {
+
+    @Test
+    public void matchesHashMap() {
+	PlayerRoster roster = new PlayerRoster();
+	Map<UUID, Integer> expected = new HashMap<>();
+	List<UUID> ids = new ArrayList<>();
+	Random random = new Random(1);
+	for (int i = 0; i < 50_000; ++i) {
+	    if (ids.isEmpty() || random.nextInt(3) > 0) {
+		UUID id = UUID.randomUUID();
+		int slot = roster.join(TestPlayers.player("P" + i, id));
+		assertFalse("slot " + slot + " is used twice", expected.containsValue(slot));
+		ids.add(id);
+		expected.put(id, slot);
+	    } else {
+		UUID id = ids.remove(random.nextInt(ids.size()));
+		int slot = roster.slotOf(id);
+		assertEquals((int) expected.remove(id), slot);
+		roster.leave(slot);
+	    }
+	}
+
+	assertEquals(ids.size(), roster.size());
+	for (UUID id : ids) {
+	    assertEquals((int) expected.get(id), roster.slotOf(id));
+	}
+    }
+
+    @Test
+    public void resetMakesSlotsStale() {
+	PlayerRoster roster = new PlayerRoster();
+	Player player = TestPlayers.player("P");
+	int slot = roster.join(player);
+	roster.setTeam(slot, 3);
+	roster.reset();
+
+	assertEquals(PlayerRoster.NO_SLOT, roster.slotOf(player));
+	assertFalse(roster.isLive(slot));
+	assertEquals(0, roster.size());
+	assertEquals(1, roster.staleCount());
+
+	// a stale player joining again gets its slot back, without any team
+	assertEquals(slot, roster.join(player));
+	assertEquals(PlayerRoster.NO_TEAM, roster.getTeam(slot));
+	assertEquals(0, roster.staleCount());
+    }
+
+    @Test(timeout = 10_000)
+    public void growsWithStaleSlots() {
+	PlayerRoster roster = new PlayerRoster();
+	List<Player> stale = new ArrayList<>();
+	for (int i = 0; i < 16; ++i) {
+	    Player player = TestPlayers.player("Stale" + i);
+	    stale.add(player);
+	    roster.join(player);
+	}
+	roster.reset();
+
+	// stale slots still fill the table, which must keep an empty cell for
+	// the lookups of missing players to terminate
+	for (int i = 0; i < 1000; ++i) {
+	    roster.join(TestPlayers.player("New" + i));
+	    assertEquals(PlayerRoster.NO_SLOT, roster.slotOf(UUID.randomUUID()));
+	}
+	assertEquals(1000, roster.size());
+	assertEquals(16, roster.staleCount());
+
+	for (Player player : stale) {
+	    roster.join(player);
+	}
+	assertEquals(1016, roster.size());
+	assertEquals(0, roster.staleCount());
+    }
+
+    @Test
+    public void leaveReleasesStaleSlots() {
+	PlayerRoster roster = new PlayerRoster();
+	int slot = roster.join(TestPlayers.player("P"));
+	roster.reset();
+	roster.leave(slot);
+
+	assertEquals(0, roster.staleCount());
+	assertEquals(slot, roster.join(TestPlayers.player("Q")));
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.totom3.teamsystem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that disconnected players are evicted once their grace period
+ * expires, whatever the hooks of the event bus do.
+ * @author Totom3
+ */
+public class ReconnectCacheTest {
+
+    private GameContext context;
+    private ReconnectCache cache;
+    private GameTeam red;
+
+    @Before
+    public void setUp() {
+	context = new GameContext(ArenaRegistry.detached(TestPlayers.unusedScoreboard()), "reconnect") {
+	    {
+		setTeamBackend(new VirtualScoreboard(new RecordingSink()));
+		createTeam(ChatColor.RED);
+	    }
+	};
+	cache = context.getReconnectCache();
+	red = context.getTeam(ChatColor.RED);
+    }
+
+    @Test
+    public void vetoingHooksDontKeepExpiredPlayers() throws InterruptedException {
+	Player player = TestPlayers.player("P");
+	red.addPlayer(player);
+	context.getEventBus().addHook(event -> {
+	    throw new IllegalStateException("vetoed");
+	});
+	cache.setGraceMillis(1);
+	assertTrue(cache.park(player));
+
+	Thread.sleep(5);
+	context.tick();
+	assertFalse(cache.isParked(player.getUniqueId()));
+	assertNull(context.getTeamOf(player));
+    }
+
+    @Test
+    public void shorterGracePeriodsApplyToParkedPlayers() throws InterruptedException {
+	Player first = TestPlayers.player("First");
+	Player second = TestPlayers.player("Second");
+	red.addPlayer(first);
+	red.addPlayer(second);
+	cache.setGraceMillis(60_000);
+	assertTrue(cache.park(first));
+	cache.setGraceMillis(1);
+	assertTrue(cache.park(second));
+
+	Thread.sleep(5);
+	context.tick();
+	assertNull(context.getTeamOf(first));
+	assertNull(context.getTeamOf(second));
+	assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.totom3.teamsystem;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Totom3
+ */
+public class SlotSetTest {
+
+    @Test
+    public void containsRejectsMissingSlots() {
+	SlotSet set = new SlotSet();
+	set.add(3);
+
+	// NO_SLOT is what the roster returns for an unknown player
+	assertFalse(set.contains(PlayerRoster.NO_SLOT));
+	assertFalse(set.contains(1000));
+	assertFalse(set.remove(PlayerRoster.NO_SLOT));
+	assertTrue(set.contains(3));
+    }
+
+    @Test
+    public void matchesHashSet() {
+	SlotSet set = new SlotSet();
+	Set<Integer> expected = new HashSet<>();
+	Random random = new Random(1);
+	for (int i = 0; i < 100_000; ++i) {
+	    int slot = random.nextInt(500);
+	    if (random.nextBoolean()) {
+		assertEquals(expected.add(slot), set.add(slot));
+	    } else {
+		assertEquals(expected.remove(slot), set.remove(slot));
+	    }
+	}
+
+	assertEquals(expected.size(), set.size());
+	for (int i = 0; i < set.size(); ++i) {
+	    assertTrue(expected.contains(set.get(i)));
+	}
+    }
+
+    @Test
+    public void clearForgetsEveryMember() {
+	SlotSet set = new SlotSet();
+	for (int slot = 0; slot < 100; ++slot) {
+	    set.add(slot);
+	}
+	int modCount = set.modCount();
+	set.clear();
+
+	assertTrue(set.isEmpty());
+	assertFalse(set.contains(42));
+	assertTrue(set.modCount() != modCount);
+	assertTrue(set.add(42));
+    }
+}
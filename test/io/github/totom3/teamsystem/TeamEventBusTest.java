@@ -0,0 +1,64 @@
+package io.github.totom3.teamsystem;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import static org.junit.Assert.assertEquals;
+import org.bukkit.ChatColor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that subscriptions are delivered every tick, while their threads
+ * sleep without polling in between.
+ * @author Totom3
+ */
+public class TeamEventBusTest {
+
+    private GameContext context;
+    private TeamEventBus.Subscription subscription;
+    private Collector received;
+
+    @Before
+    public void setUp() {
+	context = new GameContext(ArenaRegistry.detached(TestPlayers.unusedScoreboard()), "bus") {
+	    {
+		setTeamBackend(new VirtualScoreboard(new RecordingSink()));
+		createTeam(ChatColor.RED);
+	    }
+	};
+	received = new Collector();
+	subscription = context.getEventBus().subscribe(received, TeamEventBus.Backpressure.BLOCK);
+    }
+
+    @After
+    public void tearDown() {
+	context.close();
+    }
+
+    @Test(timeout = 10_000)
+    public void idleSubscriptionsWakeUpOnTheTick() throws InterruptedException {
+	Thread thread = TestThreads.find(Collector.class.getName());
+	GameTeam red = context.getTeam(ChatColor.RED);
+	for (int tick = 1; tick <= 5; ++tick) {
+	    TestThreads.awaitWaiting(thread);
+	    red.addPlayer(TestPlayers.player("P" + tick));
+	    context.tick();
+	    while (received.events.size() < tick) {
+		Thread.sleep(1);
+	    }
+	}
+	assertEquals(5, subscription.getDeliveredCount());
+	TestThreads.awaitWaiting(thread);
+    }
+
+    private static final class Collector implements TeamChangeSubscriber {
+
+	final List<TeamChangeEvent> events = new CopyOnWriteArrayList<>();
+
+	@Override
+	public void onEvents(List<TeamChangeEvent> batch) {
+	    events.addAll(batch);
+	}
+    }
+}
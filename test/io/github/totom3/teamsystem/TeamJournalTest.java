@@ -0,0 +1,84 @@
+package io.github.totom3.teamsystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.bukkit.ChatColor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the writer of a journal writes the records of every tick,
+ * sleeps without polling in between, and stops with its context.
+ * @author Totom3
+ */
+public class TeamJournalTest {
+
+    private File directory;
+    private TeamJournal journal;
+    private GameContext context;
+
+    @Before
+    public void setUp() throws IOException {
+	directory = Files.createTempDirectory("journal").toFile();
+	journal = new TeamJournal(directory, "test");
+	context = new GameContext(ArenaRegistry.detached(TestPlayers.unusedScoreboard()), "journal") {
+	    {
+		setTeamBackend(new VirtualScoreboard(new RecordingSink()));
+		createTeam(ChatColor.RED);
+	    }
+	};
+	context.setJournal(journal);
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+	context.close();
+	for (File file : directory.listFiles()) {
+	    Files.delete(file.toPath());
+	}
+	Files.delete(directory.toPath());
+    }
+
+    @Test(timeout = 10_000)
+    public void idleWritersWakeUpOnTheTick() throws IOException, InterruptedException {
+	Thread writer = TestThreads.find("TeamJournal writer (test)");
+	File file = new File(directory, "test-1" + TeamJournal.EXTENSION);
+	// the writer may write the checkpoint as it starts, or on the first tick
+	context.tick();
+	while (file.length() == 0) {
+	    Thread.sleep(1);
+	}
+
+	GameTeam red = context.getTeam(ChatColor.RED);
+	for (int tick = 1; tick <= 4; ++tick) {
+	    TestThreads.awaitWaiting(writer);
+	    long length = file.length();
+	    red.addPlayer(TestPlayers.player("P" + tick));
+	    context.tick();
+	    while (file.length() == length) {
+		Thread.sleep(1);
+	    }
+	}
+	assertEquals(4, new JournalReader(directory, "test").stateAt(Long.MAX_VALUE).getMembers().size());
+    }
+
+    @Test(timeout = 10_000)
+    public void closingTheContextClosesTheJournal() throws IOException, InterruptedException {
+	Thread writer = TestThreads.find("TeamJournal writer (test)");
+	context.getTeam(ChatColor.RED).addPlayer(TestPlayers.player("P"));
+	context.close();
+
+	assertFalse(writer.isAlive());
+	assertNull(journal.getFailure());
+	// the changes made by closing the context were written too
+	JournalState state = new JournalReader(directory, "test").stateAt(Long.MAX_VALUE);
+	assertTrue(state.getMembers().isEmpty());
+	assertTrue(state.getTeams().isEmpty());
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.totom3.teamsystem;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that saved states survive being restored and saved again, with
+ * players who didn't reconnect in between.
+ * @author Totom3
+ */
+public class TeamStateStoreTest {
+
+    private List<TeamChangeEvent> events;
+
+    @Before
+    public void setUp() {
+	TestPlayers.installServer();
+	events = new ArrayList<>();
+    }
+
+    @Test
+    public void offlineMembersSurviveASecondSave() throws IOException {
+	Player online = TestPlayers.player("Online");
+	Player offline = TestPlayers.player("Offline");
+	GameContext first = newContext();
+	first.getTeam(ChatColor.RED).addPlayer(online);
+	first.getTeam(ChatColor.BLUE).addPlayer(offline);
+	long joinTime = first.getJoinTime(offline);
+
+	// restart: nobody is online, then one player reconnects
+	GameContext second = newContext();
+	assertEquals(2, TeamStateStore.decode(TeamStateStore.encode(first), second));
+	assertEquals(2, second.getPendingRestoreCount());
+	assertTrue(second.restoreMember(TestPlayers.player("Online", online.getUniqueId())));
+	assertEquals(1, second.getPendingRestoreCount());
+
+	// the next save keeps the player who is still offline
+	GameContext third = newContext();
+	assertEquals(2, TeamStateStore.decode(TeamStateStore.encode(second), third));
+	Player back = TestPlayers.player("Offline", offline.getUniqueId());
+	assertTrue(third.restoreMember(back));
+	assertSame(third.getTeam(ChatColor.BLUE), third.getTeamOf(back));
+	assertEquals(joinTime, third.getJoinTime(back));
+    }
+
+    @Test
+    public void restoredMembersDontJoinAgain() throws IOException {
+	Player player = TestPlayers.player("P");
+	GameContext first = newContext();
+	first.getTeam(ChatColor.RED).addPlayer(player);
+
+	GameContext second = newContext();
+	TeamStateStore.decode(TeamStateStore.encode(first), second);
+	events.clear();
+	assertTrue(second.restoreMember(TestPlayers.player("P", player.getUniqueId())));
+
+	assertSame(second.getTeam(ChatColor.RED), second.getTeamOf(player));
+	assertTrue(events.toString(), events.isEmpty());
+    }
+
+    // -----------------------=[ Internal ]=-----------------------
+    private GameContext newContext() {
+	GameContext context = new GameContext(ArenaRegistry.detached(TestPlayers.unusedScoreboard()), "store") {
+	    {
+		setTeamBackend(new VirtualScoreboard(new RecordingSink()));
+		createTeam(ChatColor.RED);
+		createTeam(ChatColor.BLUE);
+	    }
+	};
+	context.getEventBus().addHook(events::add);
+	return context;
+    }
+}
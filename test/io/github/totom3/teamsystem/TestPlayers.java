@@ -0,0 +1,103 @@
+package io.github.totom3.teamsystem;
+
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+import java.util.logging.Logger;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
+import org.bukkit.scoreboard.Scoreboard;
+
+/**
+ * Stand-ins for the Bukkit objects the tests need. Players only know their
+ * name and {@code UUID}, and are online; any other method returns a zero
+ * value.
+ * @author Totom3
+ */
+final class TestPlayers {
+
+    private TestPlayers() {
+    }
+
+    static Player player(String name) {
+	return player(name, UUID.randomUUID());
+    }
+
+    /**
+     * Creates a player. Two players created with the same {@code UUID} are
+     * distinct objects, like the {@code Player} objects of two connections of
+     * the same player.
+     * @param name the name of the player.
+     * @param id   the {@code UUID} of the player.
+     * @return a new stub {@code Player}.
+     */
+    static Player player(String name, UUID id) {
+	return (Player) Proxy.newProxyInstance(TestPlayers.class.getClassLoader(), new Class<?>[]{Player.class}, (proxy, method, args) -> {
+	    switch (method.getName()) {
+		case "getUniqueId":
+		    return id;
+		case "getName":
+		case "getDisplayName":
+		case "toString":
+		    return name;
+		case "isOnline":
+		    return true;
+		case "hashCode":
+		    return System.identityHashCode(proxy);
+		case "equals":
+		    return proxy == args[0];
+		default:
+		    return (method.getReturnType() == boolean.class) ? false : null;
+	    }
+	});
+    }
+
+    /**
+     * Installs a server on which no player is online, unless a server was
+     * installed already. Needed by the code looking players up through
+     * {@code Bukkit}.
+     */
+    static void installServer() {
+	if (Bukkit.getServer() != null) {
+	    return;
+	}
+	Logger logger = Logger.getLogger("TestServer");
+	Bukkit.setServer((Server) Proxy.newProxyInstance(TestPlayers.class.getClassLoader(), new Class<?>[]{Server.class}, (proxy, method, args) -> {
+	    switch (method.getName()) {
+		case "getLogger":
+		    return logger;
+		case "getName":
+		case "getVersion":
+		case "getBukkitVersion":
+		case "toString":
+		    return "TestServer";
+		case "hashCode":
+		    return System.identityHashCode(proxy);
+		case "equals":
+		    return proxy == args[0];
+		default:
+		    return (method.getReturnType() == boolean.class) ? false : null;
+	    }
+	}));
+    }
+
+    /**
+     * Returns a scoreboard for contexts whose teams live in a
+     * {@code VirtualScoreboard}, and which must therefore never touch it.
+     * @return a scoreboard failing on every call.
+     */
+    static Scoreboard unusedScoreboard() {
+	return (Scoreboard) Proxy.newProxyInstance(TestPlayers.class.getClassLoader(), new Class<?>[]{Scoreboard.class}, (proxy, method, args) -> {
+	    switch (method.getName()) {
+		case "hashCode":
+		    return System.identityHashCode(proxy);
+		case "equals":
+		    return proxy == args[0];
+		case "toString":
+		    return "unused scoreboard";
+		default:
+		    throw new UnsupportedOperationException("Scoreboard." + method.getName());
+	    }
+	});
+    }
+}
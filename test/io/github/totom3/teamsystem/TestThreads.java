@@ -0,0 +1,45 @@
+package io.github.totom3.teamsystem;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Helpers for the tests of the background threads of the team system.
+ * @author Totom3
+ */
+final class TestThreads {
+
+    private TestThreads() {
+    }
+
+    /**
+     * Returns the live thread whose name contains some text.
+     * @param name the text to look for.
+     * @return the thread.
+     * @throws AssertionError if there is no such thread.
+     */
+    static Thread find(String name) {
+	for (Thread thread : Thread.getAllStackTraces().keySet()) {
+	    if (thread.getName().contains(name) && thread.isAlive()) {
+		return thread;
+	    }
+	}
+	throw new AssertionError("No thread named " + name);
+    }
+
+    /**
+     * Waits for an idle thread to wait without a timeout. A thread polling
+     * with a timeout is {@code TIMED_WAITING} instead, and never gets there.
+     * @param thread the thread.
+     * @throws AssertionError if the thread isn't {@code WAITING} within five
+     *                        seconds.
+     */
+    static void awaitWaiting(Thread thread) throws InterruptedException {
+	long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+	while (thread.getState() != Thread.State.WAITING) {
+	    if (System.nanoTime() - deadline > 0) {
+		throw new AssertionError(thread.getName() + " is " + thread.getState() + ", expected WAITING");
+	    }
+	    Thread.sleep(1);
+	}
+    }
+}
@@ -0,0 +1,270 @@
+package io.github.totom3.teamsystem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.scoreboard.NameTagVisibility;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the packets a {@code VirtualScoreboard} sends, as recorded and
+ * replayed by a {@code RecordingSink}.
+ * @author Totom3
+ */
+public class VirtualScoreboardTest {
+
+    private RecordingSink sink;
+    private VirtualScoreboard board;
+    private ArenaRegistry registry;
+    private GameContext context;
+    private GameTeam red;
+    private GameTeam blue;
+    private String redName;
+    private String blueName;
+    private List<Player> players;
+
+    @Before
+    public void setUp() {
+	sink = new RecordingSink();
+	board = new VirtualScoreboard(sink);
+	registry = ArenaRegistry.detached(TestPlayers.unusedScoreboard());
+	context = new GameContext(registry, "virtual") {
+	    {
+		setTeamBackend(board);
+		createTeam(ChatColor.RED);
+		createTeam(ChatColor.BLUE);
+	    }
+	};
+	red = context.getTeam(ChatColor.RED);
+	blue = context.getTeam(ChatColor.BLUE);
+	redName = context.getBukkitTeamName(red);
+	blueName = context.getBukkitTeamName(blue);
+
+	players = new ArrayList<>();
+	for (int i = 0; i < 10; ++i) {
+	    Player player = TestPlayers.player("P" + i);
+	    players.add(player);
+	    (i % 2 == 0 ? red : blue).addPlayer(player);
+	}
+    }
+
+    @Test
+    public void sendsNothingBeforeTheFlush() {
+	assertEquals(0, sink.getPacketCount());
+    }
+
+    @Test
+    public void newViewersGetTheFullState() {
+	context.flush();
+
+	assertEquals("one batch per viewer", 10, sink.getBatchCount());
+	for (Player player : players) {
+	    List<TeamPacket> packets = sink.getPackets(player.getUniqueId());
+	    assertEquals(2, packets.size());
+	    for (TeamPacket packet : packets) {
+		assertEquals(TeamPacket.Mode.CREATE, packet.getMode());
+	    }
+	    assertEquals(entries("P0", "P2", "P4", "P6", "P8"), sink.getTeams(player.getUniqueId()).get(redName));
+	    assertEquals(entries("P1", "P3", "P5", "P7", "P9"), sink.getTeams(player.getUniqueId()).get(blueName));
+	}
+	assertNoViolations();
+    }
+
+    @Test
+    public void createPacketsCarryTheSettings() {
+	context.setFriendlyFire(false);
+	context.setNameTagVisibility(NameTagVisibility.HIDE_FOR_OTHER_TEAMS);
+	context.flush();
+
+	for (TeamPacket packet : sink.getPackets(players.get(0).getUniqueId())) {
+	    assertFalse(packet.hasFriendlyFire());
+	    assertEquals(NameTagVisibility.HIDE_FOR_OTHER_TEAMS, packet.getNameTagVisibility());
+	}
+    }
+
+    @Test
+    public void settingsSendOneUpdatePerTeam() {
+	context.flush();
+	sink.clear();
+	context.setFriendlyFire(false);
+	context.flush();
+
+	List<TeamPacket> packets = sink.getPackets(players.get(0).getUniqueId());
+	assertEquals(2, packets.size());
+	for (TeamPacket packet : packets) {
+	    assertEquals(TeamPacket.Mode.UPDATE, packet.getMode());
+	    assertFalse(packet.hasFriendlyFire());
+	}
+    }
+
+    @Test
+    public void movesAreCoalescedWithinAFlush() {
+	context.flush();
+	sink.clear();
+
+	// P1 goes back and forth, P3 moves once
+	red.addPlayer(players.get(1));
+	blue.addPlayer(players.get(1));
+	red.addPlayer(players.get(3));
+	context.flush();
+
+	UUID viewer = players.get(0).getUniqueId();
+	List<TeamPacket> packets = sink.getPackets(viewer);
+	assertEquals(packets.toString(), 1, packets.size());
+	assertEquals(TeamPacket.Mode.ADD_ENTRIES, packets.get(0).getMode());
+	assertEquals(Collections.singletonList("P3"), packets.get(0).getEntries());
+	assertTrue(sink.getTeams(viewer).get(redName).contains("P3"));
+	assertFalse(sink.getTeams(viewer).get(blueName).contains("P3"));
+	assertEquals("the mover keeps its view", 1, sink.getPackets(players.get(3).getUniqueId()).size());
+	assertNoViolations();
+    }
+
+    @Test
+    public void batchMovesSendOneAddPerTeam() {
+	context.flush();
+	sink.clear();
+	Map<Player, ChatColor> assignments = new HashMap<>();
+	assignments.put(players.get(5), ChatColor.RED);
+	assignments.put(players.get(2), ChatColor.BLUE);
+	context.assignAll(assignments);
+	context.flush();
+
+	List<TeamPacket> packets = sink.getPackets(players.get(0).getUniqueId());
+	assertEquals(packets.toString(), 2, packets.size());
+	for (TeamPacket packet : packets) {
+	    assertEquals(TeamPacket.Mode.ADD_ENTRIES, packet.getMode());
+	}
+	assertNoViolations();
+    }
+
+    @Test
+    public void leaversForgetEveryTeam() {
+	context.flush();
+	sink.clear();
+	Player leaver = players.get(4);
+	red.removePlayer(leaver);
+	context.flush();
+
+	List<TeamPacket> removal = sink.getPackets(leaver.getUniqueId());
+	assertEquals(2, removal.size());
+	for (TeamPacket packet : removal) {
+	    assertEquals(TeamPacket.Mode.REMOVE, packet.getMode());
+	}
+	assertTrue(sink.getTeams(leaver.getUniqueId()).isEmpty());
+
+	List<TeamPacket> packets = sink.getPackets(players.get(0).getUniqueId());
+	assertEquals(1, packets.size());
+	assertEquals(TeamPacket.Mode.REMOVE_ENTRIES, packets.get(0).getMode());
+	assertEquals(Collections.singletonList("P4"), packets.get(0).getEntries());
+	assertNoViolations();
+    }
+
+    @Test
+    public void transientMembersSendNothing() {
+	context.flush();
+	sink.clear();
+	Player visitor = TestPlayers.player("Visitor");
+	blue.addPlayer(visitor);
+	blue.removePlayer(visitor);
+	context.flush();
+
+	assertEquals(0, sink.getPacketCount());
+    }
+
+    @Test
+    public void reconnectedPlayersGetTheFullStateAgain() {
+	context.getReconnectCache().setGraceMillis(10_000);
+	context.flush();
+	Player player = players.get(6);
+	registry.getListener().on(new PlayerQuitEvent(player, ""));
+	context.flush();
+	sink.clear();
+
+	Player back = TestPlayers.player("P6", player.getUniqueId());
+	registry.getListener().on(new PlayerJoinEvent(back, ""));
+	context.flush();
+
+	List<TeamPacket> packets = sink.getPackets(back.getUniqueId());
+	assertEquals(packets.toString(), 2, packets.size());
+	assertEquals(TeamPacket.Mode.CREATE, packets.get(0).getMode());
+	assertClientsConsistent();
+	assertNoViolations();
+    }
+
+    @Test
+    public void clientsFollowRandomChanges() {
+	Random random = new Random(1);
+	List<Player> pool = new ArrayList<>(players);
+	for (int i = 0; i < 30; ++i) {
+	    pool.add(TestPlayers.player("R" + i));
+	}
+
+	for (int tick = 0; tick < 500; ++tick) {
+	    for (int k = 0; k < 20; ++k) {
+		Player player = pool.get(random.nextInt(pool.size()));
+		switch (random.nextInt(3)) {
+		    case 0:
+			red.addPlayer(player);
+			break;
+		    case 1:
+			blue.addPlayer(player);
+			break;
+		    default:
+			context.setTeamOf(player, null);
+		}
+	    }
+	    if (random.nextInt(50) == 0) {
+		context.setNameTagVisibility(NameTagVisibility.values()[random.nextInt(NameTagVisibility.values().length)]);
+	    }
+	    context.flush();
+	    assertClientsConsistent();
+	}
+	assertNoViolations();
+    }
+
+    @Test
+    public void rejectsBackendChangesOnceTeamsExist() {
+	try {
+	    context.setTeamBackend(new VirtualScoreboard(sink));
+	    fail("the backend was replaced after teams were created");
+	} catch (IllegalStateException expected) {
+	}
+	assertNull(context.getTeam(ChatColor.GREEN));
+    }
+
+    // -----------------------=[ Internal ]=-----------------------
+    private static Set<String> entries(String... names) {
+	return new HashSet<>(Arrays.asList(names));
+    }
+
+    private void assertClientsConsistent() {
+	Set<String> redEntries = new HashSet<>(board.getTeam(redName).getEntries());
+	Set<String> blueEntries = new HashSet<>(board.getTeam(blueName).getEntries());
+	for (Player player : context.players().keySet()) {
+	    Map<String, Set<String>> teams = sink.getTeams(player.getUniqueId());
+	    assertEquals(player.getName(), redEntries, teams.get(redName));
+	    assertEquals(player.getName(), blueEntries, teams.get(blueName));
+	}
+    }
+
+    private void assertNoViolations() {
+	assertTrue(sink.getViolations().toString(), sink.getViolations().isEmpty());
+    }
+}